@@ -0,0 +1,123 @@
+package com.dimfunky.benchmark;
+
+import com.dimfunky.cache.BoundedCache;
+import com.dimfunky.cache.CompactingCache;
+import com.dimfunky.cache.MemoryCache;
+import com.dimfunky.cache.OffHeapCache;
+import com.dimfunky.constant.EvictionPolicy;
+import com.dimfunky.model.WeatherData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit, miss and eviction costs of the cache implementations
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheBenchmark {
+
+    @Param({"FIFO", "LRU", "TINY_LFU"})
+    public EvictionPolicy evictionPolicy;
+
+    @Param({"10000"})
+    public int cacheLimit;
+
+    private BoundedCache<WeatherData> boundedCache;
+    private MemoryCache<WeatherData> memoryCache;
+    private CompactingCache compactingCache;
+    private OffHeapCache offHeapCache;
+    private String[] keys;
+    private WeatherData value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boundedCache = new BoundedCache<>(cacheLimit, evictionPolicy,
+                data -> data.fetchedAt() == null ? 0L : data.fetchedAt());
+        memoryCache = new MemoryCache<>();
+        compactingCache = new CompactingCache(cacheLimit, evictionPolicy);
+        offHeapCache = new OffHeapCache(cacheLimit);
+        keys = new String[cacheLimit * 2];
+        value = WeatherDataSamples.paris();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "city" + i;
+        }
+        for (int i = 0; i < cacheLimit; i++) {
+            boundedCache.put(keys[i], value);
+            memoryCache.put(keys[i], value);
+            compactingCache.put(keys[i], value);
+            offHeapCache.put(keys[i], value);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public WeatherData boundedHit() {
+        return boundedCache.get(keys[ThreadLocalRandom.current().nextInt(cacheLimit)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public WeatherData boundedHitContended() {
+        return boundedCache.get(keys[ThreadLocalRandom.current().nextInt(cacheLimit)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public WeatherData boundedMiss() {
+        return boundedCache.get(keys[cacheLimit + ThreadLocalRandom.current().nextInt(cacheLimit)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void boundedPutWithEviction() {
+        boundedCache.put(keys[ThreadLocalRandom.current().nextInt(keys.length)], value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void boundedPutWithEvictionContended() {
+        boundedCache.put(keys[ThreadLocalRandom.current().nextInt(keys.length)], value);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public WeatherData memoryHit() {
+        return memoryCache.get(keys[ThreadLocalRandom.current().nextInt(cacheLimit)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public WeatherData compactHit() {
+        return compactingCache.get(keys[ThreadLocalRandom.current().nextInt(cacheLimit)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public WeatherData offHeapHit() {
+        return offHeapCache.get(keys[ThreadLocalRandom.current().nextInt(cacheLimit)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void offHeapPutWithEviction() {
+        offHeapCache.put(keys[ThreadLocalRandom.current().nextInt(keys.length)], value);
+    }
+}
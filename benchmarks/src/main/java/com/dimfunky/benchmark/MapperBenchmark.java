@@ -0,0 +1,71 @@
+package com.dimfunky.benchmark;
+
+import com.dimfunky.mapper.WeatherMapper;
+import com.dimfunky.model.CityCoords;
+import com.dimfunky.model.WeatherData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON mapping costs on the miss path (responses) and on the JSON string API (serialization)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+    private static final String GEOCODE_RESPONSE =
+            "[{\"name\":\"Paris\",\"local_names\":{\"fr\":\"Paris\",\"en\":\"Paris\"},"
+                    + "\"lat\":48.8588897,\"lon\":2.3200410217200766,\"country\":\"FR\",\"state\":\"Ile-de-France\"}]";
+
+    private static final byte[] GEOCODE_RESPONSE_BYTES = GEOCODE_RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+    private String dataResponse;
+    private byte[] dataResponseBytes;
+    private WeatherData weatherData;
+
+    @Setup
+    public void setUp() {
+        dataResponse = WeatherDataSamples.dataResponse();
+        dataResponseBytes = dataResponse.getBytes(StandardCharsets.UTF_8);
+        weatherData = WeatherDataSamples.paris();
+    }
+
+    @Benchmark
+    public WeatherData toWeatherData() {
+        return WeatherMapper.toWeatherData(dataResponse);
+    }
+
+    @Benchmark
+    public CityCoords toCityCoords() {
+        return WeatherMapper.toCityCoords(GEOCODE_RESPONSE);
+    }
+
+    @Benchmark
+    public WeatherData toWeatherDataBytes() {
+        return WeatherMapper.toWeatherData(dataResponseBytes);
+    }
+
+    @Benchmark
+    public CityCoords toCityCoordsBytes() {
+        return WeatherMapper.toCityCoords(GEOCODE_RESPONSE_BYTES);
+    }
+
+    @Benchmark
+    public String weatherDataToJson() {
+        return WeatherMapper.weatherDataToJson(weatherData);
+    }
+}
@@ -0,0 +1,237 @@
+package com.dimfunky.benchmark;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Offline {@link HttpClient} answering the 'Geocode API' and 'Data API' requests with canned responses.
+ * <p>
+ * The geocode response echoes the requested city name, so the SDK caches the data under the requested key.
+ * An optional latency simulates the network round trip.
+ */
+public class StubHttpClient extends HttpClient {
+    private static final String GEOCODE_RESPONSE = "[{\"name\":\"%s\",\"lat\":48.8588897,\"lon\":2.3200410217200766,\"country\":\"FR\"}]";
+    private static final byte[] DATA_RESPONSE = readResource("weather-data-response.json");
+
+    private final long latencyNanos;
+
+    public StubHttpClient() {
+        this(Duration.ZERO);
+    }
+
+    public StubHttpClient(final Duration latency) {
+        this.latencyNanos = latency.toNanos();
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(final HttpRequest request, final HttpResponse.BodyHandler<T> handler) {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        return respond(request, handler);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request,
+                                                            final HttpResponse.BodyHandler<T> handler) {
+        if (latencyNanos == 0) {
+            return CompletableFuture.completedFuture(respond(request, handler));
+        }
+        return CompletableFuture.supplyAsync(() -> respond(request, handler),
+                CompletableFuture.delayedExecutor(latencyNanos, TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request,
+                                                            final HttpResponse.BodyHandler<T> handler,
+                                                            final HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+        return sendAsync(request, handler);
+    }
+
+    private static <T> HttpResponse<T> respond(final HttpRequest request, final HttpResponse.BodyHandler<T> handler) {
+        URI uri = request.uri();
+        byte[] body = uri.getPath().contains("/geo/")
+                ? String.format(GEOCODE_RESPONSE, cityName(uri)).getBytes(StandardCharsets.UTF_8)
+                : DATA_RESPONSE;
+        var headers = HttpHeaders.of(Map.of("content-type", List.of("application/json")), (name, value) -> true);
+        var responseInfo = new StubResponseInfo(headers);
+        HttpResponse.BodySubscriber<T> subscriber = handler.apply(responseInfo);
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onNext(List.of(ByteBuffer.wrap(body)));
+        subscriber.onComplete();
+        T responseBody = subscriber.getBody().toCompletableFuture().join();
+        return new StubResponse<>(request, headers, responseBody);
+    }
+
+    private static String cityName(final URI uri) {
+        for (String parameter : uri.getRawQuery().split("&")) {
+            if (parameter.startsWith("q=")) {
+                return URLDecoder.decode(parameter.substring(2), StandardCharsets.UTF_8);
+            }
+        }
+        return "";
+    }
+
+    private static byte[] readResource(final String name) {
+        try (InputStream inputStream = StubHttpClient.class.getClassLoader().getResourceAsStream(name)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Resource not found: " + name);
+            }
+            return inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+        return Redirect.NEVER;
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+        return Optional.empty();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+        return null;
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+        return null;
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Version version() {
+        return Version.HTTP_2;
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+        return Optional.empty();
+    }
+
+    private static final class StubResponseInfo implements HttpResponse.ResponseInfo {
+        private final HttpHeaders headers;
+
+        private StubResponseInfo(final HttpHeaders headers) {
+            this.headers = headers;
+        }
+
+        @Override
+        public int statusCode() {
+            return 200;
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return headers;
+        }
+
+        @Override
+        public Version version() {
+            return Version.HTTP_2;
+        }
+    }
+
+    private static final class StubResponse<T> implements HttpResponse<T> {
+        private final HttpRequest request;
+        private final HttpHeaders headers;
+        private final T body;
+
+        private StubResponse(final HttpRequest request, final HttpHeaders headers, final T body) {
+            this.request = request;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public int statusCode() {
+            return 200;
+        }
+
+        @Override
+        public HttpRequest request() {
+            return request;
+        }
+
+        @Override
+        public Optional<HttpResponse<T>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return headers;
+        }
+
+        @Override
+        public T body() {
+            return body;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public Version version() {
+            return Version.HTTP_2;
+        }
+    }
+}
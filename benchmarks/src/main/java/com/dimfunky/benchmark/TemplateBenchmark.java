@@ -0,0 +1,107 @@
+package com.dimfunky.benchmark;
+
+import com.dimfunky.client.WeatherHttpClient;
+import com.dimfunky.environment.WeatherEnvironment;
+import com.dimfunky.model.WeatherData;
+import com.dimfunky.template.WeatherTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link WeatherTemplate#getWeatherInfo(String)} over {@link StubHttpClient}.
+ * <p>
+ * Hit benchmarks read warmed cities, miss benchmarks rotate over twice as many cities as the cache limit,
+ * so every call goes through geocoding (until the geocode cache is warm), the data request,
+ * JSON mapping and eviction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateBenchmark {
+    private static final int CACHE_LIMIT = 1000;
+
+    private WeatherTemplate template;
+    private String[] hitCities;
+    private String[] missCities;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        template = new WeatherTemplate(new WeatherHttpClient(new StubHttpClient()),
+                new WeatherEnvironment.OnDemand(WeatherDataSamples.API_KEY, CACHE_LIMIT));
+        hitCities = new String[CACHE_LIMIT];
+        missCities = new String[CACHE_LIMIT * 2];
+        for (int i = 0; i < hitCities.length; i++) {
+            hitCities[i] = "Hit City " + toLetters(i);
+            template.getWeatherInfo(hitCities[i]);
+        }
+        for (int i = 0; i < missCities.length; i++) {
+            missCities[i] = "Miss City " + toLetters(i);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public WeatherData hit() {
+        return template.getWeatherInfo(hitCities[ThreadLocalRandom.current().nextInt(hitCities.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public WeatherData hitContended() {
+        return template.getWeatherInfo(hitCities[ThreadLocalRandom.current().nextInt(hitCities.length)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public WeatherData missWithEviction() {
+        return template.getWeatherInfo(missCities[ThreadLocalRandom.current().nextInt(missCities.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public WeatherData missWithEvictionContended() {
+        return template.getWeatherInfo(missCities[ThreadLocalRandom.current().nextInt(missCities.length)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String hitJsonString() {
+        return template.getWeatherInfoJsonString(hitCities[ThreadLocalRandom.current().nextInt(hitCities.length)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ByteBuffer hitJsonBuffer() {
+        return template.getWeatherInfoJsonBuffer(hitCities[ThreadLocalRandom.current().nextInt(hitCities.length)]);
+    }
+
+    /**
+     * City names may contain only letters, so the index is written with letters
+     */
+    private static String toLetters(final int index) {
+        var builder = new StringBuilder();
+        int value = index;
+        do {
+            builder.append((char) ('a' + value % 26));
+            value /= 26;
+        } while (value > 0);
+        return builder.toString();
+    }
+}
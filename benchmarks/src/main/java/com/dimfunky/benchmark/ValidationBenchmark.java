@@ -0,0 +1,48 @@
+package com.dimfunky.benchmark;
+
+import com.dimfunky.validation.CityKeys;
+import com.dimfunky.validation.InputValidation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * City name validation and key normalization on the hit path
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({"Paris", "San José-Los Altos", "Düsseldorf"})
+    public String cityName;
+
+    @Benchmark
+    public void validateCityName() {
+        InputValidation.validateCityName(cityName);
+    }
+
+    @Benchmark
+    public void validateAndLowerCase(final Blackhole blackhole) {
+        InputValidation.validateCityName(cityName);
+        blackhole.consume(cityName.toLowerCase());
+    }
+
+    @Benchmark
+    public String cityKey() {
+        return CityKeys.of(cityName);
+    }
+}
@@ -0,0 +1,51 @@
+package com.dimfunky.benchmark;
+
+import com.dimfunky.model.WeatherData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Sample data shared by the benchmarks
+ */
+final class WeatherDataSamples {
+    static final String API_KEY = "1234567890abcdefabcdef1234567890";
+
+    private WeatherDataSamples() {
+    }
+
+    static WeatherData paris() {
+        return new WeatherData()
+                .fetchedAt(Instant.now().getEpochSecond())
+                .coord(new WeatherData.Coord()
+                        .lat(48.8589)
+                        .lon(2.32))
+                .weather(new WeatherData.Weather()
+                        .main("Clouds")
+                        .description("scattered clouds"))
+                .temperature(new WeatherData.Temperature()
+                        .temp(285.96)
+                        .feelsLike(285.23))
+                .visibility(10000)
+                .wind(new WeatherData.Wind()
+                        .speed(5.14))
+                .sys(new WeatherData.Sys()
+                        .sunrise(1740293069L)
+                        .sunset(1740331441L))
+                .dateTime(1740311935L)
+                .timeZone(3600)
+                .name("Paris");
+    }
+
+    static String dataResponse() {
+        try (InputStream inputStream = WeatherDataSamples.class.getClassLoader()
+                .getResourceAsStream("weather-data-response.json")) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
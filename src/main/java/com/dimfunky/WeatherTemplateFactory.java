@@ -1,16 +1,16 @@
 package com.dimfunky;
 
+import com.dimfunky.cache.CacheSnapshotter;
 import com.dimfunky.client.WeatherHttpClient;
 import com.dimfunky.environment.WeatherEnvironment;
 import com.dimfunky.template.Polling;
 import com.dimfunky.template.WeatherTemplate;
 import com.dimfunky.template.WeatherTemplatePolling;
+import com.dimfunky.template.WeatherTemplateStaleWhileRevalidate;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-import static com.dimfunky.constant.WeatherUpdateMode.POLLING;
-
 /**
  * ! The SDK interacts only with the Free Access API, so be mindful of request limits when setting parameters !
  * <p>
@@ -24,6 +24,7 @@ import static com.dimfunky.constant.WeatherUpdateMode.POLLING;
 
 public class WeatherTemplateFactory {
     private static final Map<String, WeatherTemplate> instances = new ConcurrentHashMap<>();
+    private static final Map<String, CacheSnapshotter> snapshotters = new ConcurrentHashMap<>();
 
     private WeatherTemplateFactory() {
     }
@@ -36,7 +37,7 @@ public class WeatherTemplateFactory {
      * <p>
      *     value - created {@link WeatherTemplate} instance
      * <p>
-     * There are two types of environments that differ in their data cache update modes.
+     * There are three types of environments that differ in their data cache update modes.
      * Data is considered to be up-to-date if less than 10 minutes have passed.
      * <p>
      * Types are:
@@ -51,31 +52,59 @@ public class WeatherTemplateFactory {
      * <blockquote><pre>
      * {@link  WeatherEnvironment.Polling}
      * </pre></blockquote><p>
+     * - Updates the weather information on customer requests, but returns outdated data
+     * (within a grace period) at once and refreshes it in the background.
+     * Creates {@link WeatherTemplateStaleWhileRevalidate}.
+     * <blockquote><pre>
+     * {@link  WeatherEnvironment.StaleWhileRevalidate}
+     * </pre></blockquote><p>
      * <p>
      * {@link  WeatherEnvironment} accept parameters:
      * <p>
-     * {@code String apiKey} - Your API key. This parameter is required for both modes.
+     * {@code String apiKey} - Your API key. This parameter is required for all modes.
      * <p>
-     * {@code int cacheLimit} - The cache size, which defaults to 10. This parameter is optional for both modes.
+     * {@code int cacheLimit} - The cache size, which defaults to 10. This parameter is optional for all modes.
      * <p>
      * {@code long cacheUpdatePeriodSeconds} - The cache update period in seconds. Defaults to 9*60 (9 minutes)
      * ensures data relevance in the cache and provides a zero-latency response for requests.
      * This parameter is applicable only to the {@code Polling} mode and is optional.
      * <p>
+     * {@code long staleGraceSeconds} - The period after the data expiration, during which outdated data is returned.
+     * Defaults to 5*60 (5 minutes). This parameter is applicable only to the {@code StaleWhileRevalidate} mode
+     * and is optional.
+     * <p>
      * ! The SDK interacts only with the Free Access API, so be mindful of request limits when setting parameters !
      * <p>
+     * If {@link WeatherEnvironment#getSnapshotFile()} is set, the cache is restored from the file
+     * and saved to it periodically.
+     * <p>
+     * If {@link WeatherEnvironment#getRateLimiter()} is set, the requests of the instance are limited by it.
+     * Failed requests are retried according to {@link WeatherEnvironment#getRetryPolicy()} and suspended
+     * by {@link WeatherEnvironment#getCircuitBreaker()}.
+     * <p>
+     * Instances with the same transport settings ({@link WeatherEnvironment#getHttpVersion()},
+     * {@link WeatherEnvironment#getConnectTimeoutMillis()}, {@link WeatherEnvironment#getHttpThreads()})
+     * share one {@link java.net.http.HttpClient} and its connections, see {@link com.dimfunky.client.HttpClientPool}.
+     * <p>
      * If an instance with the provided {@code apiKey} already exists, it will not be created again.
      *
      * @param environment
+     * @throws com.dimfunky.exception.WeatherServiceException if the cache snapshot cannot be read
      */
 
     public static void createInstance(final WeatherEnvironment environment) {
         instances.computeIfAbsent(
                 environment.getApiKey(),
                 value -> {
-                    WeatherTemplate template = environment.getWeatherUpdateMode() == POLLING
-                            ? new WeatherTemplatePolling(new WeatherHttpClient(), environment)
-                            : new WeatherTemplate(new WeatherHttpClient(), environment);
+                    WeatherTemplate template = createTemplate(new WeatherHttpClient(environment), environment);
+
+                    if (environment.getSnapshotFile() != null) {
+                        var snapshotter = new CacheSnapshotter(environment.getCache(),
+                                environment.getSnapshotFile(), environment.getSnapshotPeriodSeconds());
+                        snapshotter.restore();
+                        snapshotter.start();
+                        snapshotters.put(environment.getApiKey(), snapshotter);
+                    }
 
                     if (template instanceof Polling) {
                         ((Polling) template).startPolling();
@@ -84,6 +113,17 @@ public class WeatherTemplateFactory {
                 });
     }
 
+    private static WeatherTemplate createTemplate(final WeatherHttpClient httpClient, final WeatherEnvironment environment) {
+        switch (environment.getWeatherUpdateMode()) {
+            case POLLING:
+                return new WeatherTemplatePolling(httpClient, environment);
+            case STALE_WHILE_REVALIDATE:
+                return new WeatherTemplateStaleWhileRevalidate(httpClient, environment);
+            default:
+                return new WeatherTemplate(httpClient, environment);
+        }
+    }
+
     /**
      * <pre>
      * </pre>
@@ -106,14 +146,21 @@ public class WeatherTemplateFactory {
      * Delete the instance by {@code apiKey}.
      * <p>
      * When deleting an instance with {@code Polling} mode, it also stops the scheduler thread for data updates.
+     * <p>
+     * If {@link WeatherEnvironment#getSnapshotFile()} is set, saves the final cache snapshot.
      *
      * @param apiKey
+     * @throws com.dimfunky.exception.WeatherServiceException if the cache snapshot cannot be written
      */
     public static void deleteInstance(final String apiKey) {
         WeatherTemplate template = instances.remove(apiKey);
         if (template instanceof Polling) {
             ((Polling) template).stopPolling();
         }
+        CacheSnapshotter snapshotter = snapshotters.remove(apiKey);
+        if (snapshotter != null) {
+            snapshotter.stop();
+        }
     }
 
     /**
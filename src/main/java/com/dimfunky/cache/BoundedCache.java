@@ -0,0 +1,381 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.constant.EvictionPolicy;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe cache with a size limit and O(1) amortized eviction (O(log n) for {@link EvictionPolicy#FIFO}).
+ * <p>
+ * Values are stored in a {@link ConcurrentHashMap}, so reads never block. The eviction order is kept
+ * in intrusive doubly-linked lists guarded by a lock, which makes the limit check and the removal
+ * of the victim a single atomic step on writes. Reads are recorded in a {@link ReadBuffer} without the lock
+ * and replayed under it by the next write, or by the reader once its buffer stripe is half full.
+ * A read is dropped only if its stripe is full while another thread holds the lock.
+ * <p>
+ * The entry to remove is chosen by {@link EvictionPolicy}:
+ * <p>
+ * {@link EvictionPolicy#FIFO} - entries are ordered by the {@code timestamp} function, then by the order
+ * of writes, in a tree. Older data (for example, reloaded from a file) costs the same as fresh data.
+ * <p>
+ * {@link EvictionPolicy#LRU} - entries are moved to the tail when their reads are replayed.
+ * <p>
+ * {@link EvictionPolicy#TINY_LFU} - new entries go to an LRU window of 1% of the limit. Entries leaving
+ * the window are admitted to the main LRU space only if {@link FrequencySketch} estimates
+ * they were requested more often than the main space victim.
+ *
+ * @param <T> type of the cached value
+ */
+public class BoundedCache<T> implements Cache<T> {
+    private final Map<String, Node<T>> store = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AccessOrder<T> window = new AccessOrder<>();
+    private final AccessOrder<T> main = new AccessOrder<>();
+    private final NavigableSet<Node<T>> byStamp = new TreeSet<>(
+            Comparator.<Node<T>>comparingLong(node -> node.stamp).thenComparingLong(node -> node.sequence));
+    private long sequence;
+
+    private final int limit;
+    private final int windowLimit;
+    private final EvictionPolicy evictionPolicy;
+    private final ToLongFunction<T> timestamp;
+    private final FrequencySketch sketch;
+    private final ReadBuffer readBuffer;
+
+    /**
+     * Creates a cache, where {@link EvictionPolicy#FIFO} uses the insertion order
+     *
+     * @param limit          maximum number of entries
+     * @param evictionPolicy {@link EvictionPolicy}
+     */
+    public BoundedCache(final int limit, final EvictionPolicy evictionPolicy) {
+        this(limit, evictionPolicy, value -> 0L);
+    }
+
+    /**
+     * Creates a cache, where {@link EvictionPolicy#FIFO} uses the order of values by {@code timestamp}
+     *
+     * @param limit          maximum number of entries
+     * @param evictionPolicy {@link EvictionPolicy}
+     * @param timestamp      function returning the creation time of the value
+     */
+    public BoundedCache(final int limit, final EvictionPolicy evictionPolicy, final ToLongFunction<T> timestamp) {
+        this.limit = limit;
+        this.windowLimit = Math.max(1, limit / 100);
+        this.evictionPolicy = evictionPolicy;
+        this.timestamp = timestamp;
+        this.sketch = evictionPolicy == EvictionPolicy.TINY_LFU ? new FrequencySketch(limit) : null;
+        this.readBuffer = evictionPolicy == EvictionPolicy.FIFO ? null : new ReadBuffer();
+    }
+
+    @Override
+    public T get(final String key) {
+        Node<T> node = store.get(key);
+        if (readBuffer != null) {
+            recordRead(key);
+        }
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public void put(final String key, final T value) {
+        lock.lock();
+        try {
+            drainReads();
+            Node<T> node = store.get(key);
+            if (node != null) {
+                update(node, value);
+            } else {
+                insert(key, value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T putIfAbsent(final String key, final T value) {
+        lock.lock();
+        try {
+            drainReads();
+            Node<T> node = store.get(key);
+            if (node != null) {
+                return node.value;
+            }
+            insert(key, value);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T compute(final String key, final BiFunction<String, ? super T, ? extends T> remappingFunction) {
+        lock.lock();
+        try {
+            drainReads();
+            Node<T> node = store.get(key);
+            T value = remappingFunction.apply(key, node == null ? null : node.value);
+            if (value == null) {
+                if (node != null) {
+                    unlink(node);
+                }
+            } else if (node != null) {
+                update(node, value);
+            } else {
+                insert(key, value);
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T remove(final String key) {
+        lock.lock();
+        try {
+            drainReads();
+            Node<T> node = store.get(key);
+            if (node == null) {
+                return null;
+            }
+            unlink(node);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        return store.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            drainReads();
+            store.clear();
+            window.clear();
+            main.clear();
+            byStamp.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void forEach(final BiConsumer<String, ? super T> action) {
+        store.forEach((key, node) -> action.accept(key, node.value));
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    private void recordRead(final String key) {
+        int pending = readBuffer.offer(key);
+        if ((pending < 0 || pending >= ReadBuffer.STRIPE_SIZE / 2) && lock.tryLock()) {
+            try {
+                drainReads();
+                if (pending < 0) {
+                    onAccess(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drainReads() {
+        if (readBuffer != null) {
+            readBuffer.drainTo(this::onAccess);
+        }
+    }
+
+    private void insert(final String key, final T value) {
+        Node<T> node = new Node<>(key, value);
+        store.put(key, node);
+        onInsert(node);
+    }
+
+    private void update(final Node<T> node, final T value) {
+        node.value = value;
+        onUpdate(node);
+    }
+
+    private void unlink(final Node<T> node) {
+        store.remove(node.key);
+        if (evictionPolicy == EvictionPolicy.FIFO) {
+            byStamp.remove(node);
+        } else {
+            segmentOf(node).remove(node);
+        }
+    }
+
+    private void onAccess(final String key) {
+        if (sketch != null) {
+            sketch.increment(key);
+        }
+        Node<T> node = store.get(key);
+        if (node != null) {
+            segmentOf(node).moveToLast(node);
+        }
+    }
+
+    private void onUpdate(final Node<T> node) {
+        if (evictionPolicy == EvictionPolicy.FIFO) {
+            byStamp.remove(node);
+            addByStamp(node);
+        } else {
+            segmentOf(node).moveToLast(node);
+        }
+    }
+
+    private void onInsert(final Node<T> node) {
+        switch (evictionPolicy) {
+            case FIFO:
+                addByStamp(node);
+                while (byStamp.size() > limit) {
+                    store.remove(byStamp.pollFirst().key);
+                }
+                break;
+            case LRU:
+                main.addLast(node);
+                evictFirst(main, limit);
+                break;
+            case TINY_LFU:
+                node.inWindow = true;
+                window.addLast(node);
+                while (window.size > windowLimit) {
+                    admit(window.first());
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown eviction policy: " + evictionPolicy);
+        }
+    }
+
+    private void addByStamp(final Node<T> node) {
+        node.stamp = timestamp.applyAsLong(node.value);
+        node.sequence = sequence++;
+        byStamp.add(node);
+    }
+
+    /**
+     * Moves the {@code candidate} from the window to the main space or evicts it,
+     * depending on which of the candidate and the main space victim is more frequent.
+     */
+    private void admit(final Node<T> candidate) {
+        window.remove(candidate);
+        candidate.inWindow = false;
+        if (main.size < limit - windowLimit) {
+            main.addLast(candidate);
+            return;
+        }
+        Node<T> victim = main.first();
+        if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            main.remove(victim);
+            store.remove(victim.key);
+            main.addLast(candidate);
+        } else {
+            store.remove(candidate.key);
+        }
+    }
+
+    private void evictFirst(final AccessOrder<T> order, final int maxSize) {
+        while (order.size > maxSize) {
+            Node<T> victim = order.first();
+            order.remove(victim);
+            store.remove(victim.key);
+        }
+    }
+
+    private AccessOrder<T> segmentOf(final Node<T> node) {
+        return node.inWindow ? window : main;
+    }
+
+    private static final class Node<T> {
+        private final String key;
+        private volatile T value;
+        private long stamp;
+        private long sequence;
+        private boolean inWindow;
+        private Node<T> prev;
+        private Node<T> next;
+
+        private Node(final String key, final T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Doubly-linked list with a sentinel, the first node is the next to be evicted
+     */
+    private static final class AccessOrder<T> {
+        private final Node<T> head = new Node<>(null, null);
+        private int size;
+
+        private AccessOrder() {
+            clear();
+        }
+
+        private Node<T> first() {
+            return size == 0 ? null : head.next;
+        }
+
+        private void addLast(final Node<T> node) {
+            linkAfter(head.prev, node);
+        }
+
+        private void moveToLast(final Node<T> node) {
+            if (head.prev != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private void remove(final Node<T> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        private void clear() {
+            head.prev = head;
+            head.next = head;
+            size = 0;
+        }
+
+        private void linkAfter(final Node<T> after, final Node<T> node) {
+            node.prev = after;
+            node.next = after.next;
+            after.next.prev = node;
+            after.next = node;
+            size++;
+        }
+    }
+}
@@ -1,15 +1,85 @@
 package com.dimfunky.cache;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Thread-safe key-value store used by the SDK for the weather data and the city coordinates.
+ * <p>
+ * Keys are lowercase city names. Bounded implementations remove entries on their own when
+ * {@link Cache#getLimit()} is reached, by any operation adding an entry.
+ * <p>
+ * {@link Cache#putIfAbsent(String, Object)} and {@link Cache#compute(String, BiFunction)} must be atomic
+ * for the key. Custom implementations can be provided to
+ * {@link com.dimfunky.environment.WeatherEnvironment#cache(Cache)}.
+ *
+ * @param <T> type of the cached value
+ */
 public interface Cache<T> {
     T get(String key);
 
     void put(String key, T value);
 
+    /**
+     * Puts the value if the cache contains no entry with the {@code key}
+     *
+     * @param key
+     * @param value
+     * @return current value or {@code null} if the value was put
+     */
+    T putIfAbsent(String key, T value);
+
+    /**
+     * Atomically replaces the value of the {@code key} with the result of the {@code remappingFunction}
+     * applied to the key and the current value ({@code null} if absent). A {@code null} result removes the entry.
+     * <p>
+     * The function must not modify the cache.
+     *
+     * @param key
+     * @param remappingFunction
+     * @return new value or {@code null} if the entry was removed
+     */
+    T compute(String key, BiFunction<String, ? super T, ? extends T> remappingFunction);
+
+    /**
+     * Removes the entry with the {@code key}
+     *
+     * @param key
+     * @return removed value or {@code null} if the entry was not found
+     */
+    T remove(String key);
+
     boolean contains(String key);
 
     int size();
 
+    /**
+     * Maximum number of entries, {@link Integer#MAX_VALUE} if the cache is unbounded
+     */
+    int getLimit();
+
     void clear();
 
-    Object getAll();
+    /**
+     * Performs the {@code action} for each entry. Entries added or removed concurrently may be skipped.
+     * <p>
+     * The action must not modify the cache.
+     *
+     * @param action
+     */
+    void forEach(BiConsumer<String, ? super T> action);
+
+    /**
+     * Returns a read-only snapshot of the cache entries
+     *
+     * @return {@link Map}
+     */
+    default Map<String, T> getAll() {
+        Map<String, T> snapshot = new HashMap<>();
+        forEach(snapshot::put);
+        return Collections.unmodifiableMap(snapshot);
+    }
 }
@@ -0,0 +1,115 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.model.WeatherData;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Saves the weather cache to a local file and restores it on startup.
+ * <p>
+ * Entries are restored with their original {@link WeatherData#fetchedAt()}, so the expiration
+ * of the restored data is checked correctly. See {@link WeatherSnapshotFormat} for the file format.
+ */
+public class CacheSnapshotter {
+    private static final long STOP_TIMEOUT_SECONDS = 10;
+
+    private final Cache<WeatherData> cache;
+    private final Path file;
+    private final long periodSeconds;
+    private final LongAdder saveErrorCount = new LongAdder();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param cache         cache to save and restore
+     * @param file          snapshot file
+     * @param periodSeconds period of saving the snapshot in seconds
+     */
+    public CacheSnapshotter(final Cache<WeatherData> cache, final Path file, final long periodSeconds) {
+        this.cache = cache;
+        this.file = file;
+        this.periodSeconds = periodSeconds;
+    }
+
+    /**
+     * Puts all entries from the snapshot file to the cache. Does nothing if the file does not exist.
+     *
+     * @return number of restored entries
+     * @throws WeatherServiceException if the file cannot be read or is not a valid snapshot
+     */
+    public int restore() {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try {
+            Map<String, WeatherData> entries = WeatherSnapshotFormat.read(file);
+            entries.forEach(cache::put);
+            return entries.size();
+        } catch (IOException e) {
+            throw new WeatherServiceException("Unable to read weather cache snapshot " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes all cache entries to the snapshot file
+     *
+     * @throws WeatherServiceException if the file cannot be written
+     */
+    public synchronized void save() {
+        try {
+            WeatherSnapshotFormat.write(file, cache.getAll());
+        } catch (IOException e) {
+            throw new WeatherServiceException("Unable to write weather cache snapshot " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Starts saving the snapshot every {@code periodSeconds}. Failed saves are counted
+     * in {@link CacheSnapshotter#getSaveErrorCount()} and retried on the next period.
+     */
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                save();
+            } catch (RuntimeException e) {
+                saveErrorCount.increment();
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic saving, waits for a running periodic save to finish and saves the final snapshot
+     *
+     * @throws WeatherServiceException if the file cannot be written
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        save();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Number of failed periodic saves
+     */
+    public long getSaveErrorCount() {
+        return saveErrorCount.sum();
+    }
+}
@@ -0,0 +1,134 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.model.WeatherData;
+
+import java.util.function.UnaryOperator;
+
+import static com.dimfunky.cache.WeatherFieldMask.COORD;
+import static com.dimfunky.cache.WeatherFieldMask.DATE_TIME;
+import static com.dimfunky.cache.WeatherFieldMask.FEELS_LIKE;
+import static com.dimfunky.cache.WeatherFieldMask.FETCHED_AT;
+import static com.dimfunky.cache.WeatherFieldMask.LAT;
+import static com.dimfunky.cache.WeatherFieldMask.LON;
+import static com.dimfunky.cache.WeatherFieldMask.SUNRISE;
+import static com.dimfunky.cache.WeatherFieldMask.SUNSET;
+import static com.dimfunky.cache.WeatherFieldMask.SYS;
+import static com.dimfunky.cache.WeatherFieldMask.TEMP;
+import static com.dimfunky.cache.WeatherFieldMask.TEMPERATURE;
+import static com.dimfunky.cache.WeatherFieldMask.TIME_ZONE;
+import static com.dimfunky.cache.WeatherFieldMask.VISIBILITY;
+import static com.dimfunky.cache.WeatherFieldMask.WEATHER;
+import static com.dimfunky.cache.WeatherFieldMask.WIND;
+import static com.dimfunky.cache.WeatherFieldMask.WIND_SPEED;
+
+/**
+ * Immutable flat representation of {@link WeatherData} for storing in the cache.
+ * <p>
+ * All numbers are kept as primitives in a single object, instead of about a dozen objects of
+ * {@link WeatherData}, its nested objects and boxed numbers. Absent values are marked in a bitmask,
+ * so {@link CompactWeatherData#toWeatherData()} restores {@code null}s exactly.
+ */
+public final class CompactWeatherData {
+    private final int mask;
+    private final long fetchedAt;
+    private final double lat;
+    private final double lon;
+    private final String weatherMain;
+    private final String weatherDescription;
+    private final double temp;
+    private final double feelsLike;
+    private final int visibility;
+    private final double windSpeed;
+    private final long dateTime;
+    private final long sunrise;
+    private final long sunset;
+    private final int timeZone;
+    private final String name;
+
+    private CompactWeatherData(final WeatherData data, final UnaryOperator<String> strings) {
+        var coord = data.coord();
+        var weather = data.weather();
+        var temperature = data.temperature();
+        var wind = data.wind();
+        var sys = data.sys();
+
+        int bits = WeatherFieldMask.of(data);
+        this.mask = bits;
+        this.fetchedAt = (bits & FETCHED_AT) != 0 ? data.fetchedAt() : 0L;
+        this.lat = (bits & LAT) != 0 ? coord.lat() : 0d;
+        this.lon = (bits & LON) != 0 ? coord.lon() : 0d;
+        this.weatherMain = weather != null ? strings.apply(weather.main()) : null;
+        this.weatherDescription = weather != null ? strings.apply(weather.description()) : null;
+        this.temp = (bits & TEMP) != 0 ? temperature.temp() : 0d;
+        this.feelsLike = (bits & FEELS_LIKE) != 0 ? temperature.feelsLike() : 0d;
+        this.visibility = (bits & VISIBILITY) != 0 ? data.visibility() : 0;
+        this.windSpeed = (bits & WIND_SPEED) != 0 ? wind.speed() : 0d;
+        this.dateTime = (bits & DATE_TIME) != 0 ? data.dateTime() : 0L;
+        this.sunrise = (bits & SUNRISE) != 0 ? sys.sunrise() : 0L;
+        this.sunset = (bits & SUNSET) != 0 ? sys.sunset() : 0L;
+        this.timeZone = (bits & TIME_ZONE) != 0 ? data.timeZone() : 0;
+        this.name = data.name();
+    }
+
+    /**
+     * Creates the compact copy of the {@code data}
+     *
+     * @param data
+     * @param strings function returning the canonical instance of a weather condition string,
+     *                applied to the repeating {@link WeatherData.Weather} values
+     * @return {@link CompactWeatherData}
+     */
+    public static CompactWeatherData of(final WeatherData data, final UnaryOperator<String> strings) {
+        return new CompactWeatherData(data, strings);
+    }
+
+    /**
+     * Timestamp of the data update in UNIX epochSeconds, 0 if absent
+     */
+    public long fetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * Creates a new {@link WeatherData} view of this data
+     *
+     * @return {@link WeatherData}
+     */
+    public WeatherData toWeatherData() {
+        var data = new WeatherData()
+                .fetchedAt(has(FETCHED_AT) ? fetchedAt : null)
+                .visibility(has(VISIBILITY) ? visibility : null)
+                .dateTime(has(DATE_TIME) ? dateTime : null)
+                .timeZone(has(TIME_ZONE) ? timeZone : null)
+                .name(name);
+        if (has(COORD)) {
+            data.coord(new WeatherData.Coord()
+                    .lat(has(LAT) ? lat : null)
+                    .lon(has(LON) ? lon : null));
+        }
+        if (has(WEATHER)) {
+            data.weather(new WeatherData.Weather()
+                    .main(weatherMain)
+                    .description(weatherDescription));
+        }
+        if (has(TEMPERATURE)) {
+            data.temperature(new WeatherData.Temperature()
+                    .temp(has(TEMP) ? temp : null)
+                    .feelsLike(has(FEELS_LIKE) ? feelsLike : null));
+        }
+        if (has(WIND)) {
+            data.wind(new WeatherData.Wind()
+                    .speed(has(WIND_SPEED) ? windSpeed : null));
+        }
+        if (has(SYS)) {
+            data.sys(new WeatherData.Sys()
+                    .sunrise(has(SUNRISE) ? sunrise : null)
+                    .sunset(has(SUNSET) ? sunset : null));
+        }
+        return data;
+    }
+
+    private boolean has(final int bit) {
+        return WeatherFieldMask.has(mask, bit);
+    }
+}
@@ -0,0 +1,119 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.constant.EvictionPolicy;
+import com.dimfunky.model.WeatherData;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Weather cache storing the data as {@link CompactWeatherData}.
+ * <p>
+ * Takes several times less heap per entry than storing {@link WeatherData}: the data is flattened
+ * to primitives and the weather condition strings, which repeat across cities, are shared.
+ * In exchange, every {@link CompactingCache#get(String)} creates a new {@link WeatherData},
+ * and the JSON of an entry is not memoized between calls.
+ * <p>
+ * Entries are stored in a {@link BoundedCache}, {@link EvictionPolicy#FIFO} uses the {@link WeatherData#fetchedAt()} order.
+ */
+public class CompactingCache implements Cache<WeatherData> {
+    /**
+     * Maximum number of shared weather condition strings, the API uses a few hundred
+     */
+    static final int MAX_STRINGS = 4096;
+
+    private final BoundedCache<CompactWeatherData> store;
+    private final Map<String, String> strings = new ConcurrentHashMap<>();
+
+    /**
+     * @param limit          maximum number of entries
+     * @param evictionPolicy {@link EvictionPolicy}
+     */
+    public CompactingCache(final int limit, final EvictionPolicy evictionPolicy) {
+        this.store = new BoundedCache<>(limit, evictionPolicy, CompactWeatherData::fetchedAt);
+    }
+
+    /**
+     * Returns a new {@link WeatherData} decoded from the stored entry
+     */
+    @Override
+    public WeatherData get(final String key) {
+        return decode(store.get(key));
+    }
+
+    @Override
+    public void put(final String key, final WeatherData value) {
+        store.put(key, CompactWeatherData.of(value, this::canonical));
+    }
+
+    @Override
+    public WeatherData putIfAbsent(final String key, final WeatherData value) {
+        return decode(store.putIfAbsent(key, CompactWeatherData.of(value, this::canonical)));
+    }
+
+    @Override
+    public WeatherData compute(final String key,
+                               final BiFunction<String, ? super WeatherData, ? extends WeatherData> remappingFunction) {
+        WeatherData[] result = new WeatherData[1];
+        store.compute(key, (k, data) -> {
+            result[0] = remappingFunction.apply(k, decode(data));
+            return result[0] == null ? null : CompactWeatherData.of(result[0], this::canonical);
+        });
+        return result[0];
+    }
+
+    @Override
+    public WeatherData remove(final String key) {
+        return decode(store.remove(key));
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        return store.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public void clear() {
+        store.clear();
+    }
+
+    @Override
+    public void forEach(final BiConsumer<String, ? super WeatherData> action) {
+        store.forEach((key, data) -> action.accept(key, data.toWeatherData()));
+    }
+
+    @Override
+    public int getLimit() {
+        return store.getLimit();
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return store.getEvictionPolicy();
+    }
+
+    private static WeatherData decode(final CompactWeatherData data) {
+        return data == null ? null : data.toWeatherData();
+    }
+
+    private String canonical(final String value) {
+        if (value == null) {
+            return null;
+        }
+        String canonicalValue = strings.get(value);
+        if (canonicalValue != null) {
+            return canonicalValue;
+        }
+        if (strings.size() >= MAX_STRINGS) {
+            return value;
+        }
+        canonicalValue = strings.putIfAbsent(value, value);
+        return canonicalValue != null ? canonicalValue : value;
+    }
+}
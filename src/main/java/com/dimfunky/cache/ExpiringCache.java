@@ -0,0 +1,198 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.concurrent.WeatherClock;
+import com.dimfunky.model.WeatherData;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Weather cache removing the entries {@code lifetimeSeconds} after their {@link WeatherData#fetchedAt()}.
+ * <p>
+ * Wraps another cache and keeps the deadlines of its entries in a {@link TimingWheel}. Every call checks
+ * the {@link WeatherClock}, and once per second of the clock the thread that gets the lock advances the wheel
+ * and removes the entries that have outlived their deadlines. Other threads do not wait for it.
+ * The cost of the removal is proportional to the number of removed entries, the cache is never scanned.
+ * <p>
+ * The lifetime is longer than the time to live of the data, so expired data stays available
+ * for the stale-while-revalidate mode and the rate limit fallback until it is removed.
+ * Entries without {@link WeatherData#fetchedAt()} are never removed.
+ */
+public class ExpiringCache implements Cache<WeatherData> {
+    private final Cache<WeatherData> cache;
+    private final WeatherClock clock;
+    private final long lifetimeSeconds;
+    private final TimingWheel wheel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder expiredCount = new LongAdder();
+    private volatile long lastExpiredSecond;
+
+    /**
+     * Wraps the cache, scheduling the removal of the entries it already holds
+     *
+     * @param cache           cache storing the entries
+     * @param clock           source of the current time
+     * @param lifetimeSeconds time in seconds after {@link WeatherData#fetchedAt()} when an entry is removed
+     */
+    public ExpiringCache(final Cache<WeatherData> cache, final WeatherClock clock, final long lifetimeSeconds) {
+        this.cache = cache;
+        this.clock = clock;
+        this.lifetimeSeconds = lifetimeSeconds;
+        this.lastExpiredSecond = clock.epochSecond();
+        this.wheel = new TimingWheel(lastExpiredSecond);
+        cache.forEach(this::schedule);
+    }
+
+    @Override
+    public WeatherData get(final String key) {
+        expire();
+        return cache.get(key);
+    }
+
+    @Override
+    public void put(final String key, final WeatherData value) {
+        expire();
+        cache.put(key, value);
+        schedule(key, value);
+    }
+
+    @Override
+    public WeatherData putIfAbsent(final String key, final WeatherData value) {
+        expire();
+        WeatherData current = cache.putIfAbsent(key, value);
+        if (current == null) {
+            schedule(key, value);
+        }
+        return current;
+    }
+
+    @Override
+    public WeatherData compute(final String key,
+                               final BiFunction<String, ? super WeatherData, ? extends WeatherData> remappingFunction) {
+        expire();
+        boolean[] changed = new boolean[1];
+        WeatherData value = cache.compute(key, (k, current) -> {
+            WeatherData computed = remappingFunction.apply(k, current);
+            changed[0] = computed != current;
+            return computed;
+        });
+        if (changed[0]) {
+            schedule(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public WeatherData remove(final String key) {
+        expire();
+        WeatherData value = cache.remove(key);
+        schedule(key, null);
+        return value;
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        expire();
+        return cache.contains(key);
+    }
+
+    @Override
+    public int size() {
+        expire();
+        return cache.size();
+    }
+
+    @Override
+    public int getLimit() {
+        return cache.getLimit();
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            cache.clear();
+            wheel.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void forEach(final BiConsumer<String, ? super WeatherData> action) {
+        expire();
+        cache.forEach(action);
+    }
+
+    public Cache<WeatherData> getDelegate() {
+        return cache;
+    }
+
+    public long getLifetimeSeconds() {
+        return lifetimeSeconds;
+    }
+
+    /**
+     * Number of entries removed after their lifetime
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    /**
+     * Removes the entries that have outlived their deadlines, if the clock has moved since the last call.
+     * An entry replaced by newer data in the meantime is kept and scheduled again.
+     */
+    private void expire() {
+        long now = clock.epochSecond();
+        if (now <= lastExpiredSecond || !lock.tryLock()) {
+            return;
+        }
+        List<String> dueKeys;
+        try {
+            if (now <= lastExpiredSecond) {
+                return;
+            }
+            dueKeys = wheel.advance(now);
+            lastExpiredSecond = now;
+        } finally {
+            lock.unlock();
+        }
+        for (String key : dueKeys) {
+            WeatherData kept = cache.compute(key, (k, current) -> {
+                if (current != null && isDue(current, now)) {
+                    expiredCount.increment();
+                    return null;
+                }
+                return current;
+            });
+            if (kept != null) {
+                schedule(key, kept);
+            }
+        }
+    }
+
+    private boolean isDue(final WeatherData data, final long now) {
+        return data.fetchedAt() != null && data.fetchedAt() + lifetimeSeconds <= now;
+    }
+
+    /**
+     * Schedules the removal of the value, or cancels the scheduled removal for {@code null}
+     * and for a value without {@link WeatherData#fetchedAt()}
+     */
+    private void schedule(final String key, final WeatherData value) {
+        lock.lock();
+        try {
+            if (value == null || value.fetchedAt() == null) {
+                wheel.cancel(key);
+            } else {
+                wheel.schedule(key, value.fetchedAt() + lifetimeSeconds);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
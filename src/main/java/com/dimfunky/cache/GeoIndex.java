@@ -0,0 +1,316 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.concurrent.WeatherClock;
+import com.dimfunky.model.WeatherData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Grid index of weather data by the location of the {@link WeatherData#coord()}.
+ * <p>
+ * The globe is split into square cells of the {@code radiusMeters} side (in latitude degrees),
+ * so the points within the radius of a location lie in the cell of the location or in its neighbours.
+ * {@link GeoIndex#findNearest(double, double)} checks these cells only, whatever the number of points.
+ * <p>
+ * One point is kept per location (rounded to 6 decimal places), a newer data replaces an older one.
+ * Points without {@link WeatherData#fetchedAt()} are treated as expired.
+ * When the index is full, the points indexed earliest are removed. The points are queued in the order
+ * of indexing, so the removal does not scan the index, and one thread at a time removes just enough
+ * points to get back to the limit. Expired points are removed when {@link GeoIndex#findNearest(double, double)}
+ * comes across them.
+ */
+public class GeoIndex {
+    /**
+     * Default radius = 1 km, within which the weather data of a point is used for another location
+     */
+    public static final double DEFAULT_RADIUS_METERS = 1_000;
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180;
+    private static final double MIN_CELL_DEGREES = 0.001;
+    private static final double SCALE = 1_000_000;
+
+    private final double radiusMeters;
+    private final double cellDegrees;
+    private final int lonCells;
+    private final int limit;
+    private final WeatherClock clock;
+    private final long ttlSeconds;
+    private final Map<Long, Map<Long, WeatherData>> cells = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    /**
+     * Indexed data in the order of indexing. Data replaced or removed in the meantime stays in the queue
+     * until it is polled or the queue is compacted.
+     */
+    private final Queue<WeatherData> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * @param radiusMeters distance within which a point is found for a location, {@code 0} - points are never found
+     * @param limit        maximum number of points
+     */
+    public GeoIndex(final double radiusMeters, final int limit) {
+        this(radiusMeters, limit, WeatherClock.system(), WeatherData.TTL_SECONDS);
+    }
+
+    /**
+     * @param radiusMeters distance within which a point is found for a location, {@code 0} - points are never found
+     * @param limit        maximum number of points
+     * @param clock        source of the current time for the expiration
+     * @param ttlSeconds   time in seconds during which a point is found after its {@link WeatherData#fetchedAt()}
+     */
+    public GeoIndex(final double radiusMeters, final int limit, final WeatherClock clock, final long ttlSeconds) {
+        this.radiusMeters = radiusMeters;
+        this.cellDegrees = Math.max(MIN_CELL_DEGREES, radiusMeters / METERS_PER_DEGREE);
+        this.lonCells = (int) Math.ceil(360 / cellDegrees);
+        this.limit = limit;
+        this.clock = clock;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    /**
+     * Indexes the data at its coordinates, unless the index holds newer data of the same location.
+     * Data without coordinates is ignored.
+     *
+     * @param data
+     */
+    public void put(final WeatherData data) {
+        WeatherData.Coord coord = data.coord();
+        if (coord == null || coord.lat() == null || coord.lon() == null) {
+            return;
+        }
+        double lat = coord.lat();
+        double lon = coord.lon();
+        long point = pointOf(lat, lon);
+        boolean[] added = new boolean[1];
+        boolean[] indexed = new boolean[1];
+        cells.compute(cellOf(lat, lon), (cell, points) -> {
+            Map<Long, WeatherData> target = points != null ? points : new ConcurrentHashMap<>();
+            WeatherData current = target.get(point);
+            if (current == null) {
+                added[0] = true;
+                indexed[0] = true;
+                target.put(point, data);
+            } else if (!isOlder(data, current)) {
+                indexed[0] = current != data;
+                target.put(point, data);
+            }
+            return target;
+        });
+        if (indexed[0]) {
+            order.add(data);
+            if (queued.incrementAndGet() > 2 * Math.max(limit, 1)) {
+                compact();
+            }
+        }
+        if (added[0] && size.incrementAndGet() > limit) {
+            evict();
+        }
+    }
+
+    /**
+     * Returns the closest unexpired data within the radius of the location
+     *
+     * @param lat latitude of the location
+     * @param lon longitude of the location
+     * @return {@link WeatherData} or {@code null} if there is no unexpired data within the radius
+     */
+    public WeatherData findNearest(final double lat, final double lon) {
+        if (radiusMeters == 0 || size.get() == 0) {
+            return null;
+        }
+        int latCell = latCellOf(lat);
+        int lonCell = lonCellOf(lon);
+        int lonSpan = lonSpanAt(lat);
+        long now = clock.epochSecond();
+        WeatherData nearest = null;
+        double nearestDistance = radiusMeters;
+        List<WeatherData> expired = null;
+        for (int latOffset = -1; latOffset <= 1; latOffset++) {
+            for (int lonOffset = -lonSpan; lonOffset <= lonSpan; lonOffset++) {
+                Map<Long, WeatherData> points = cells.get(cellKey(latCell + latOffset,
+                        Math.floorMod(lonCell + lonOffset, lonCells)));
+                if (points == null) {
+                    continue;
+                }
+                for (WeatherData data : points.values()) {
+                    if (data.fetchedAt() == null || data.isExpired(ttlSeconds, now)) {
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(data);
+                        continue;
+                    }
+                    double distance = distanceMeters(lat, lon, data.coord().lat(), data.coord().lon());
+                    if (distance <= nearestDistance) {
+                        nearest = data;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+        }
+        if (expired != null) {
+            expired.forEach(this::remove);
+        }
+        return nearest;
+    }
+
+    /**
+     * Removes the point of the data, if it is still indexed
+     *
+     * @param data
+     */
+    public void remove(final WeatherData data) {
+        double lat = data.coord().lat();
+        double lon = data.coord().lon();
+        long point = pointOf(lat, lon);
+        cells.computeIfPresent(cellOf(lat, lon), (cell, points) -> {
+            if (points.remove(point, data)) {
+                size.decrementAndGet();
+            }
+            return points.isEmpty() ? null : points;
+        });
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public double getRadiusMeters() {
+        return radiusMeters;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * Key of the location rounded to 6 decimal places (about 0.1 m), under which its point is indexed
+     *
+     * @param lat latitude of the location
+     * @param lon longitude of the location
+     * @return location key
+     */
+    public static long pointOf(final double lat, final double lon) {
+        return Math.round(lat * SCALE) << 32 | (Math.round(lon * SCALE) & 0xFFFF_FFFFL);
+    }
+
+    public void clear() {
+        evictionLock.lock();
+        try {
+            cells.clear();
+            size.set(0);
+            order.clear();
+            queued.set(0);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Great-circle distance between two locations (haversine formula)
+     */
+    static double distanceMeters(final double lat1, final double lon1, final double lat2, final double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLon = Math.sin(dLon / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Number of longitude cells on each side of the location to check: a degree of longitude
+     * gets shorter towards the poles, so the radius spans more cells
+     */
+    private int lonSpanAt(final double lat) {
+        double radiusDegrees = radiusMeters / METERS_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(Math.min(90, Math.abs(lat) + radiusDegrees)));
+        double span = Math.ceil(radiusDegrees / (cellDegrees * cos));
+        return span < lonCells / 2.0 ? (int) span : lonCells / 2;
+    }
+
+    /**
+     * Removes the points indexed earliest until the index is back to the limit. Concurrent puts
+     * over the limit wait for each other, so each excess point is removed once.
+     */
+    private void evict() {
+        evictionLock.lock();
+        try {
+            while (size.get() > limit) {
+                WeatherData data = order.poll();
+                if (data == null) {
+                    return;
+                }
+                queued.decrementAndGet();
+                remove(data);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the replaced and removed data from the queue, keeping the order of the indexed data
+     */
+    private void compact() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int count = queued.get();
+            for (int i = 0; i < count; i++) {
+                WeatherData data = order.poll();
+                if (data == null) {
+                    break;
+                }
+                if (isIndexed(data)) {
+                    order.add(data);
+                } else {
+                    queued.decrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean isIndexed(final WeatherData data) {
+        double lat = data.coord().lat();
+        double lon = data.coord().lon();
+        Map<Long, WeatherData> points = cells.get(cellOf(lat, lon));
+        return points != null && points.get(pointOf(lat, lon)) == data;
+    }
+
+    private static boolean isOlder(final WeatherData data, final WeatherData other) {
+        return data.fetchedAt() != null && other.fetchedAt() != null && data.fetchedAt() < other.fetchedAt();
+    }
+
+    private long cellOf(final double lat, final double lon) {
+        return cellKey(latCellOf(lat), lonCellOf(lon));
+    }
+
+    private int latCellOf(final double lat) {
+        return (int) Math.floor((lat + 90) / cellDegrees);
+    }
+
+    private int lonCellOf(final double lon) {
+        return Math.floorMod((int) Math.floor((lon + 180) / cellDegrees), lonCells);
+    }
+
+    private static long cellKey(final int latCell, final int lonCell) {
+        return (long) latCell << 32 | (lonCell & 0xFFFF_FFFFL);
+    }
+}
@@ -0,0 +1,241 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.constant.EvictionPolicy;
+import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.model.CityCoords;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Cache of geographical coordinates by the lowercase city name.
+ * <p>
+ * Coordinates of a city never change, so they are kept separately from the weather data,
+ * in a much larger {@link EvictionPolicy#LRU} cache. A city evicted from the weather cache
+ * then costs one 'Data API' request instead of two.
+ * <p>
+ * If a {@code file} is provided, the cache is loaded from it on creation and every new entry is appended
+ * to it as a tab-separated line {@code key name lat lon}, removals are appended as lines with empty coordinates.
+ * Later lines override earlier ones, the file is compacted on load when it contains more lines than entries.
+ */
+public class GeocodeCache implements Cache<CityCoords> {
+    private static final char SEPARATOR = '\t';
+
+    private final BoundedCache<CityCoords> store;
+    private final Path file;
+    private final LongAdder writeErrorCount = new LongAdder();
+
+    /**
+     * Creates in-memory cache
+     *
+     * @param limit maximum number of entries
+     */
+    public GeocodeCache(final int limit) {
+        this(limit, null);
+    }
+
+    /**
+     * Creates cache persisted to the {@code file}
+     *
+     * @param limit maximum number of entries
+     * @param file  file for storing entries, created if missing
+     * @throws WeatherServiceException if the file cannot be read or created
+     */
+    public GeocodeCache(final int limit, final Path file) {
+        this.store = new BoundedCache<>(limit, EvictionPolicy.LRU);
+        this.file = file;
+        if (file != null) {
+            load();
+        }
+    }
+
+    @Override
+    public CityCoords get(final String key) {
+        return store.get(key);
+    }
+
+    /**
+     * Puts the coordinates to the cache and appends them to the file, if the key is new or the coordinates changed.
+     * Write errors do not fail the call, they are counted in {@link GeocodeCache#getWriteErrorCount()}.
+     */
+    @Override
+    public void put(final String key, final CityCoords value) {
+        if (value == null || value.equals(store.get(key))) {
+            return;
+        }
+        store.put(key, value);
+        if (file != null) {
+            append(key, value);
+        }
+    }
+
+    /**
+     * Puts the coordinates to the cache and appends them to the file, if the key is new.
+     */
+    @Override
+    public CityCoords putIfAbsent(final String key, final CityCoords value) {
+        CityCoords current = store.putIfAbsent(key, value);
+        if (current == null && file != null) {
+            append(key, value);
+        }
+        return current;
+    }
+
+    /**
+     * Computes the coordinates and appends the change to the file
+     */
+    @Override
+    public CityCoords compute(final String key,
+                              final BiFunction<String, ? super CityCoords, ? extends CityCoords> remappingFunction) {
+        boolean[] changed = new boolean[1];
+        CityCoords value = store.compute(key, (k, current) -> {
+            CityCoords computed = remappingFunction.apply(k, current);
+            changed[0] = !Objects.equals(computed, current);
+            return computed;
+        });
+        if (changed[0] && file != null) {
+            append(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Removes the coordinates and appends the removal mark to the file
+     */
+    @Override
+    public CityCoords remove(final String key) {
+        CityCoords value = store.remove(key);
+        if (value != null && file != null) {
+            append(key, null);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        return store.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Clears the cache and truncates the file
+     */
+    @Override
+    public void clear() {
+        store.clear();
+        if (file != null) {
+            synchronized (this) {
+                try {
+                    Files.write(file, new byte[0]);
+                } catch (IOException e) {
+                    writeErrorCount.increment();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEach(final BiConsumer<String, ? super CityCoords> action) {
+        store.forEach(action);
+    }
+
+    @Override
+    public int getLimit() {
+        return store.getLimit();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Number of failed appends to the file
+     */
+    public long getWriteErrorCount() {
+        return writeErrorCount.sum();
+    }
+
+    private void load() {
+        try {
+            if (!Files.exists(file)) {
+                Files.createFile(file);
+                return;
+            }
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                parseLine(line);
+            }
+            if (lines.size() > store.size()) {
+                rewrite();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            throw new WeatherServiceException("Unable to load geocode cache from " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void parseLine(final String line) {
+        String[] parts = line.split(String.valueOf(SEPARATOR), -1);
+        if (parts.length != 4) {
+            return;
+        }
+        if (parts[2].isEmpty() && parts[3].isEmpty()) {
+            store.remove(parts[0]);
+            return;
+        }
+        try {
+            store.put(parts[0], new CityCoords()
+                    .name(parts[1])
+                    .lat(Double.parseDouble(parts[2]))
+                    .lon(Double.parseDouble(parts[3])));
+        } catch (NumberFormatException e) {
+            // skips a line corrupted by an interrupted write
+        }
+    }
+
+    private synchronized void rewrite() throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, CityCoords> entry : store.getAll().entrySet()) {
+                writer.write(toLine(entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    private synchronized void append(final String key, final CityCoords value) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(toLine(key, value));
+        } catch (IOException e) {
+            writeErrorCount.increment();
+        }
+    }
+
+    /**
+     * Returns the line of the entry, or the removal mark with empty coordinates if {@code value} is {@code null}
+     */
+    private static String toLine(final String key, final CityCoords value) {
+        if (value == null) {
+            return sanitize(key) + SEPARATOR + SEPARATOR + SEPARATOR + '\n';
+        }
+        return sanitize(key) + SEPARATOR + sanitize(value.name()) + SEPARATOR
+                + value.lat() + SEPARATOR + value.lon() + '\n';
+    }
+
+    private static String sanitize(final String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,76 @@
+package com.dimfunky.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RemoteCache} kept in the memory of the current process.
+ * <p>
+ * Lets several {@link TwoTierCache} instances (for example, several SDK instances in tests)
+ * share data and leases without an external store. Expired values and leases are removed on access.
+ */
+public class InProcessRemoteCache implements RemoteCache {
+    private final Map<String, Expiring<byte[]>> values = new ConcurrentHashMap<>();
+    private final Map<String, Expiring<String>> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] get(final String key) {
+        Expiring<byte[]> entry = values.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            values.remove(key, entry);
+            return null;
+        }
+        return entry.value.clone();
+    }
+
+    @Override
+    public void put(final String key, final byte[] value, final long ttlMillis) {
+        values.put(key, new Expiring<>(value.clone(), deadline(ttlMillis)));
+    }
+
+    @Override
+    public void remove(final String key) {
+        values.remove(key);
+    }
+
+    @Override
+    public boolean tryAcquireLease(final String key, final String owner, final long leaseMillis) {
+        long now = System.nanoTime();
+        Expiring<String> lease = leases.compute(key, (k, current) ->
+                current == null || current.isExpired(now) || current.value.equals(owner)
+                        ? new Expiring<>(owner, deadline(leaseMillis))
+                        : current);
+        return lease.value.equals(owner);
+    }
+
+    @Override
+    public void releaseLease(final String key, final String owner) {
+        leases.computeIfPresent(key, (k, current) -> current.value.equals(owner) ? null : current);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    private static long deadline(final long millis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static final class Expiring<V> {
+        private final V value;
+        private final long deadlineNanos;
+
+        private Expiring(final V value, final long deadlineNanos) {
+            this.value = value;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private boolean isExpired(final long nowNanos) {
+            return nowNanos - deadlineNanos >= 0;
+        }
+    }
+}
@@ -2,7 +2,14 @@ package com.dimfunky.cache;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
+/**
+ * Unbounded cache backed by a {@link ConcurrentHashMap}
+ *
+ * @param <T> type of the cached value
+ */
 public class MemoryCache<T> implements Cache<T> {
     private final Map<String, T> store = new ConcurrentHashMap<>();
 
@@ -16,6 +23,21 @@ public class MemoryCache<T> implements Cache<T> {
         store.put(key, value);
     }
 
+    @Override
+    public T putIfAbsent(String key, T value) {
+        return store.putIfAbsent(key, value);
+    }
+
+    @Override
+    public T compute(String key, BiFunction<String, ? super T, ? extends T> remappingFunction) {
+        return store.compute(key, remappingFunction);
+    }
+
+    @Override
+    public T remove(String key) {
+        return store.remove(key);
+    }
+
     @Override
     public boolean contains(String key) {
         return store.containsKey(key);
@@ -26,13 +48,18 @@ public class MemoryCache<T> implements Cache<T> {
         return store.size();
     }
 
+    @Override
+    public int getLimit() {
+        return Integer.MAX_VALUE;
+    }
+
     @Override
     public void clear() {
         store.clear();
     }
 
     @Override
-    public Map<String, T> getAll() {
-        return store;
+    public void forEach(BiConsumer<String, ? super T> action) {
+        store.forEach(action);
     }
 }
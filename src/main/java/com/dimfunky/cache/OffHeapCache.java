@@ -0,0 +1,536 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.concurrent.WeatherClock;
+import com.dimfunky.model.WeatherData;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import static com.dimfunky.cache.WeatherFieldMask.COORD;
+import static com.dimfunky.cache.WeatherFieldMask.DATE_TIME;
+import static com.dimfunky.cache.WeatherFieldMask.FEELS_LIKE;
+import static com.dimfunky.cache.WeatherFieldMask.FETCHED_AT;
+import static com.dimfunky.cache.WeatherFieldMask.LAT;
+import static com.dimfunky.cache.WeatherFieldMask.LON;
+import static com.dimfunky.cache.WeatherFieldMask.NAME;
+import static com.dimfunky.cache.WeatherFieldMask.SUNRISE;
+import static com.dimfunky.cache.WeatherFieldMask.SUNSET;
+import static com.dimfunky.cache.WeatherFieldMask.SYS;
+import static com.dimfunky.cache.WeatherFieldMask.TEMP;
+import static com.dimfunky.cache.WeatherFieldMask.TEMPERATURE;
+import static com.dimfunky.cache.WeatherFieldMask.TIME_ZONE;
+import static com.dimfunky.cache.WeatherFieldMask.VISIBILITY;
+import static com.dimfunky.cache.WeatherFieldMask.WEATHER;
+import static com.dimfunky.cache.WeatherFieldMask.WEATHER_DESCRIPTION;
+import static com.dimfunky.cache.WeatherFieldMask.WEATHER_MAIN;
+import static com.dimfunky.cache.WeatherFieldMask.WIND;
+import static com.dimfunky.cache.WeatherFieldMask.WIND_SPEED;
+import static com.dimfunky.cache.WeatherFieldMask.has;
+
+/**
+ * Weather cache keeping the data outside the Java heap, for very large sets of cities.
+ * <p>
+ * Each entry is a fixed-size record of {@link OffHeapCache#RECORD_SIZE} bytes in a direct {@link ByteBuffer}:
+ * the bitmask of present fields, the numbers as primitives and the UTF-8 bytes of the key, the city name
+ * and the weather condition. Records are found through an open-addressing (linear probing) index
+ * of primitive arrays, so the cache holds a constant number of heap objects regardless of its size
+ * and adds nothing for the garbage collector to trace.
+ * <p>
+ * Values are decoded to a new {@link WeatherData} on each read. Entries whose strings do not fit
+ * into the record are not cached and are counted in {@link OffHeapCache#getRejectedCount()}.
+ * <p>
+ * When the limit is reached, the entry is removed by the CLOCK algorithm (an approximation of LRU):
+ * the clock hand passes over records read since its last pass and removes the first one not read.
+ * <p>
+ * With {@link OffHeapCache#expireAfter(WeatherClock, long)}, the deadlines stay in the records too:
+ * a record older than the lifetime by its {@link WeatherData#fetchedAt()} is treated as absent and its slot
+ * is taken first by the clock hand, so the expiration adds no heap objects. {@link OffHeapCache#size()}
+ * includes the expired records until their slots are reused.
+ * <p>
+ * The whole buffer ({@code limit * RECORD_SIZE} bytes) is allocated at once, mind {@code -XX:MaxDirectMemorySize}.
+ */
+public class OffHeapCache implements Cache<WeatherData> {
+    /**
+     * Size of the entry record in bytes
+     */
+    public static final int RECORD_SIZE = 256;
+    /**
+     * Maximum number of entries fitting into a single buffer
+     */
+    public static final int MAX_LIMIT = Integer.MAX_VALUE / RECORD_SIZE;
+
+    private static final int MASK_OFFSET = 0;
+    private static final int TIME_ZONE_OFFSET = 4;
+    private static final int FETCHED_AT_OFFSET = 8;
+    private static final int LAT_OFFSET = 16;
+    private static final int LON_OFFSET = 24;
+    private static final int TEMP_OFFSET = 32;
+    private static final int FEELS_LIKE_OFFSET = 40;
+    private static final int WIND_SPEED_OFFSET = 48;
+    private static final int DATE_TIME_OFFSET = 56;
+    private static final int SUNRISE_OFFSET = 64;
+    private static final int SUNSET_OFFSET = 72;
+    private static final int VISIBILITY_OFFSET = 80;
+    private static final int KEY_LENGTH_OFFSET = 84;
+    private static final int NAME_LENGTH_OFFSET = 86;
+    private static final int MAIN_LENGTH_OFFSET = 88;
+    private static final int DESCRIPTION_LENGTH_OFFSET = 90;
+    private static final int STRINGS_OFFSET = 92;
+
+    /**
+     * Maximum total length of the key, the city name and the weather condition in UTF-8 bytes
+     */
+    static final int MAX_STRING_BYTES = RECORD_SIZE - STRINGS_OFFSET;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int limit;
+    private final ByteBuffer records;
+    private final int[] table;
+    private final int tableMask;
+    private final int[] slotHashes;
+    private final byte[] referenced;
+    private final int[] freeSlots;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongAdder rejectedCount = new LongAdder();
+    private volatile WeatherClock clock;
+    private volatile long lifetimeSeconds;
+
+    private int nextSlot;
+    private int freeCount;
+    private int clockHand;
+    private int size;
+
+    /**
+     * @param limit maximum number of entries, not greater than {@link OffHeapCache#MAX_LIMIT}
+     */
+    public OffHeapCache(final int limit) {
+        this.limit = limit;
+        this.records = ByteBuffer.allocateDirect(limit * RECORD_SIZE);
+        this.table = new int[tableSize(limit)];
+        this.tableMask = table.length - 1;
+        this.slotHashes = new int[limit];
+        this.referenced = new byte[limit];
+        this.freeSlots = new int[limit];
+    }
+
+    /**
+     * Returns a new {@link WeatherData} decoded from the stored record
+     */
+    @Override
+    public WeatherData get(final String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.readLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            if (slot < 0 || isExpired(slot, now())) {
+                return null;
+            }
+            referenced[slot] = 1;
+            return decode(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the value, replacing the record of the key if present.
+     * If the strings of the value do not fit into the record, the key is removed instead.
+     */
+    @Override
+    public void put(final String key, final WeatherData value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.writeLock().lock();
+        try {
+            store(keyBytes, hash, find(keyBytes, hash), value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public WeatherData putIfAbsent(final String key, final WeatherData value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.writeLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            if (slot >= 0 && !isExpired(slot, now())) {
+                referenced[slot] = 1;
+                return decode(slot);
+            }
+            store(keyBytes, hash, slot, value);
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public WeatherData compute(final String key,
+                               final BiFunction<String, ? super WeatherData, ? extends WeatherData> remappingFunction) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.writeLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            WeatherData current = slot >= 0 && !isExpired(slot, now()) ? decode(slot) : null;
+            WeatherData value = remappingFunction.apply(key, current);
+            if (value != null) {
+                store(keyBytes, hash, slot, value);
+            } else if (slot >= 0) {
+                release(slot);
+            }
+            return value;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public WeatherData remove(final String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.writeLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            if (slot < 0) {
+                return null;
+            }
+            WeatherData value = isExpired(slot, now()) ? null : decode(slot);
+            release(slot);
+            return value;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.readLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            return slot >= 0 && !isExpired(slot, now());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(table, 0);
+            Arrays.fill(referenced, (byte) 0);
+            nextSlot = 0;
+            freeCount = 0;
+            clockHand = 0;
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Decodes the entries under the read lock, so the {@code action} must not modify the cache
+     */
+    @Override
+    public void forEach(final BiConsumer<String, ? super WeatherData> action) {
+        long now = now();
+        lock.readLock().lock();
+        try {
+            for (int entry : table) {
+                if (entry != 0 && !isExpired(entry - 1, now)) {
+                    int slot = entry - 1;
+                    action.accept(readKey(slot), decode(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Treats the records as absent {@code lifetimeSeconds} after their {@link WeatherData#fetchedAt()}.
+     * Records without {@link WeatherData#fetchedAt()} never expire.
+     * Must be called before the cache is used.
+     *
+     * @param clock           source of the current time
+     * @param lifetimeSeconds time in seconds after {@link WeatherData#fetchedAt()} when a record expires
+     * @return this {@link OffHeapCache}
+     */
+    public OffHeapCache expireAfter(final WeatherClock clock, final long lifetimeSeconds) {
+        this.lifetimeSeconds = lifetimeSeconds;
+        this.clock = clock;
+        return this;
+    }
+
+    public long getLifetimeSeconds() {
+        return lifetimeSeconds;
+    }
+
+    /**
+     * Number of values not cached because their strings did not fit into the record
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Writes the value to the {@code slot} of the key, or to a new slot if {@code slot} is negative
+     */
+    private void store(final byte[] keyBytes, final int hash, final int slot, final WeatherData value) {
+        byte[] name = bytes(value.name());
+        byte[] main = value.weather() != null ? bytes(value.weather().main()) : EMPTY;
+        byte[] description = value.weather() != null ? bytes(value.weather().description()) : EMPTY;
+        if (keyBytes.length + name.length + main.length + description.length > MAX_STRING_BYTES) {
+            rejectedCount.increment();
+            if (slot >= 0) {
+                release(slot);
+            }
+            return;
+        }
+        int target = slot;
+        if (target < 0) {
+            target = allocateSlot();
+            slotHashes[target] = hash;
+            referenced[target] = 0;
+            insert(target, hash);
+            size++;
+        }
+        encode(target, value, keyBytes, name, main, description);
+    }
+
+    private void release(final int slot) {
+        delete(slot);
+        referenced[slot] = 0;
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    private int find(final byte[] keyBytes, final int hash) {
+        for (int i = hash & tableMask; ; i = (i + 1) & tableMask) {
+            int entry = table[i];
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if (slotHashes[slot] == hash && keyEquals(slot, keyBytes)) {
+                return slot;
+            }
+        }
+    }
+
+    private void insert(final int slot, final int hash) {
+        int i = hash & tableMask;
+        while (table[i] != 0) {
+            i = (i + 1) & tableMask;
+        }
+        table[i] = slot + 1;
+    }
+
+    /**
+     * Removes the slot from the index, shifting back the following entries of the probe sequence
+     */
+    private void delete(final int slot) {
+        int i = slotHashes[slot] & tableMask;
+        while (table[i] != slot + 1) {
+            i = (i + 1) & tableMask;
+        }
+        int j = i;
+        while (true) {
+            j = (j + 1) & tableMask;
+            if (table[j] == 0) {
+                break;
+            }
+            int home = slotHashes[table[j] - 1] & tableMask;
+            boolean reachable = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!reachable) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (nextSlot < limit) {
+            return nextSlot++;
+        }
+        long now = now();
+        while (true) {
+            int slot = clockHand;
+            clockHand = clockHand + 1 == limit ? 0 : clockHand + 1;
+            if (referenced[slot] != 0 && !isExpired(slot, now)) {
+                referenced[slot] = 0;
+                continue;
+            }
+            delete(slot);
+            size--;
+            return slot;
+        }
+    }
+
+    /**
+     * Current time of the expiration clock, or {@link Long#MIN_VALUE} if the records do not expire
+     */
+    private long now() {
+        WeatherClock expirationClock = clock;
+        return expirationClock == null ? Long.MIN_VALUE : expirationClock.epochSecond();
+    }
+
+    private boolean isExpired(final int slot, final long now) {
+        if (now == Long.MIN_VALUE) {
+            return false;
+        }
+        int base = slot * RECORD_SIZE;
+        return has(records.getInt(base + MASK_OFFSET), FETCHED_AT)
+                && records.getLong(base + FETCHED_AT_OFFSET) + lifetimeSeconds <= now;
+    }
+
+    private boolean keyEquals(final int slot, final byte[] keyBytes) {
+        int base = slot * RECORD_SIZE;
+        if (records.getShort(base + KEY_LENGTH_OFFSET) != keyBytes.length) {
+            return false;
+        }
+        int position = base + STRINGS_OFFSET;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (records.get(position + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void encode(final int slot, final WeatherData data, final byte[] key,
+                        final byte[] name, final byte[] main, final byte[] description) {
+        int base = slot * RECORD_SIZE;
+        int mask = WeatherFieldMask.of(data);
+        records.putInt(base + MASK_OFFSET, mask);
+        records.putInt(base + TIME_ZONE_OFFSET, has(mask, TIME_ZONE) ? data.timeZone() : 0);
+        records.putLong(base + FETCHED_AT_OFFSET, has(mask, FETCHED_AT) ? data.fetchedAt() : 0L);
+        records.putDouble(base + LAT_OFFSET, has(mask, LAT) ? data.coord().lat() : 0d);
+        records.putDouble(base + LON_OFFSET, has(mask, LON) ? data.coord().lon() : 0d);
+        records.putDouble(base + TEMP_OFFSET, has(mask, TEMP) ? data.temperature().temp() : 0d);
+        records.putDouble(base + FEELS_LIKE_OFFSET, has(mask, FEELS_LIKE) ? data.temperature().feelsLike() : 0d);
+        records.putDouble(base + WIND_SPEED_OFFSET, has(mask, WIND_SPEED) ? data.wind().speed() : 0d);
+        records.putLong(base + DATE_TIME_OFFSET, has(mask, DATE_TIME) ? data.dateTime() : 0L);
+        records.putLong(base + SUNRISE_OFFSET, has(mask, SUNRISE) ? data.sys().sunrise() : 0L);
+        records.putLong(base + SUNSET_OFFSET, has(mask, SUNSET) ? data.sys().sunset() : 0L);
+        records.putInt(base + VISIBILITY_OFFSET, has(mask, VISIBILITY) ? data.visibility() : 0);
+        records.putShort(base + KEY_LENGTH_OFFSET, (short) key.length);
+        records.putShort(base + NAME_LENGTH_OFFSET, (short) name.length);
+        records.putShort(base + MAIN_LENGTH_OFFSET, (short) main.length);
+        records.putShort(base + DESCRIPTION_LENGTH_OFFSET, (short) description.length);
+        int position = base + STRINGS_OFFSET;
+        position = writeBytes(position, key);
+        position = writeBytes(position, name);
+        position = writeBytes(position, main);
+        writeBytes(position, description);
+    }
+
+    private int writeBytes(final int position, final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            records.put(position + i, bytes[i]);
+        }
+        return position + bytes.length;
+    }
+
+    private WeatherData decode(final int slot) {
+        int base = slot * RECORD_SIZE;
+        int mask = records.getInt(base + MASK_OFFSET);
+        int keyLength = records.getShort(base + KEY_LENGTH_OFFSET);
+        int nameLength = records.getShort(base + NAME_LENGTH_OFFSET);
+        int mainLength = records.getShort(base + MAIN_LENGTH_OFFSET);
+        int descriptionLength = records.getShort(base + DESCRIPTION_LENGTH_OFFSET);
+        int namePosition = base + STRINGS_OFFSET + keyLength;
+
+        var data = new WeatherData()
+                .fetchedAt(has(mask, FETCHED_AT) ? records.getLong(base + FETCHED_AT_OFFSET) : null)
+                .visibility(has(mask, VISIBILITY) ? records.getInt(base + VISIBILITY_OFFSET) : null)
+                .dateTime(has(mask, DATE_TIME) ? records.getLong(base + DATE_TIME_OFFSET) : null)
+                .timeZone(has(mask, TIME_ZONE) ? records.getInt(base + TIME_ZONE_OFFSET) : null)
+                .name(has(mask, NAME) ? readString(namePosition, nameLength) : null);
+        if (has(mask, COORD)) {
+            data.coord(new WeatherData.Coord()
+                    .lat(has(mask, LAT) ? records.getDouble(base + LAT_OFFSET) : null)
+                    .lon(has(mask, LON) ? records.getDouble(base + LON_OFFSET) : null));
+        }
+        if (has(mask, WEATHER)) {
+            int mainPosition = namePosition + nameLength;
+            data.weather(new WeatherData.Weather()
+                    .main(has(mask, WEATHER_MAIN) ? readString(mainPosition, mainLength) : null)
+                    .description(has(mask, WEATHER_DESCRIPTION)
+                            ? readString(mainPosition + mainLength, descriptionLength) : null));
+        }
+        if (has(mask, TEMPERATURE)) {
+            data.temperature(new WeatherData.Temperature()
+                    .temp(has(mask, TEMP) ? records.getDouble(base + TEMP_OFFSET) : null)
+                    .feelsLike(has(mask, FEELS_LIKE) ? records.getDouble(base + FEELS_LIKE_OFFSET) : null));
+        }
+        if (has(mask, WIND)) {
+            data.wind(new WeatherData.Wind()
+                    .speed(has(mask, WIND_SPEED) ? records.getDouble(base + WIND_SPEED_OFFSET) : null));
+        }
+        if (has(mask, SYS)) {
+            data.sys(new WeatherData.Sys()
+                    .sunrise(has(mask, SUNRISE) ? records.getLong(base + SUNRISE_OFFSET) : null)
+                    .sunset(has(mask, SUNSET) ? records.getLong(base + SUNSET_OFFSET) : null));
+        }
+        return data;
+    }
+
+    private String readKey(final int slot) {
+        int base = slot * RECORD_SIZE;
+        return readString(base + STRINGS_OFFSET, records.getShort(base + KEY_LENGTH_OFFSET));
+    }
+
+    private String readString(final int position, final int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = records.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(final String value) {
+        return value == null ? EMPTY : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int hash(final String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(final int limit) {
+        return Integer.highestOneBit(Math.max(2, limit) * 2 - 1) << 1;
+    }
+}
@@ -0,0 +1,86 @@
+package com.dimfunky.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped buffer of the keys read from a cache, recorded without a lock and replayed under the lock of the cache.
+ * <p>
+ * Each stripe is a ring of {@link ReadBuffer#STRIPE_SIZE} keys claimed by compare-and-set. A thread writes
+ * to the stripe chosen by its identity hash, so concurrent readers rarely share a stripe.
+ * <p>
+ * {@link ReadBuffer#drainTo(Consumer)} must not run concurrently, callers guard it with their own lock.
+ */
+class ReadBuffer {
+    static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+    private static final int MAX_STRIPES = 64;
+
+    private final Stripe[] stripes;
+    private final int stripesMask;
+
+    ReadBuffer() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int count = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(2 * processors - 1, 1)) << 1);
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripesMask = count - 1;
+    }
+
+    /**
+     * Records the read of the {@code key}
+     *
+     * @param key read key
+     * @return number of keys waiting in the stripe of the current thread, or {@code -1} if the stripe is full
+     * and the read was not recorded
+     */
+    int offer(final String key) {
+        Stripe stripe = stripes[spread(System.identityHashCode(Thread.currentThread())) & stripesMask];
+        while (true) {
+            long tail = stripe.writes.get();
+            long pending = tail - stripe.reads;
+            if (pending >= STRIPE_SIZE) {
+                return -1;
+            }
+            if (stripe.writes.compareAndSet(tail, tail + 1)) {
+                stripe.keys.lazySet((int) (tail & STRIPE_MASK), key);
+                return (int) pending + 1;
+            }
+        }
+    }
+
+    /**
+     * Passes the recorded keys to the {@code consumer} in the order of reads within each stripe
+     */
+    void drainTo(final Consumer<String> consumer) {
+        for (Stripe stripe : stripes) {
+            long head = stripe.reads;
+            long tail = stripe.writes.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & STRIPE_MASK);
+                String key = stripe.keys.get(index);
+                if (key == null) {
+                    // the slot is claimed, but the key is not written yet, the next drain takes it
+                    break;
+                }
+                stripe.keys.lazySet(index, null);
+                consumer.accept(key);
+            }
+            stripe.reads = head;
+        }
+    }
+
+    private static int spread(final int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Stripe {
+        private final AtomicReferenceArray<String> keys = new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        private volatile long reads;
+    }
+}
@@ -0,0 +1,54 @@
+package com.dimfunky.cache;
+
+/**
+ * Shared key-value store, the second tier of the {@link TwoTierCache}.
+ * <p>
+ * Several SDK instances (for example, replicas of a service) use the same remote cache, so the data
+ * fetched by one of them is visible to all. Values are opaque bytes with a time to live, leases are
+ * short-lived exclusive locks on a key, used to let only one instance refresh a city at a time.
+ * <p>
+ * Implementations adapt an external store (Redis, Memcached, a database) and must be thread-safe.
+ * Methods may throw {@link RuntimeException} when the store is unavailable, {@link TwoTierCache}
+ * then falls back to the local tier. {@link InProcessRemoteCache} is an implementation for tests
+ * and single-process setups.
+ */
+public interface RemoteCache {
+
+    /**
+     * Returns the value of the {@code key}
+     *
+     * @param key
+     * @return value or {@code null} if absent or expired
+     */
+    byte[] get(String key);
+
+    /**
+     * Puts the value, replacing the existing one
+     *
+     * @param key
+     * @param value
+     * @param ttlMillis time after which the value expires
+     */
+    void put(String key, byte[] value, long ttlMillis);
+
+    void remove(String key);
+
+    /**
+     * Acquires the lease of the {@code key} for the {@code owner}, if no other owner holds an unexpired lease.
+     * An owner acquiring its own lease again extends it.
+     *
+     * @param key
+     * @param owner       unique identifier of the lease holder
+     * @param leaseMillis time after which the lease expires, if not released
+     * @return {@code true} if the lease is held by the {@code owner}
+     */
+    boolean tryAcquireLease(String key, String owner, long leaseMillis);
+
+    /**
+     * Releases the lease of the {@code key}, if it is held by the {@code owner}
+     *
+     * @param key
+     * @param owner
+     */
+    void releaseLease(String key, String owner);
+}
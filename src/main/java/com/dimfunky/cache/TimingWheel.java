@@ -0,0 +1,180 @@
+package com.dimfunky.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel of key deadlines in epoch seconds, used by {@link ExpiringCache}.
+ * <p>
+ * {@link TimingWheel#LEVELS} wheels of {@link TimingWheel#SLOTS} slots each have slots of 1 second,
+ * 64 seconds, about 1 hour and about 3 days. A key is put to the slot of the finest wheel covering its deadline,
+ * and moved down to a finer wheel when the time reaches the slot. Scheduling, cancelling and
+ * expiring a key take constant time, whatever the number of keys.
+ * <p>
+ * Cancelled and rescheduled keys are left in their slots and skipped when the slot is reached.
+ * Not thread-safe, the calls must be synchronized by the caller.
+ */
+final class TimingWheel {
+    static final int LEVELS = 4;
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    /**
+     * Seconds covered by all wheels, later deadlines are put to the last slot and moved on when it is reached
+     */
+    private static final long SPAN = 1L << (LEVELS * SLOT_BITS);
+    /**
+     * Time jump after which the keys are rescheduled at once instead of walking the wheels second by second
+     */
+    private static final long MAX_WALK = (long) SLOTS * SLOTS;
+
+    private final List<Entry>[][] slots;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long currentSecond;
+
+    /**
+     * @param startEpochSecond current time, deadlines up to it expire on the next {@link TimingWheel#advance(long)}
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(final long startEpochSecond) {
+        this.slots = new List[LEVELS][SLOTS];
+        this.currentSecond = startEpochSecond;
+    }
+
+    /**
+     * Schedules the expiration of the key, replacing its previous deadline
+     *
+     * @param key
+     * @param deadline epoch second at which the key expires
+     */
+    void schedule(final String key, final long deadline) {
+        Entry entry = new Entry(key, deadline);
+        entries.put(key, entry);
+        place(entry, currentSecond + 1);
+    }
+
+    void cancel(final String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Moves the time to {@code nowEpochSecond} and returns the keys whose deadlines have passed.
+     * The returned keys are no longer scheduled. Moving the time backwards does nothing.
+     *
+     * @param nowEpochSecond
+     * @return expired keys
+     */
+    List<String> advance(final long nowEpochSecond) {
+        if (nowEpochSecond <= currentSecond) {
+            return Collections.emptyList();
+        }
+        List<String> expired = new ArrayList<>();
+        if (nowEpochSecond - currentSecond > MAX_WALK) {
+            reschedule(nowEpochSecond, expired);
+            return expired;
+        }
+        while (currentSecond < nowEpochSecond) {
+            long second = ++currentSecond;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = level * SLOT_BITS;
+                if ((second & ((1L << shift) - 1)) == 0) {
+                    for (Entry entry : drain(level, (int) (second >>> shift) & SLOT_MASK)) {
+                        if (isLive(entry)) {
+                            place(entry, second);
+                        }
+                    }
+                }
+            }
+            for (Entry entry : drain(0, (int) second & SLOT_MASK)) {
+                if (!isLive(entry)) {
+                    continue;
+                }
+                if (entry.deadline <= second) {
+                    entries.remove(entry.key);
+                    expired.add(entry.key);
+                } else {
+                    place(entry, second + 1);
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Number of scheduled keys
+     */
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+        for (List<Entry>[] level : slots) {
+            Arrays.fill(level, null);
+        }
+    }
+
+    /**
+     * Puts the entry to the finest wheel covering its deadline, not earlier than {@code earliest}
+     * and not later than the span of the wheels
+     */
+    private void place(final Entry entry, final long earliest) {
+        long second = Math.min(Math.max(entry.deadline, earliest), currentSecond + SPAN - 1);
+        long delta = second - currentSecond;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * SLOT_BITS)) {
+            level++;
+        }
+        int slot = (int) (second >>> (level * SLOT_BITS)) & SLOT_MASK;
+        List<Entry> slotEntries = slots[level][slot];
+        if (slotEntries == null) {
+            slotEntries = new ArrayList<>();
+            slots[level][slot] = slotEntries;
+        }
+        slotEntries.add(entry);
+    }
+
+    private List<Entry> drain(final int level, final int slot) {
+        List<Entry> slotEntries = slots[level][slot];
+        if (slotEntries == null) {
+            return Collections.emptyList();
+        }
+        slots[level][slot] = null;
+        return slotEntries;
+    }
+
+    /**
+     * Jumps to {@code nowEpochSecond}, expiring the passed deadlines and placing the others anew
+     */
+    private void reschedule(final long nowEpochSecond, final List<String> expired) {
+        List<Entry> live = new ArrayList<>(entries.values());
+        clear();
+        currentSecond = nowEpochSecond;
+        for (Entry entry : live) {
+            if (entry.deadline <= nowEpochSecond) {
+                expired.add(entry.key);
+            } else {
+                entries.put(entry.key, entry);
+                place(entry, nowEpochSecond + 1);
+            }
+        }
+    }
+
+    private boolean isLive(final Entry entry) {
+        return entries.get(entry.key) == entry;
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final long deadline;
+
+        private Entry(final String key, final long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+}
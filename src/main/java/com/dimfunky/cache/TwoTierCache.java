@@ -0,0 +1,352 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.concurrent.WeatherClock;
+import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.model.WeatherData;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Weather cache of two tiers: the local cache of the instance and the {@link RemoteCache} shared by all instances.
+ * <p>
+ * Reads are served by the local tier while its data is fresh. Missing or expired data is looked up
+ * in the remote tier and copied to the local one if the remote data is newer. Writes go to both tiers,
+ * remote values live for {@link TwoTierCache#getRemoteTtlMillis()}.
+ * <p>
+ * Refreshes are coordinated with leases, see {@link TwoTierCache#load(String, WeatherData, Supplier)}.
+ * <p>
+ * {@link TwoTierCache#contains(String)}, {@link TwoTierCache#size()}, {@link TwoTierCache#getLimit()},
+ * {@link TwoTierCache#clear()} and {@link TwoTierCache#forEach(BiConsumer)} apply to the local tier only.
+ * Errors of the remote tier do not fail the calls, they are counted in {@link TwoTierCache#getRemoteErrorCount()}.
+ */
+public class TwoTierCache implements Cache<WeatherData> {
+    /**
+     * Default time to live of the remote values = 2 * {@link WeatherData#TTL_SECONDS},
+     * outdated data is still used for the coordinates and by the stale-while-revalidate mode
+     */
+    public static final long DEFAULT_REMOTE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(2 * WeatherData.TTL_SECONDS);
+    /**
+     * Default lease time = 10 seconds, longer than a refresh normally takes
+     */
+    public static final long DEFAULT_LEASE_MILLIS = 10_000;
+    private static final long LEASE_POLL_MILLIS = 50;
+
+    private final Cache<WeatherData> local;
+    private final RemoteCache remote;
+    private final long remoteTtlMillis;
+    private final long leaseMillis;
+    private final WeatherClock clock;
+    private final long ttlSeconds;
+    private final String owner = UUID.randomUUID().toString();
+
+    private final LongAdder remoteHitCount = new LongAdder();
+    private final LongAdder leaseWaitCount = new LongAdder();
+    private final LongAdder remoteErrorCount = new LongAdder();
+
+    public TwoTierCache(final Cache<WeatherData> local, final RemoteCache remote) {
+        this(local, remote, DEFAULT_REMOTE_TTL_MILLIS, DEFAULT_LEASE_MILLIS);
+    }
+
+    /**
+     * @param local           cache of the current instance
+     * @param remote          cache shared by all instances
+     * @param remoteTtlMillis time to live of the values put to the remote cache
+     * @param leaseMillis     time after which the lease of a failed instance expires
+     */
+    public TwoTierCache(final Cache<WeatherData> local, final RemoteCache remote,
+                        final long remoteTtlMillis, final long leaseMillis) {
+        this(local, remote, remoteTtlMillis, leaseMillis, WeatherClock.system(), WeatherData.TTL_SECONDS);
+    }
+
+    /**
+     * @param local           cache of the current instance
+     * @param remote          cache shared by all instances
+     * @param remoteTtlMillis time to live of the values put to the remote cache
+     * @param leaseMillis     time after which the lease of a failed instance expires
+     * @param clock           source of the current time for the expiration of the data
+     * @param ttlSeconds      time in seconds during which the data is served by the local tier
+     */
+    public TwoTierCache(final Cache<WeatherData> local, final RemoteCache remote,
+                        final long remoteTtlMillis, final long leaseMillis,
+                        final WeatherClock clock, final long ttlSeconds) {
+        this.local = local;
+        this.remote = remote;
+        this.remoteTtlMillis = remoteTtlMillis;
+        this.leaseMillis = leaseMillis;
+        this.clock = clock;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    @Override
+    public WeatherData get(final String key) {
+        WeatherData data = local.get(key);
+        if (data != null && !data.isExpired(ttlSeconds, clock.epochSecond())) {
+            return data;
+        }
+        WeatherData remoteData = getNewerRemote(key, data, false);
+        return remoteData != null ? remoteData : data;
+    }
+
+    @Override
+    public void put(final String key, final WeatherData value) {
+        local.put(key, value);
+        putRemote(key, value);
+    }
+
+    @Override
+    public WeatherData putIfAbsent(final String key, final WeatherData value) {
+        WeatherData current = local.putIfAbsent(key, value);
+        if (current == null) {
+            putRemote(key, value);
+        }
+        return current;
+    }
+
+    /**
+     * Computes the value in the local tier and writes a changed value to the remote tier
+     */
+    @Override
+    public WeatherData compute(final String key,
+                               final BiFunction<String, ? super WeatherData, ? extends WeatherData> remappingFunction) {
+        boolean[] changed = new boolean[1];
+        WeatherData value = local.compute(key, (k, current) -> {
+            WeatherData computed = remappingFunction.apply(k, current);
+            changed[0] = computed != current;
+            return computed;
+        });
+        if (changed[0]) {
+            if (value != null) {
+                putRemote(key, value);
+            } else {
+                removeRemote(key);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public WeatherData remove(final String key) {
+        WeatherData value = local.remove(key);
+        removeRemote(key);
+        return value;
+    }
+
+    @Override
+    public boolean contains(final String key) {
+        return local.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return local.size();
+    }
+
+    @Override
+    public int getLimit() {
+        return local.getLimit();
+    }
+
+    @Override
+    public void clear() {
+        local.clear();
+    }
+
+    @Override
+    public void forEach(final BiConsumer<String, ? super WeatherData> action) {
+        local.forEach(action);
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Refreshes the data of the {@code key} so that only one instance calls the {@code loader} at a time.
+     * <p>
+     * The instance acquiring the lease of the key calls the {@code loader}, which must fetch the data
+     * and put it to this cache, and releases the lease afterwards. Other instances wait for the remote tier
+     * to get data newer than {@code cachedData}, and call the {@code loader} themselves if it does not appear
+     * within the lease time (the lease holder failed).
+     *
+     * @param key        lowercase city name
+     * @param cachedData data being refreshed or {@code null}
+     * @param loader     fetches the data and puts it to this cache
+     * @return refreshed data
+     * @throws WeatherServiceException if interrupted while waiting for another instance
+     */
+    public WeatherData load(final String key, final WeatherData cachedData, final Supplier<WeatherData> loader) {
+        if (!tryAcquireLease(key)) {
+            leaseWaitCount.increment();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+            do {
+                try {
+                    Thread.sleep(LEASE_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new WeatherServiceException("Interrupted while waiting for the refresh of " + key, e);
+                }
+                WeatherData remoteData = getNewerRemote(key, cachedData, true);
+                if (remoteData != null) {
+                    return remoteData;
+                }
+            } while (System.nanoTime() - deadline < 0 && !tryAcquireLease(key));
+        }
+        try {
+            WeatherData remoteData = getNewerRemote(key, cachedData, true);
+            return remoteData != null ? remoteData : loader.get();
+        } finally {
+            releaseLease(key);
+        }
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link TwoTierCache#load(String, WeatherData, Supplier)}.
+     * Waiting for another instance is done with delayed checks instead of blocking a thread.
+     *
+     * @param key        lowercase city name
+     * @param cachedData data being refreshed or {@code null}
+     * @param loader     fetches the data and puts it to this cache
+     * @return {@link CompletableFuture} with refreshed data
+     */
+    public CompletableFuture<WeatherData> loadAsync(final String key, final WeatherData cachedData,
+                                                    final Supplier<CompletableFuture<WeatherData>> loader) {
+        if (tryAcquireLease(key)) {
+            return loadLeased(key, cachedData, loader);
+        }
+        leaseWaitCount.increment();
+        return awaitAsync(key, cachedData, loader, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMillis));
+    }
+
+    public Cache<WeatherData> getLocal() {
+        return local;
+    }
+
+    public RemoteCache getRemote() {
+        return remote;
+    }
+
+    public long getRemoteTtlMillis() {
+        return remoteTtlMillis;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * Number of reads served by the remote tier
+     */
+    public long getRemoteHitCount() {
+        return remoteHitCount.sum();
+    }
+
+    /**
+     * Number of refreshes that waited for the lease held by another instance
+     */
+    public long getLeaseWaitCount() {
+        return leaseWaitCount.sum();
+    }
+
+    /**
+     * Number of failed calls to the remote tier
+     */
+    public long getRemoteErrorCount() {
+        return remoteErrorCount.sum();
+    }
+
+    private CompletableFuture<WeatherData> awaitAsync(final String key, final WeatherData cachedData,
+                                                      final Supplier<CompletableFuture<WeatherData>> loader,
+                                                      final long deadline) {
+        return CompletableFuture.supplyAsync(() -> getNewerRemote(key, cachedData, true),
+                        CompletableFuture.delayedExecutor(LEASE_POLL_MILLIS, TimeUnit.MILLISECONDS))
+                .thenCompose(remoteData -> {
+                    if (remoteData != null) {
+                        return CompletableFuture.completedFuture(remoteData);
+                    }
+                    if (System.nanoTime() - deadline >= 0 || tryAcquireLease(key)) {
+                        return loadLeased(key, cachedData, loader);
+                    }
+                    return awaitAsync(key, cachedData, loader, deadline);
+                });
+    }
+
+    private CompletableFuture<WeatherData> loadLeased(final String key, final WeatherData cachedData,
+                                                      final Supplier<CompletableFuture<WeatherData>> loader) {
+        CompletableFuture<WeatherData> future;
+        try {
+            WeatherData remoteData = getNewerRemote(key, cachedData, true);
+            future = remoteData != null ? CompletableFuture.completedFuture(remoteData) : loader.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((data, ex) -> releaseLease(key));
+    }
+
+    /**
+     * Returns the remote data if it is newer than {@code data}, copying it to the local tier
+     *
+     * @param fresh {@code true} to skip expired remote data
+     */
+    private WeatherData getNewerRemote(final String key, final WeatherData data, final boolean fresh) {
+        byte[] bytes;
+        try {
+            bytes = remote.get(key);
+        } catch (RuntimeException e) {
+            remoteErrorCount.increment();
+            return null;
+        }
+        WeatherData remoteData = bytes == null ? null : WeatherSnapshotFormat.decode(bytes);
+        if (remoteData == null || fresh && remoteData.isExpired(ttlSeconds, clock.epochSecond()) || !isNewer(remoteData, data)) {
+            return null;
+        }
+        remoteHitCount.increment();
+        local.compute(key, (k, current) -> isNewer(remoteData, current) ? remoteData : current);
+        return remoteData;
+    }
+
+    private static boolean isNewer(final WeatherData data, final WeatherData other) {
+        if (other == null || other.fetchedAt() == null) {
+            return true;
+        }
+        return data.fetchedAt() != null && data.fetchedAt() > other.fetchedAt();
+    }
+
+    private void putRemote(final String key, final WeatherData value) {
+        try {
+            remote.put(key, WeatherSnapshotFormat.encode(value), remoteTtlMillis);
+        } catch (RuntimeException e) {
+            remoteErrorCount.increment();
+        }
+    }
+
+    private void removeRemote(final String key) {
+        try {
+            remote.remove(key);
+        } catch (RuntimeException e) {
+            remoteErrorCount.increment();
+        }
+    }
+
+    private boolean tryAcquireLease(final String key) {
+        try {
+            return remote.tryAcquireLease(key, owner, leaseMillis);
+        } catch (RuntimeException e) {
+            remoteErrorCount.increment();
+            return true;
+        }
+    }
+
+    private void releaseLease(final String key) {
+        try {
+            remote.releaseLease(key, owner);
+        } catch (RuntimeException e) {
+            remoteErrorCount.increment();
+        }
+    }
+}
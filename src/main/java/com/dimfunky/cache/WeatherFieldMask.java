@@ -0,0 +1,73 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.model.WeatherData;
+
+/**
+ * Bits marking the present fields of {@link WeatherData} in the binary cache representations.
+ * <p>
+ * The values are part of the snapshot file format and must not be changed.
+ */
+final class WeatherFieldMask {
+    static final int FETCHED_AT = 1;
+    static final int COORD = 1 << 1;
+    static final int LAT = 1 << 2;
+    static final int LON = 1 << 3;
+    static final int WEATHER = 1 << 4;
+    static final int WEATHER_MAIN = 1 << 5;
+    static final int WEATHER_DESCRIPTION = 1 << 6;
+    static final int TEMPERATURE = 1 << 7;
+    static final int TEMP = 1 << 8;
+    static final int FEELS_LIKE = 1 << 9;
+    static final int VISIBILITY = 1 << 10;
+    static final int WIND = 1 << 11;
+    static final int WIND_SPEED = 1 << 12;
+    static final int DATE_TIME = 1 << 13;
+    static final int SYS = 1 << 14;
+    static final int SUNRISE = 1 << 15;
+    static final int SUNSET = 1 << 16;
+    static final int TIME_ZONE = 1 << 17;
+    static final int NAME = 1 << 18;
+
+    private WeatherFieldMask() {
+    }
+
+    /**
+     * Returns the bitmask of non-null fields of the {@code data}
+     */
+    static int of(final WeatherData data) {
+        var coord = data.coord();
+        var weather = data.weather();
+        var temperature = data.temperature();
+        var wind = data.wind();
+        var sys = data.sys();
+
+        int mask = 0;
+        mask |= data.fetchedAt() != null ? FETCHED_AT : 0;
+        if (coord != null) {
+            mask |= COORD | (coord.lat() != null ? LAT : 0) | (coord.lon() != null ? LON : 0);
+        }
+        if (weather != null) {
+            mask |= WEATHER | (weather.main() != null ? WEATHER_MAIN : 0)
+                    | (weather.description() != null ? WEATHER_DESCRIPTION : 0);
+        }
+        if (temperature != null) {
+            mask |= TEMPERATURE | (temperature.temp() != null ? TEMP : 0)
+                    | (temperature.feelsLike() != null ? FEELS_LIKE : 0);
+        }
+        mask |= data.visibility() != null ? VISIBILITY : 0;
+        if (wind != null) {
+            mask |= WIND | (wind.speed() != null ? WIND_SPEED : 0);
+        }
+        mask |= data.dateTime() != null ? DATE_TIME : 0;
+        if (sys != null) {
+            mask |= SYS | (sys.sunrise() != null ? SUNRISE : 0) | (sys.sunset() != null ? SUNSET : 0);
+        }
+        mask |= data.timeZone() != null ? TIME_ZONE : 0;
+        mask |= data.name() != null ? NAME : 0;
+        return mask;
+    }
+
+    static boolean has(final int mask, final int bit) {
+        return (mask & bit) != 0;
+    }
+}
@@ -0,0 +1,272 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.model.WeatherData;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.dimfunky.cache.WeatherFieldMask.COORD;
+import static com.dimfunky.cache.WeatherFieldMask.DATE_TIME;
+import static com.dimfunky.cache.WeatherFieldMask.FEELS_LIKE;
+import static com.dimfunky.cache.WeatherFieldMask.FETCHED_AT;
+import static com.dimfunky.cache.WeatherFieldMask.LAT;
+import static com.dimfunky.cache.WeatherFieldMask.LON;
+import static com.dimfunky.cache.WeatherFieldMask.NAME;
+import static com.dimfunky.cache.WeatherFieldMask.SUNRISE;
+import static com.dimfunky.cache.WeatherFieldMask.SUNSET;
+import static com.dimfunky.cache.WeatherFieldMask.SYS;
+import static com.dimfunky.cache.WeatherFieldMask.TEMP;
+import static com.dimfunky.cache.WeatherFieldMask.TEMPERATURE;
+import static com.dimfunky.cache.WeatherFieldMask.TIME_ZONE;
+import static com.dimfunky.cache.WeatherFieldMask.VISIBILITY;
+import static com.dimfunky.cache.WeatherFieldMask.WEATHER;
+import static com.dimfunky.cache.WeatherFieldMask.WEATHER_DESCRIPTION;
+import static com.dimfunky.cache.WeatherFieldMask.WEATHER_MAIN;
+import static com.dimfunky.cache.WeatherFieldMask.WIND;
+import static com.dimfunky.cache.WeatherFieldMask.WIND_SPEED;
+
+/**
+ * Binary format of the weather cache snapshot.
+ * <p>
+ * The file starts with the magic number, the format version and the number of entries.
+ * Each entry is the cache key followed by a bitmask of present fields and the present fields
+ * as primitives, strings are stored as the length and UTF-8 bytes. Big-endian byte order.
+ * <p>
+ * Files are written to a temporary file and moved over the target, so readers never see a partial snapshot.
+ * Files are read through a memory-mapped buffer.
+ * <p>
+ * A single entry is encoded the same way for the {@link RemoteCache}, prefixed with the magic number
+ * and the format version, but without the key.
+ */
+final class WeatherSnapshotFormat {
+    private static final int MAGIC = 0x57534e50;
+    private static final int VERSION = 1;
+
+    private WeatherSnapshotFormat() {
+    }
+
+    static void write(final Path file, final Map<String, WeatherData> entries) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, WeatherData> entry : entries.entrySet()) {
+                writeString(out, entry.getKey());
+                writeWeatherData(out, entry.getValue());
+            }
+        }
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static Map<String, WeatherData> read(final Path file) throws IOException {
+        Map<String, WeatherData> entries = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+                throw new WeatherServiceException("Not a weather cache snapshot: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new WeatherServiceException("Unsupported weather cache snapshot version " + version + ": " + file);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(buffer);
+                entries.put(key, readWeatherData(buffer));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new WeatherServiceException("Truncated or corrupted weather cache snapshot: " + file, e);
+        }
+        return entries;
+    }
+
+    static byte[] encode(final WeatherData data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeWeatherData(out, data);
+        } catch (IOException e) {
+            throw new WeatherServiceException("Unable to encode weather data: " + e.getMessage(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes an entry encoded by {@link WeatherSnapshotFormat#encode(WeatherData)}
+     *
+     * @return decoded data or {@code null} if the bytes are not an entry of the current version
+     */
+    static WeatherData decode(final byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            return readWeatherData(buffer);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static void writeWeatherData(final DataOutputStream out, final WeatherData data) throws IOException {
+        var coord = data.coord();
+        var weather = data.weather();
+        var temperature = data.temperature();
+        var wind = data.wind();
+        var sys = data.sys();
+
+        int mask = WeatherFieldMask.of(data);
+
+        out.writeInt(mask);
+        if ((mask & FETCHED_AT) != 0) {
+            out.writeLong(data.fetchedAt());
+        }
+        if ((mask & LAT) != 0) {
+            out.writeDouble(coord.lat());
+        }
+        if ((mask & LON) != 0) {
+            out.writeDouble(coord.lon());
+        }
+        if ((mask & WEATHER_MAIN) != 0) {
+            writeString(out, weather.main());
+        }
+        if ((mask & WEATHER_DESCRIPTION) != 0) {
+            writeString(out, weather.description());
+        }
+        if ((mask & TEMP) != 0) {
+            out.writeDouble(temperature.temp());
+        }
+        if ((mask & FEELS_LIKE) != 0) {
+            out.writeDouble(temperature.feelsLike());
+        }
+        if ((mask & VISIBILITY) != 0) {
+            out.writeInt(data.visibility());
+        }
+        if ((mask & WIND_SPEED) != 0) {
+            out.writeDouble(wind.speed());
+        }
+        if ((mask & DATE_TIME) != 0) {
+            out.writeLong(data.dateTime());
+        }
+        if ((mask & SUNRISE) != 0) {
+            out.writeLong(sys.sunrise());
+        }
+        if ((mask & SUNSET) != 0) {
+            out.writeLong(sys.sunset());
+        }
+        if ((mask & TIME_ZONE) != 0) {
+            out.writeInt(data.timeZone());
+        }
+        if ((mask & NAME) != 0) {
+            writeString(out, data.name());
+        }
+    }
+
+    private static WeatherData readWeatherData(final ByteBuffer buffer) {
+        int mask = buffer.getInt();
+        var data = new WeatherData();
+        if ((mask & FETCHED_AT) != 0) {
+            data.fetchedAt(buffer.getLong());
+        }
+        if ((mask & COORD) != 0) {
+            var coord = new WeatherData.Coord();
+            if ((mask & LAT) != 0) {
+                coord.lat(buffer.getDouble());
+            }
+            if ((mask & LON) != 0) {
+                coord.lon(buffer.getDouble());
+            }
+            data.coord(coord);
+        }
+        if ((mask & WEATHER) != 0) {
+            var weather = new WeatherData.Weather();
+            if ((mask & WEATHER_MAIN) != 0) {
+                weather.main(readString(buffer));
+            }
+            if ((mask & WEATHER_DESCRIPTION) != 0) {
+                weather.description(readString(buffer));
+            }
+            data.weather(weather);
+        }
+        if ((mask & TEMPERATURE) != 0) {
+            var temperature = new WeatherData.Temperature();
+            if ((mask & TEMP) != 0) {
+                temperature.temp(buffer.getDouble());
+            }
+            if ((mask & FEELS_LIKE) != 0) {
+                temperature.feelsLike(buffer.getDouble());
+            }
+            data.temperature(temperature);
+        }
+        if ((mask & VISIBILITY) != 0) {
+            data.visibility(buffer.getInt());
+        }
+        if ((mask & WIND) != 0) {
+            var wind = new WeatherData.Wind();
+            if ((mask & WIND_SPEED) != 0) {
+                wind.speed(buffer.getDouble());
+            }
+            data.wind(wind);
+        }
+        if ((mask & DATE_TIME) != 0) {
+            data.dateTime(buffer.getLong());
+        }
+        if ((mask & SYS) != 0) {
+            var sys = new WeatherData.Sys();
+            if ((mask & SUNRISE) != 0) {
+                sys.sunrise(buffer.getLong());
+            }
+            if ((mask & SUNSET) != 0) {
+                sys.sunset(buffer.getLong());
+            }
+            data.sys(sys);
+        }
+        if ((mask & TIME_ZONE) != 0) {
+            data.timeZone(buffer.getInt());
+        }
+        if ((mask & NAME) != 0) {
+            data.name(readString(buffer));
+        }
+        return data;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @throws BufferUnderflowException if the length is negative or exceeds the remaining bytes (corrupted data)
+     */
+    private static String readString(final ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,105 @@
+package com.dimfunky.client;
+
+import com.dimfunky.concurrent.ThreadSupport;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link HttpClient} instances shared by all {@link WeatherHttpClient}s with the same transport settings.
+ * <p>
+ * A shared client keeps one connection pool, so templates of different API keys reuse the TLS connections
+ * to the API, and with HTTP/2 the requests are multiplexed over a single connection.
+ * Each client runs on its own fixed pool of daemon threads instead of the unbounded default executor,
+ * or on virtual threads on Java 21 and later, see {@link ThreadSupport}.
+ * <p>
+ * Clients are created on first use and live until the JVM exits.
+ */
+public final class HttpClientPool {
+    private static final Map<Settings, HttpClient> clients = new ConcurrentHashMap<>();
+
+    private HttpClientPool() {
+    }
+
+    /**
+     * Returns the shared client with the given settings, creating it if needed
+     *
+     * @param version        preferred HTTP version, HTTP/2 falls back to HTTP/1.1 if the server does not support it
+     * @param connectTimeout timeout of establishing a connection
+     * @param threads        number of threads of the client executor
+     * @return {@link HttpClient}
+     */
+    public static HttpClient get(final HttpClient.Version version, final Duration connectTimeout, final int threads) {
+        return get(version, connectTimeout, threads, false);
+    }
+
+    /**
+     * Returns the shared client with the given settings, creating it if needed
+     *
+     * @param version        preferred HTTP version, HTTP/2 falls back to HTTP/1.1 if the server does not support it
+     * @param connectTimeout timeout of establishing a connection
+     * @param threads        number of threads of the client executor
+     * @param virtual        {@code true} to run the client executor on virtual threads, if available
+     * @return {@link HttpClient}
+     */
+    public static HttpClient get(final HttpClient.Version version, final Duration connectTimeout, final int threads,
+                                 final boolean virtual) {
+        boolean virtualThreads = virtual && ThreadSupport.isVirtualThreadsAvailable();
+        return clients.computeIfAbsent(new Settings(version, connectTimeout, threads, virtualThreads),
+                HttpClientPool::create);
+    }
+
+    /**
+     * Number of created clients
+     */
+    public static int size() {
+        return clients.size();
+    }
+
+    private static HttpClient create(final Settings settings) {
+        return HttpClient.newBuilder()
+                .version(settings.version)
+                .connectTimeout(settings.connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(ThreadSupport.newWorkerPool("weather-http", settings.threads, settings.virtual))
+                .build();
+    }
+
+    private static final class Settings {
+        private final HttpClient.Version version;
+        private final Duration connectTimeout;
+        private final int threads;
+        private final boolean virtual;
+
+        private Settings(final HttpClient.Version version, final Duration connectTimeout, final int threads,
+                         final boolean virtual) {
+            this.version = version;
+            this.connectTimeout = connectTimeout;
+            this.threads = threads;
+            this.virtual = virtual;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            Settings settings = (Settings) o;
+            return threads == settings.threads
+                    && virtual == settings.virtual
+                    && version == settings.version
+                    && connectTimeout.equals(settings.connectTimeout);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, connectTimeout, threads, virtual);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.dimfunky.client;
+
+import com.dimfunky.concurrent.TokenBucket;
+import com.dimfunky.constant.RateLimitMode;
+import com.dimfunky.exception.WeatherServiceRateLimitException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Client-side limit of requests per API key, a {@link TokenBucket} for each key.
+ * <p>
+ * In the {@link RateLimitMode#WAIT} mode, a request exceeding the limit waits for its token.
+ * Otherwise, it fails with {@link WeatherServiceRateLimitException}.
+ * <p>
+ * Keeps the quota counters: remaining tokens of the key, number of throttled requests
+ * (waited or failed), total time the requests waited and number of requests rejected by the API.
+ */
+public class RateLimiter {
+    private final int requestsPerMinute;
+    private final int burst;
+    private final RateLimitMode mode;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder throttledCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder rejectedByServerCount = new LongAdder();
+
+    /**
+     * @param requestsPerMinute limit of requests per minute of each API key, must be positive
+     * @param burst             number of requests that can be sent at once after a pause, must be positive
+     * @param mode              behaviour of a request exceeding the limit
+     */
+    public RateLimiter(final int requestsPerMinute, final int burst, final RateLimitMode mode) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.burst = burst;
+        this.mode = mode;
+    }
+
+    /**
+     * Takes a token of the {@code apiKey}, waiting for it in the {@link RateLimitMode#WAIT} mode
+     *
+     * @param apiKey
+     * @throws WeatherServiceRateLimitException if no token is available and the mode is not {@link RateLimitMode#WAIT},
+     *                                          or the thread is interrupted while waiting
+     */
+    public void acquire(final String apiKey) {
+        long delayNanos = take(apiKey);
+        long deadline = System.nanoTime() + delayNanos;
+        while (delayNanos > 0) {
+            LockSupport.parkNanos(this, delayNanos);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new WeatherServiceRateLimitException("Interrupted while waiting for the rate limit", 0);
+            }
+            delayNanos = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link RateLimiter#acquire(String)}, waiting is done with a delayed completion
+     *
+     * @param apiKey
+     * @return {@link CompletableFuture} completed when the token can be used, or exceptionally
+     * with {@link WeatherServiceRateLimitException}
+     */
+    public CompletableFuture<Void> acquireAsync(final String apiKey) {
+        long delayNanos;
+        try {
+            delayNanos = take(apiKey);
+        } catch (WeatherServiceRateLimitException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (delayNanos == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Records the rejection of a request by the API and suspends the requests of the {@code apiKey}
+     * for {@code retryAfterMillis}
+     *
+     * @param apiKey
+     * @param retryAfterMillis
+     */
+    public void onRejected(final String apiKey, final long retryAfterMillis) {
+        rejectedByServerCount.increment();
+        bucket(apiKey).pause(TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+    }
+
+    /**
+     * Number of requests of the {@code apiKey} that can be sent without waiting
+     *
+     * @param apiKey
+     */
+    public int getRemainingQuota(final String apiKey) {
+        TokenBucket bucket = buckets.get(apiKey);
+        return bucket == null ? burst : bucket.getAvailableTokens();
+    }
+
+    /**
+     * Number of requests that exceeded the limit, waited or failed
+     */
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
+    /**
+     * Total time the requests waited for the limit in milliseconds
+     */
+    public long getWaitTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    /**
+     * Number of requests rejected by the API with the 429 status
+     */
+    public long getRejectedByServerCount() {
+        return rejectedByServerCount.sum();
+    }
+
+    public int getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public RateLimitMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Takes a token and returns the time to wait for it
+     */
+    private long take(final String apiKey) {
+        TokenBucket bucket = bucket(apiKey);
+        if (mode != RateLimitMode.WAIT) {
+            if (!bucket.tryAcquire()) {
+                throttledCount.increment();
+                throw new WeatherServiceRateLimitException("Rate limit of " + requestsPerMinute
+                        + " requests per minute exceeded", TimeUnit.MINUTES.toMillis(1) / requestsPerMinute);
+            }
+            return 0;
+        }
+        long delayNanos = bucket.reserve();
+        if (delayNanos > 0) {
+            throttledCount.increment();
+            waitNanos.add(delayNanos);
+        }
+        return delayNanos;
+    }
+
+    private TokenBucket bucket(final String apiKey) {
+        return buckets.computeIfAbsent(apiKey, key -> new TokenBucket(requestsPerMinute, burst));
+    }
+}
@@ -0,0 +1,112 @@
+package com.dimfunky.client;
+
+import com.dimfunky.exception.WeatherServiceException;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the request URIs of the API without {@link String#format} and {@link java.util.Formatter}.
+ * <p>
+ * Query values are percent-encoded as UTF-8 (RFC 3986), names consisting only of unreserved characters
+ * are appended as is. Coordinates are rounded half-up to 6 decimal places and written with a dot
+ * regardless of the default locale, so the same location always produces the same URI.
+ * <p>
+ * The {@code appid} parameter of each API key is encoded once and reused.
+ */
+final class RequestUris {
+    private static final String GEO_DECODE_URL = "https://api.openweathermap.org/geo/1.0/direct?q=";
+    private static final String WEATHER_DATA_URL = "https://api.openweathermap.org/data/2.5/weather?lat=";
+    private static final String LON_PARAMETER = "&lon=";
+    private static final String APP_ID_PARAMETER = "&appid=";
+    private static final int MAX_CACHED_KEYS = 256;
+    private static final int COORDINATE_SCALE = 1_000_000;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final Map<String, String> appIdParameters = new ConcurrentHashMap<>();
+
+    URI weatherData(final Double lat, final Double lon, final String apiKey) {
+        if (lat == null || lon == null) {
+            throw new WeatherServiceException("Coordinates of the city are missing");
+        }
+        String appId = appIdParameter(apiKey);
+        StringBuilder uri = new StringBuilder(WEATHER_DATA_URL.length() + LON_PARAMETER.length() + 32 + appId.length())
+                .append(WEATHER_DATA_URL);
+        appendCoordinate(uri, lat);
+        uri.append(LON_PARAMETER);
+        appendCoordinate(uri, lon);
+        return URI.create(uri.append(appId).toString());
+    }
+
+    URI geoDecode(final String cityName, final String apiKey) {
+        String appId = appIdParameter(apiKey);
+        StringBuilder uri = new StringBuilder(GEO_DECODE_URL.length() + cityName.length() * 3 + appId.length())
+                .append(GEO_DECODE_URL);
+        appendEncoded(uri, cityName);
+        return URI.create(uri.append(appId).toString());
+    }
+
+    private String appIdParameter(final String apiKey) {
+        String parameter = appIdParameters.get(apiKey);
+        if (parameter == null) {
+            StringBuilder builder = new StringBuilder(APP_ID_PARAMETER.length() + apiKey.length()).append(APP_ID_PARAMETER);
+            appendEncoded(builder, apiKey);
+            parameter = builder.toString();
+            if (appIdParameters.size() < MAX_CACHED_KEYS) {
+                appIdParameters.put(apiKey, parameter);
+            }
+        }
+        return parameter;
+    }
+
+    /**
+     * Appends the coordinate rounded half-up (away from zero) to 6 decimal places, for example {@code -0.123457}
+     */
+    static void appendCoordinate(final StringBuilder builder, final double value) {
+        if (!Double.isFinite(value)) {
+            throw new WeatherServiceException("Not a valid coordinate: " + value);
+        }
+        long scaled = Math.round(Math.abs(value) * COORDINATE_SCALE);
+        if (value < 0 && scaled != 0) {
+            builder.append('-');
+        }
+        builder.append(scaled / COORDINATE_SCALE).append('.');
+        long fraction = scaled % COORDINATE_SCALE;
+        for (int divisor = COORDINATE_SCALE / 10; divisor > 1 && fraction < divisor; divisor /= 10) {
+            builder.append('0');
+        }
+        builder.append(fraction);
+    }
+
+    /**
+     * Appends the value percent-encoded as UTF-8, keeping the unreserved characters
+     */
+    static void appendEncoded(final StringBuilder builder, final String value) {
+        int i = 0;
+        while (i < value.length() && isUnreserved(value.charAt(i))) {
+            i++;
+        }
+        if (i == value.length()) {
+            builder.append(value);
+            return;
+        }
+        builder.append(value, 0, i);
+        for (byte b : value.substring(i).getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (isUnreserved(c)) {
+                builder.append(c);
+            } else {
+                builder.append('%').append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+            }
+        }
+    }
+
+    private static boolean isUnreserved(final char c) {
+        return (c >= 'a' && c <= 'z')
+                || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+}
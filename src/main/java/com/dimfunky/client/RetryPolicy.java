@@ -0,0 +1,61 @@
+package com.dimfunky.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Number of attempts of a failed request and the delays between them.
+ * <p>
+ * The delay before the attempt {@code n + 1} is random between 0 and
+ * {@code min(maxBackoffMillis, initialBackoffMillis * 2^(n - 1))} (exponential backoff with full jitter),
+ * so clients failed at the same moment do not retry at the same moment.
+ * <p>
+ * Only transport errors (including timeouts) and server errors (status 500 and above) are retried.
+ */
+public class RetryPolicy {
+    /**
+     * Single attempt without retries
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    /**
+     * @param maxAttempts          number of attempts including the first one, must be positive
+     * @param initialBackoffMillis upper bound of the delay before the first retry
+     * @param maxBackoffMillis     upper bound of any delay
+     */
+    public RetryPolicy(final int maxAttempts, final long initialBackoffMillis, final long maxBackoffMillis) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Returns the random delay before the next attempt
+     *
+     * @param failedAttempts number of failed attempts, starting from 1
+     * @return delay in milliseconds
+     */
+    public long backoffMillis(final int failedAttempts) {
+        int shift = Math.min(failedAttempts - 1, 30);
+        long bound = initialBackoffMillis > maxBackoffMillis >> shift ? maxBackoffMillis : initialBackoffMillis << shift;
+        if (bound <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+}
@@ -1,43 +1,161 @@
 package com.dimfunky.client;
 
+import com.dimfunky.concurrent.CircuitBreaker;
+import com.dimfunky.environment.WeatherEnvironment;
 import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.exception.WeatherServiceHttpException;
+import com.dimfunky.exception.WeatherServiceRateLimitException;
+import com.dimfunky.exception.WeatherServiceUnavailableException;
 import com.dimfunky.mapper.WeatherMapper;
+import com.dimfunky.metrics.WeatherMetrics;
 import com.dimfunky.model.CityCoords;
 import com.dimfunky.model.WeatherData;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Http client for receiving data from <a href="https://openweathermap.org">OpenWeatherMap</a>
  * <p>
  * Contains methods for geocoding cities names into the exact geographical coordinates
- * and retrieving weather data using this coordinates
+ * and retrieving weather data using this coordinates.
+ * <p>
+ * Each method has a non-blocking variant built on {@link HttpClient#sendAsync}, which returns
+ * a {@link CompletableFuture} and maps the response on the provided {@link Executor}.
+ * <p>
+ * If a {@link RateLimiter} is provided, every request takes a token of its API key first.
+ * Responses with the 429 status fail with {@link WeatherServiceRateLimitException} and suspend
+ * the requests of the key for the time from the {@code Retry-After} header.
+ * <p>
+ * Transport errors, timeouts of the attempt and server errors are retried according to the {@link RetryPolicy}.
+ * If a {@link CircuitBreaker} is provided, repeated failures open it, and requests fail at once with
+ * {@link WeatherServiceUnavailableException} until a trial request succeeds.
+ * <p>
+ * Response bodies are not buffered: the JSON is parsed while it is read from the connection.
+ * With the compression enabled, requests accept gzip-encoded responses, which are decompressed while they are read.
  */
 
 public class WeatherHttpClient {
 
 
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVER_ERROR = 500;
+    private final HttpClient httpClient;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final Duration requestTimeout;
+    private final boolean compression;
+    private final WeatherMetrics metrics;
+    private final RequestUris requestUris = new RequestUris();
+    private final LongAdder retryCount = new LongAdder();
+
+    public WeatherHttpClient() {
+        this(HttpClient.newHttpClient());
+    }
+
     /**
-     * Geocoding URL template
+     * Creates the client with the transport and request settings of the {@code environment}.
+     * The {@link HttpClient} is taken from the {@link HttpClientPool}, so it is shared with other clients
+     * with the same transport settings.
+     *
+     * @param environment
      */
-    private static final String GEO_DECODE_URL = "http://api.openweathermap.org/geo/1.0/direct?q=%s&appid=%s";
+    public WeatherHttpClient(WeatherEnvironment environment) {
+        this(HttpClientPool.get(environment.getHttpVersion(), Duration.ofMillis(environment.getConnectTimeoutMillis()),
+                        environment.getHttpThreads(), environment.isVirtualThreads()),
+                environment.getRateLimiter(), environment.getRetryPolicy(), environment.getCircuitBreaker(),
+                Duration.ofMillis(environment.getRequestTimeoutMillis()), environment.isCompression(),
+                environment.getMetrics());
+    }
 
+    public WeatherHttpClient(HttpClient httpClient) {
+        this(httpClient, null);
+    }
 
     /**
-     * Weather data URL template with free access
+     * @param httpClient
+     * @param rateLimiter limit of requests per API key, {@code null} - no limit
      */
-    private static final String WEATHER_DATA_URL = "https://api.openweathermap.org/data/2.5/weather?lat=%f&lon=%f&appid=%s";
-    private final HttpClient httpClient;
+    public WeatherHttpClient(HttpClient httpClient, RateLimiter rateLimiter) {
+        this(httpClient, rateLimiter, RetryPolicy.NONE, null, null, false);
+    }
 
-    public WeatherHttpClient() {
-        this.httpClient = HttpClient.newHttpClient();
+    /**
+     * @param httpClient
+     * @param rateLimiter    limit of requests per API key, {@code null} - no limit
+     * @param retryPolicy    attempts of failed requests
+     * @param circuitBreaker breaker suspending requests after repeated failures, {@code null} - never suspended
+     * @param requestTimeout timeout of a single attempt, {@code null} - no timeout
+     * @param compression    {@code true} to request gzip-compressed responses
+     */
+    public WeatherHttpClient(HttpClient httpClient, RateLimiter rateLimiter, RetryPolicy retryPolicy,
+                             CircuitBreaker circuitBreaker, Duration requestTimeout, boolean compression) {
+        this(httpClient, rateLimiter, retryPolicy, circuitBreaker, requestTimeout, compression, WeatherMetrics.NONE);
     }
 
-    public WeatherHttpClient(HttpClient httpClient) {
+    /**
+     * @param httpClient
+     * @param rateLimiter    limit of requests per API key, {@code null} - no limit
+     * @param retryPolicy    attempts of failed requests
+     * @param circuitBreaker breaker suspending requests after repeated failures, {@code null} - never suspended
+     * @param requestTimeout timeout of a single attempt, {@code null} - no timeout
+     * @param compression    {@code true} to request gzip-compressed responses
+     * @param metrics        receives the latencies of the requests per API and the failed requests
+     */
+    public WeatherHttpClient(HttpClient httpClient, RateLimiter rateLimiter, RetryPolicy retryPolicy,
+                             CircuitBreaker circuitBreaker, Duration requestTimeout, boolean compression,
+                             WeatherMetrics metrics) {
         this.httpClient = httpClient;
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.requestTimeout = requestTimeout;
+        this.compression = compression;
+        this.metrics = metrics;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the limit of requests per API key, {@code null} if requests are not limited
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Returns the circuit breaker of the API, {@code null} if requests are never suspended
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Number of retried attempts
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
     }
 
     /**
@@ -45,8 +163,8 @@ public class WeatherHttpClient {
      * </pre>
      * Method for retrieving weather data using coordinates from {@link CityCoords} object.
      * <p>
-     * Builds the request with parameters and sends it to {@link com.dimfunky.client.WeatherHttpClient#WEATHER_DATA_URL}.
-     * Maps the JSON response to a {@link WeatherData} object.
+     * Builds the request with the coordinates rounded to 6 decimal places and sends it to the 'Data API'.
+     * Maps the JSON response bytes to a {@link WeatherData} object.
      * <p>
      * Due to response from the 'Data API' may include the name of a specific location within the city
      * (for example, api may return data with name "Palais-Royal" for "Paris" coordinates),
@@ -62,20 +180,78 @@ public class WeatherHttpClient {
      * @param apiKey
      * @return {@link WeatherData}
      * @throws com.dimfunky.exception.WeatherServiceException if API returns error (response status code >= 400)
+     * @throws WeatherServiceRateLimitException                if the rate limit is exceeded
      */
     public WeatherData getWeatherData(final CityCoords cityCoords, final String apiKey) {
-        String path = String.format(WEATHER_DATA_URL, cityCoords.lat(), cityCoords.lon(), apiKey);
-        String stringResponse = makeGetRequest(path);
-        return WeatherMapper.toWeatherData(stringResponse)
+        return makeGetRequest(weatherDataUri(cityCoords, apiKey), apiKey, WeatherMetrics.Timer.WEATHER_DATA_REQUEST,
+                WeatherMapper::toWeatherData)
                 .name(cityCoords.name());
     }
 
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link WeatherHttpClient#getWeatherData(CityCoords, String)}.
+     * <p>
+     * Sends the request with {@link HttpClient#sendAsync} and maps the JSON response on the {@code executor}.
+     *
+     * @param cityCoords
+     * @param apiKey
+     * @param executor   executor for mapping the response
+     * @return {@link CompletableFuture} with {@link WeatherData}, completed exceptionally
+     * with {@link com.dimfunky.exception.WeatherServiceException} on errors
+     */
+    public CompletableFuture<WeatherData> getWeatherDataAsync(final CityCoords cityCoords, final String apiKey,
+                                                              final Executor executor) {
+        return makeGetRequestAsync(() -> weatherDataUri(cityCoords, apiKey), apiKey,
+                WeatherMetrics.Timer.WEATHER_DATA_REQUEST, WeatherMapper::toWeatherData, executor)
+                .thenApply(weatherData -> weatherData.name(cityCoords.name()));
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Method for retrieving weather data at the location with the coordinates {@code lat} and {@code lon}.
+     * <p>
+     * Unlike {@link WeatherHttpClient#getWeatherData(CityCoords, String)}, the name of the data
+     * is the name of the location returned by the 'Data API' (may be empty for a remote location).
+     *
+     * @param lat    latitude from -90 to 90
+     * @param lon    longitude from -180 to 180
+     * @param apiKey
+     * @return {@link WeatherData}
+     * @throws com.dimfunky.exception.WeatherServiceException if API returns error (response status code >= 400)
+     * @throws WeatherServiceRateLimitException                if the rate limit is exceeded
+     */
+    public WeatherData getWeatherData(final double lat, final double lon, final String apiKey) {
+        return makeGetRequest(requestUris.weatherData(lat, lon, apiKey), apiKey,
+                WeatherMetrics.Timer.WEATHER_DATA_REQUEST, WeatherMapper::toWeatherData);
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link WeatherHttpClient#getWeatherData(double, double, String)}.
+     *
+     * @param lat
+     * @param lon
+     * @param apiKey
+     * @param executor executor for mapping the response
+     * @return {@link CompletableFuture} with {@link WeatherData}, completed exceptionally
+     * with {@link com.dimfunky.exception.WeatherServiceException} on errors
+     */
+    public CompletableFuture<WeatherData> getWeatherDataAsync(final double lat, final double lon, final String apiKey,
+                                                              final Executor executor) {
+        return makeGetRequestAsync(() -> requestUris.weatherData(lat, lon, apiKey), apiKey,
+                WeatherMetrics.Timer.WEATHER_DATA_REQUEST, WeatherMapper::toWeatherData, executor);
+    }
+
     /**
      * <pre>
      * </pre>
      * Method for retrieving exact geographical coordinates by the specified name of a location
      * <p>
-     * Encodes spaces in {@code cityName} for the HTTP request. Builds the full request with parameters
+     * Percent-encodes {@code cityName} as UTF-8 for the HTTP request. Builds the full request with parameters
      * and sends it. Maps the JSON response to a {@link CityCoords} object.
      * <p>
      * Accept parameters:
@@ -89,30 +265,283 @@ public class WeatherHttpClient {
      * @return {@link CityCoords}
      * @throws com.dimfunky.exception.WeatherServiceException if retrieved empty city coords list
      *                                                        or API returns error (response status code >= 400)
+     * @throws WeatherServiceRateLimitException                if the rate limit is exceeded
      */
     public CityCoords getCoordsByCityName(final String cityName, final String apiKey) {
-        var encodedCityName = cityName.replace(" ", "%20");
-        var path = String.format(GEO_DECODE_URL, encodedCityName, apiKey);
-        var stringResponse = makeGetRequest(path);
-        if (stringResponse.equals("[]")) {
+        return makeGetRequest(geoDecodeUri(cityName, apiKey), apiKey, WeatherMetrics.Timer.GEOCODE_REQUEST,
+                WeatherHttpClient::toCityCoords);
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link WeatherHttpClient#getCoordsByCityName(String, String)}.
+     * <p>
+     * Sends the request with {@link HttpClient#sendAsync} and maps the JSON response on the {@code executor}.
+     *
+     * @param cityName
+     * @param apiKey
+     * @param executor executor for mapping the response
+     * @return {@link CompletableFuture} with {@link CityCoords}, completed exceptionally
+     * with {@link com.dimfunky.exception.WeatherServiceException} on errors
+     */
+    public CompletableFuture<CityCoords> getCoordsByCityNameAsync(final String cityName, final String apiKey,
+                                                                  final Executor executor) {
+        return makeGetRequestAsync(() -> geoDecodeUri(cityName, apiKey), apiKey,
+                WeatherMetrics.Timer.GEOCODE_REQUEST, WeatherHttpClient::toCityCoords, executor);
+    }
+
+    private URI weatherDataUri(final CityCoords cityCoords, final String apiKey) {
+        return requestUris.weatherData(cityCoords.lat(), cityCoords.lon(), apiKey);
+    }
+
+    private URI geoDecodeUri(final String cityName, final String apiKey) {
+        return requestUris.geoDecode(cityName, apiKey);
+    }
+
+    private static CityCoords toCityCoords(final InputStream response) {
+        var cityCoords = WeatherMapper.toCityCoords(response);
+        if (cityCoords == null) {
             throw new WeatherServiceException("The city was not found. Try to write name in another format");
         }
-        return WeatherMapper.toCityCoords(stringResponse);
+        return cityCoords;
     }
 
-    private String makeGetRequest(final String path) {
+    /**
+     * Sends the request and maps the response body while it is read
+     */
+    private <T> T makeGetRequest(final URI uri, final String apiKey, final WeatherMetrics.Timer timer,
+                                 final Function<InputStream, T> mapper) {
+        HttpRequest request = buildRequest(uri);
+        long startNanos = System.nanoTime();
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(new URI(path))
-                    .GET()
-                    .build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() >= 400) {
-                throw new WeatherServiceException("openweathermap.org returned an error: " + response.body());
+            return read(sendWithRetries(request, apiKey), mapper);
+        } catch (RuntimeException e) {
+            metrics.increment(WeatherMetrics.Counter.HTTP_ERROR);
+            throw e;
+        } finally {
+            metrics.record(timer, System.nanoTime() - startNanos);
+        }
+    }
+
+    private HttpResponse<InputStream> sendWithRetries(final HttpRequest request, final String apiKey) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return send(request, apiKey);
+            } catch (WeatherServiceException e) {
+                if (!isRetryable(e) || attempt >= retryPolicy.getMaxAttempts()) {
+                    throw e;
+                }
+                retryCount.increment();
+                try {
+                    Thread.sleep(retryPolicy.backoffMillis(attempt));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new WeatherServiceException("Interrupted while waiting for the retry", interrupted);
+                }
             }
-            return response.body();
+        }
+    }
+
+    /**
+     * Sends the request and maps the response body on the {@code executor} while it is read
+     */
+    private <T> CompletableFuture<T> makeGetRequestAsync(final Supplier<URI> uri, final String apiKey,
+                                                         final WeatherMetrics.Timer timer,
+                                                         final Function<InputStream, T> mapper,
+                                                         final Executor executor) {
+        HttpRequest request;
+        try {
+            request = buildRequest(uri.get());
+        } catch (WeatherServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long startNanos = System.nanoTime();
+        return sendAsync(request, apiKey, 1)
+                .thenApplyAsync(response -> read(response, mapper), executor)
+                .whenComplete((response, ex) -> {
+                    if (ex != null) {
+                        metrics.increment(WeatherMetrics.Counter.HTTP_ERROR);
+                    }
+                    metrics.record(timer, System.nanoTime() - startNanos);
+                });
+    }
+
+    private HttpResponse<InputStream> send(final HttpRequest request, final String apiKey) {
+        if (rateLimiter != null) {
+            rateLimiter.acquire(apiKey);
+        }
+        acquireCircuit();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
         } catch (Exception e) {
-            throw new WeatherServiceException(e.getMessage(), e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return onResponse(null, e, apiKey);
+        }
+        return onResponse(response, null, apiKey);
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> sendAsync(final HttpRequest request, final String apiKey,
+                                                                   final int attempt) {
+        CompletableFuture<Void> permit = rateLimiter != null
+                ? rateLimiter.acquireAsync(apiKey)
+                : CompletableFuture.completedFuture(null);
+        return permit
+                .thenCompose(ignored -> {
+                    acquireCircuit();
+                    return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                            .handle((response, ex) -> onResponse(response, ex, apiKey));
+                })
+                .handle((body, ex) -> ex == null
+                        ? CompletableFuture.completedFuture(body)
+                        : retryAsync(request, apiKey, attempt, toServiceException(ex)))
+                .thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> retryAsync(final HttpRequest request, final String apiKey, final int attempt,
+                                                 final WeatherServiceException e) {
+        if (!isRetryable(e) || attempt >= retryPolicy.getMaxAttempts()) {
+            return CompletableFuture.failedFuture(e);
+        }
+        retryCount.increment();
+        Executor delayed = CompletableFuture.delayedExecutor(retryPolicy.backoffMillis(attempt), TimeUnit.MILLISECONDS);
+        return CompletableFuture.runAsync(() -> {
+        }, delayed).thenCompose(ignored -> sendAsync(request, apiKey, attempt + 1));
+    }
+
+    /**
+     * Reports the outcome of the request to the circuit breaker and checks the response.
+     * Requests without a response and server errors are failures of the API. Throttled requests
+     * are ignored: the API is up, but the response does not prove it serves requests again.
+     */
+    private HttpResponse<InputStream> onResponse(final HttpResponse<InputStream> response, final Throwable ex,
+                                                 final String apiKey) {
+        if (ex != null) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure();
+            }
+            throw toServiceException(ex);
+        }
+        if (circuitBreaker != null) {
+            if (response.statusCode() >= SERVER_ERROR) {
+                circuitBreaker.onFailure();
+            } else if (response.statusCode() == TOO_MANY_REQUESTS) {
+                circuitBreaker.onIgnored();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+        }
+        return checkResponse(response, apiKey);
+    }
+
+    private void acquireCircuit() {
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+            throw new WeatherServiceUnavailableException("openweathermap.org is unavailable, requests are suspended after repeated failures");
+        }
+    }
+
+    /**
+     * Transport errors (including timeouts) and server errors may succeed on the next attempt
+     */
+    private static boolean isRetryable(final WeatherServiceException e) {
+        if (e instanceof WeatherServiceHttpException) {
+            return ((WeatherServiceHttpException) e).getStatusCode() >= SERVER_ERROR;
+        }
+        return e.getCause() instanceof IOException;
+    }
+
+    private static WeatherServiceException toServiceException(final Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof WeatherServiceException) {
+            return (WeatherServiceException) cause;
+        }
+        return new WeatherServiceException(cause.getMessage(), cause);
+    }
+
+    private HttpRequest buildRequest(final URI uri) {
+        var builder = HttpRequest.newBuilder(uri).GET();
+        if (requestTimeout != null) {
+            builder.timeout(requestTimeout);
+        }
+        if (compression) {
+            builder.header("Accept-Encoding", "gzip");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the successful response with the body not read yet, or reads the error body into the exception
+     */
+    private HttpResponse<InputStream> checkResponse(final HttpResponse<InputStream> response, final String apiKey) {
+        if (response.statusCode() == TOO_MANY_REQUESTS) {
+            long retryAfterMillis = retryAfterMillis(response);
+            if (rateLimiter != null) {
+                rateLimiter.onRejected(apiKey, retryAfterMillis);
+            }
+            throw new WeatherServiceRateLimitException("openweathermap.org rejected the request: "
+                    + read(response, WeatherHttpClient::readText), retryAfterMillis);
+        }
+        if (response.statusCode() >= 400) {
+            throw new WeatherServiceHttpException("openweathermap.org returned an error: "
+                    + read(response, WeatherHttpClient::readText), response.statusCode());
+        }
+        return response;
+    }
+
+    /**
+     * Maps the response body while it is read, decompressing it if the response is gzip-encoded.
+     * Closes the body.
+     */
+    private static <T> T read(final HttpResponse<InputStream> response, final Function<InputStream, T> mapper) {
+        try (InputStream body = decode(response)) {
+            return mapper.apply(body);
+        } catch (IOException e) {
+            throw new WeatherServiceException("Unable to read the response: " + e.getMessage(), e);
+        }
+    }
+
+    private static InputStream decode(final HttpResponse<InputStream> response) throws IOException {
+        InputStream body = response.body();
+        boolean gzip = response.headers() != null && response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        if (!gzip) {
+            return body;
+        }
+        try {
+            return new GZIPInputStream(body);
+        } catch (IOException e) {
+            body.close();
+            throw e;
+        }
+    }
+
+    private static String readText(final InputStream body) {
+        try {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new WeatherServiceException("Unable to read the response: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the delay from the {@code Retry-After} header in milliseconds, 0 if absent or not a number of seconds
+     */
+    private static long retryAfterMillis(final HttpResponse<InputStream> response) {
+        if (response.headers() == null) {
+            return 0;
         }
+        return response.headers().firstValue("Retry-After")
+                .map(value -> {
+                    try {
+                        return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+                    } catch (NumberFormatException e) {
+                        return 0L;
+                    }
+                })
+                .orElse(0L);
     }
 }
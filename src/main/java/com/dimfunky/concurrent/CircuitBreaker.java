@@ -0,0 +1,110 @@
+package com.dimfunky.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stops calls to a failing dependency for a while, so callers fail fast instead of waiting for timeouts.
+ * <p>
+ * The breaker is {@link State#CLOSED} while calls succeed. After {@code failureThreshold} consecutive failures
+ * it becomes {@link State#OPEN} and rejects calls for {@code openMillis}. Then it lets a single trial call
+ * through ({@link State#HALF_OPEN}): its success closes the breaker, its failure opens it again.
+ * <p>
+ * Callers ask for a permission with {@link CircuitBreaker#tryAcquire()} and report the outcome of every
+ * permitted call with {@link CircuitBreaker#onSuccess()}, {@link CircuitBreaker#onFailure()}
+ * or {@link CircuitBreaker#onIgnored()}.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder openedCount = new LongAdder();
+
+    /**
+     * @param failureThreshold number of consecutive failures opening the breaker, must be positive
+     * @param openMillis       time the breaker rejects calls before the trial call
+     */
+    public CircuitBreaker(final int failureThreshold, final long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Returns {@code true} if the call may be made, the outcome of the call must be reported then
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAtNanos >= openNanos) {
+                    state = State.HALF_OPEN;
+                    trialInFlight = true;
+                    return true;
+                }
+                break;
+            default:
+                if (!trialInFlight) {
+                    trialInFlight = true;
+                    return true;
+                }
+                break;
+        }
+        rejectedCount.increment();
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Reports a call whose outcome says nothing about the health of the dependency, for example a throttled one.
+     * The state is kept, a trial call is let through again.
+     */
+    public synchronized void onIgnored() {
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+            openedCount.increment();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Number of calls rejected while the breaker was open
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Number of times the breaker opened
+     */
+    public long getOpenedCount() {
+        return openedCount.sum();
+    }
+}
@@ -0,0 +1,43 @@
+package com.dimfunky.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link WeatherClock} keeping the current second in a volatile field.
+ * <p>
+ * A daemon thread updates the field every {@link CoarseClock#TICK_MILLIS} milliseconds, so reads cost
+ * a memory load instead of a system call and lag the system time by less than a tick.
+ */
+final class CoarseClock implements WeatherClock {
+    /**
+     * Update period of the current second
+     */
+    static final long TICK_MILLIS = 100;
+    static final CoarseClock INSTANCE = new CoarseClock();
+
+    private volatile long epochSecond = currentEpochSecond();
+
+    private CoarseClock() {
+        Thread ticker = new Thread(this::tick, "weather-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long epochSecond() {
+        return epochSecond;
+    }
+
+    private void tick() {
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+        while (!Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(tickNanos);
+            epochSecond = currentEpochSecond();
+        }
+    }
+
+    private static long currentEpochSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
@@ -0,0 +1,48 @@
+package com.dimfunky.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link WeatherClock} moved only by its methods, for tests and simulations
+ */
+public class ManualClock implements WeatherClock {
+    private final AtomicLong epochSecond;
+
+    /**
+     * Creates the clock set to the current system time
+     */
+    public ManualClock() {
+        this(System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * @param epochSecond initial time in UNIX epoch seconds
+     */
+    public ManualClock(final long epochSecond) {
+        this.epochSecond = new AtomicLong(epochSecond);
+    }
+
+    @Override
+    public long epochSecond() {
+        return epochSecond.get();
+    }
+
+    /**
+     * Moves the clock forward
+     *
+     * @param seconds
+     * @return the new time in UNIX epoch seconds
+     */
+    public long advance(final long seconds) {
+        return epochSecond.addAndGet(seconds);
+    }
+
+    /**
+     * Sets the time
+     *
+     * @param epochSecond time in UNIX epoch seconds
+     */
+    public void set(final long epochSecond) {
+        this.epochSecond.set(epochSecond);
+    }
+}
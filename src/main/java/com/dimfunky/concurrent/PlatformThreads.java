@@ -0,0 +1,46 @@
+package com.dimfunky.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Platform thread pools shared by both variants of {@link ThreadSupport}
+ */
+final class PlatformThreads {
+
+    private PlatformThreads() {
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads named {@code name-1}, {@code name-2}, ...
+     *
+     * @param name    prefix of the thread names
+     * @param threads number of threads
+     * @return {@link ExecutorService}
+     */
+    static ExecutorService newPool(final String name, final int threads) {
+        return Executors.newFixedThreadPool(threads, daemonFactory(name));
+    }
+
+    /**
+     * Creates an unbounded pool of daemon threads named {@code name-1}, {@code name-2}, ...,
+     * which starts a thread when all threads are busy and stops the threads idle for a minute
+     *
+     * @param name prefix of the thread names
+     * @return {@link ExecutorService}
+     */
+    static ExecutorService newCachedPool(final String name) {
+        return Executors.newCachedThreadPool(daemonFactory(name));
+    }
+
+    private static ThreadFactory daemonFactory(final String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package com.dimfunky.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spreads requests evenly to stay within a requests-per-minute budget.
+ * <p>
+ * Every {@link RatePacer#acquire()} reserves the next free time slot and sleeps until it comes,
+ * so parallel workers together never exceed the budget. Unused slots are not accumulated.
+ * A budget of {@code 0} disables pacing.
+ */
+public class RatePacer {
+    private final long intervalNanos;
+    private final AtomicLong nextSlot = new AtomicLong(Long.MIN_VALUE);
+
+    public RatePacer(final int requestsPerMinute) {
+        this.intervalNanos = requestsPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / requestsPerMinute : 0;
+    }
+
+    /**
+     * Blocks until the caller is allowed to send the next request
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long slot;
+        long current;
+        do {
+            current = nextSlot.get();
+            slot = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+        } while (!nextSlot.compareAndSet(current, slot + intervalNanos));
+
+        long waitNanos = slot - now;
+        while (waitNanos > 0) {
+            LockSupport.parkNanos(this, waitNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitNanos = slot - System.nanoTime();
+        }
+    }
+}
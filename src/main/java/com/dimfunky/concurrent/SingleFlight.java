@@ -0,0 +1,141 @@
+package com.dimfunky.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent loads of the same key.
+ * <p>
+ * The first caller for a key (the originator) runs the loader, every other caller
+ * that arrives while the load is still in flight waits for the originator's result.
+ * Both values and failures are shared: if the load throws (including timeouts
+ * of the underlying request), every waiting caller receives the same exception.
+ * <p>
+ * The in-flight entry is removed as soon as the load completes, so the next call
+ * for the key starts a new load.
+ *
+ * @param <T> type of the loaded value
+ */
+public class SingleFlight<T> {
+    private final Map<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder originated = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * <pre>
+     * </pre>
+     * Runs {@code loader} in the calling thread, unless a load for {@code key} is already in flight.
+     * In that case, blocks until the running load completes and returns its result.
+     *
+     * @param key    deduplication key
+     * @param loader blocking loader
+     * @return loaded value
+     * @throws RuntimeException thrown by the loader (for the originator and all waiting callers)
+     */
+    public T execute(final String key, final Supplier<T> loader) {
+        var promise = new CompletableFuture<T>();
+        var existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        originated.increment();
+        try {
+            T value = loader.get();
+            inFlight.remove(key, promise);
+            promise.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link SingleFlight#execute(String, Supplier)}.
+     * <p>
+     * Calls {@code loader} only if no load for {@code key} is in flight,
+     * otherwise returns a future completed with the running load's result.
+     *
+     * @param key    deduplication key
+     * @param loader supplier of the asynchronous load
+     * @return {@link CompletableFuture} with the loaded value
+     */
+    public CompletableFuture<T> executeAsync(final String key, final Supplier<CompletableFuture<T>> loader) {
+        var promise = new CompletableFuture<T>();
+        var existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+
+        originated.increment();
+        CompletableFuture<T> load;
+        try {
+            load = loader.get();
+        } catch (RuntimeException | Error e) {
+            load = CompletableFuture.failedFuture(e);
+        }
+        load.whenComplete((value, ex) -> {
+            inFlight.remove(key, promise);
+            if (ex != null) {
+                promise.completeExceptionally(unwrap(ex));
+            } else {
+                promise.complete(value);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Number of loads started by this instance
+     */
+    public long getOriginatedCount() {
+        return originated.sum();
+    }
+
+    /**
+     * Number of calls that joined an already running load instead of starting a new one
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Number of keys with a load in flight
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static <T> T await(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
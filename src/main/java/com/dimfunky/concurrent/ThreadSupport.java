@@ -0,0 +1,53 @@
+package com.dimfunky.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the threads of the SDK.
+ * <p>
+ * This is the Java 11 variant, which only has platform threads. The multi-release JAR contains
+ * a Java 21 variant in {@code META-INF/versions/21}, which runs the blocking work on virtual threads.
+ */
+public final class ThreadSupport {
+
+    private ThreadSupport() {
+    }
+
+    /**
+     * Returns {@code true} if the running JVM supports virtual threads
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return false;
+    }
+
+    /**
+     * Returns the shared executor starting a virtual thread per task. Without virtual threads,
+     * the tasks run on a shared cached pool of platform daemon threads instead.
+     *
+     * @return {@link Executor}
+     */
+    public static Executor virtualThreadExecutor() {
+        return FallbackExecutor.INSTANCE;
+    }
+
+    /**
+     * Creates an executor for blocking tasks
+     *
+     * @param name    prefix of the thread names
+     * @param threads number of platform threads
+     * @param virtual {@code true} to start a virtual thread per task instead, ignored if virtual threads
+     *                are not available
+     * @return {@link ExecutorService}
+     */
+    public static ExecutorService newWorkerPool(final String name, final int threads, final boolean virtual) {
+        return PlatformThreads.newPool(name, threads);
+    }
+
+    /**
+     * Holds the fallback pool, created on first use only
+     */
+    private static final class FallbackExecutor {
+        private static final ExecutorService INSTANCE = PlatformThreads.newCachedPool("weather-blocking");
+    }
+}
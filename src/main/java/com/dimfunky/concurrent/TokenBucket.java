@@ -0,0 +1,87 @@
+package com.dimfunky.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, refilled at {@code requestsPerMinute} and holding up to {@code burst} tokens.
+ * <p>
+ * Implemented as the generic cell rate algorithm: instead of a token count, the bucket keeps the time
+ * at which it becomes full again, so taking a token is a single compare-and-set without a refill thread.
+ * Tokens can be reserved ahead of time, the reservation then returns how long the caller must wait.
+ */
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int burst;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param requestsPerMinute refill rate, must be positive
+     * @param burst             maximum number of tokens, must be positive
+     */
+    public TokenBucket(final int requestsPerMinute, final int burst) {
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / requestsPerMinute;
+        this.burstNanos = intervalNanos * burst;
+        this.burst = burst;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token if available
+     *
+     * @return {@code true} if the token was taken
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        long current;
+        long next;
+        do {
+            current = fullAt.get();
+            next = Math.max(current - now, 0) + intervalNanos;
+            if (next > burstNanos) {
+                return false;
+            }
+        } while (!fullAt.compareAndSet(current, now + next));
+        return true;
+    }
+
+    /**
+     * Takes a token, borrowing it from the future if the bucket is empty
+     *
+     * @return time in nanoseconds the caller must wait before using the token, 0 if available now
+     */
+    public long reserve() {
+        long now = System.nanoTime();
+        long current;
+        long next;
+        do {
+            current = fullAt.get();
+            next = Math.max(current - now, 0) + intervalNanos;
+        } while (!fullAt.compareAndSet(current, now + next));
+        return Math.max(next - burstNanos, 0);
+    }
+
+    /**
+     * Empties the bucket, so the next token is available in {@code pauseNanos},
+     * for example when the server asks to retry later
+     *
+     * @param pauseNanos
+     */
+    public void pause(final long pauseNanos) {
+        long pausedFullAt = System.nanoTime() + pauseNanos + burstNanos - intervalNanos;
+        fullAt.accumulateAndGet(pausedFullAt, (current, paused) -> current - paused < 0 ? paused : current);
+    }
+
+    /**
+     * Number of tokens that can be taken without waiting
+     */
+    public int getAvailableTokens() {
+        long debt = Math.max(fullAt.get() - System.nanoTime(), 0);
+        return (int) Math.max((burstNanos - debt) / intervalNanos, 0);
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+}
@@ -0,0 +1,31 @@
+package com.dimfunky.concurrent;
+
+/**
+ * Source of the current time for the data expiration.
+ * <p>
+ * The expiration is checked on every cache read, so the SDK uses {@link WeatherClock#coarse()} by default,
+ * which reads a field instead of the system time. Tests can move the time forward with a {@link ManualClock}.
+ */
+@FunctionalInterface
+public interface WeatherClock {
+
+    /**
+     * Returns the current time in UNIX epoch seconds
+     */
+    long epochSecond();
+
+    /**
+     * Returns the clock reading the system time on every call
+     */
+    static WeatherClock system() {
+        return () -> System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Returns the shared clock updated by a background thread every {@link CoarseClock#TICK_MILLIS} milliseconds.
+     * The thread is started on the first call.
+     */
+    static WeatherClock coarse() {
+        return CoarseClock.INSTANCE;
+    }
+}
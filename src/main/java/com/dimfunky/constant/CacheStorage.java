@@ -0,0 +1,18 @@
+package com.dimfunky.constant;
+
+/**
+ * Forms of storing the cached weather data.
+ * <p>
+ * {@link CacheStorage#HEAP} - {@link com.dimfunky.model.WeatherData} objects on the heap, reads return the cached object.
+ * <p>
+ * {@link CacheStorage#COMPACT} - flat primitive records on the heap, several times smaller,
+ * reads create a new object.
+ * <p>
+ * {@link CacheStorage#OFF_HEAP} - fixed-size records in direct memory, invisible to the garbage collector,
+ * reads decode a new object. Intended for hundreds of thousands of cities and more.
+ */
+public enum CacheStorage {
+    HEAP,
+    COMPACT,
+    OFF_HEAP
+}
@@ -0,0 +1,17 @@
+package com.dimfunky.constant;
+
+/**
+ * Policies of choosing the entry to remove when the cache limit is reached.
+ * <p>
+ * {@link EvictionPolicy#FIFO} - removes the entry with the oldest fetch timestamp.
+ * <p>
+ * {@link EvictionPolicy#LRU} - removes the least recently used entry.
+ * <p>
+ * {@link EvictionPolicy#TINY_LFU} - W-TinyLFU: new entries go to a small LRU window, entries leaving the window
+ * are admitted to the main space only if they were requested more often than the main space victim.
+ */
+public enum EvictionPolicy {
+    FIFO,
+    LRU,
+    TINY_LFU
+}
@@ -0,0 +1,19 @@
+package com.dimfunky.constant;
+
+/**
+ * Behaviour of a request exceeding the rate limit of the API key.
+ * <p>
+ * {@link RateLimitMode#WAIT} - the request waits for the next free token.
+ * <p>
+ * {@link RateLimitMode#FAIL_FAST} - the request fails at once with
+ * {@link com.dimfunky.exception.WeatherServiceRateLimitException}.
+ * <p>
+ * {@link RateLimitMode#SERVE_STALE} - outdated cached data of the city is returned, if there is any,
+ * otherwise the request fails as in {@link RateLimitMode#FAIL_FAST}.
+ * Also applies to the requests rejected by the API with the 429 status.
+ */
+public enum RateLimitMode {
+    WAIT,
+    FAIL_FAST,
+    SERVE_STALE
+}
@@ -2,5 +2,6 @@ package com.dimfunky.constant;
 
 public enum WeatherUpdateMode {
     ON_DEMAND,
-    POLLING
+    POLLING,
+    STALE_WHILE_REVALIDATE
 }
@@ -1,12 +1,56 @@
 package com.dimfunky.environment;
 
-import com.dimfunky.cache.MemoryCache;
+import com.dimfunky.cache.BoundedCache;
+import com.dimfunky.cache.Cache;
+import com.dimfunky.cache.CompactingCache;
+import com.dimfunky.cache.ExpiringCache;
+import com.dimfunky.cache.GeoIndex;
+import com.dimfunky.cache.GeocodeCache;
+import com.dimfunky.cache.OffHeapCache;
+import com.dimfunky.cache.RemoteCache;
+import com.dimfunky.cache.TwoTierCache;
+import com.dimfunky.client.RateLimiter;
+import com.dimfunky.client.RetryPolicy;
+import com.dimfunky.concurrent.CircuitBreaker;
+import com.dimfunky.concurrent.ThreadSupport;
+import com.dimfunky.concurrent.WeatherClock;
+import com.dimfunky.constant.CacheStorage;
+import com.dimfunky.constant.EvictionPolicy;
+import com.dimfunky.constant.RateLimitMode;
 import com.dimfunky.constant.WeatherUpdateMode;
+import com.dimfunky.metrics.DefaultWeatherMetrics;
+import com.dimfunky.metrics.WeatherMetrics;
 import com.dimfunky.model.WeatherData;
 
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
 import static com.dimfunky.validation.InputValidation.validateApiKey;
+import static com.dimfunky.validation.InputValidation.validateBatchConcurrency;
+import static com.dimfunky.validation.InputValidation.validateCache;
 import static com.dimfunky.validation.InputValidation.validateCacheLimit;
 import static com.dimfunky.validation.InputValidation.validateCacheUpdatePeriod;
+import static com.dimfunky.validation.InputValidation.validateCircuitBreaker;
+import static com.dimfunky.validation.InputValidation.validateClock;
+import static com.dimfunky.validation.InputValidation.validateConnectTimeout;
+import static com.dimfunky.validation.InputValidation.validateExpiredRetention;
+import static com.dimfunky.validation.InputValidation.validateGeoRadius;
+import static com.dimfunky.validation.InputValidation.validateGeocodeCacheLimit;
+import static com.dimfunky.validation.InputValidation.validateHttpThreads;
+import static com.dimfunky.validation.InputValidation.validateHttpVersion;
+import static com.dimfunky.validation.InputValidation.validateMetrics;
+import static com.dimfunky.validation.InputValidation.validateOffHeapCacheLimit;
+import static com.dimfunky.validation.InputValidation.validatePollingIdlePeriod;
+import static com.dimfunky.validation.InputValidation.validatePollingThreads;
+import static com.dimfunky.validation.InputValidation.validateRateLimit;
+import static com.dimfunky.validation.InputValidation.validateRemoteCache;
+import static com.dimfunky.validation.InputValidation.validateRequestTimeout;
+import static com.dimfunky.validation.InputValidation.validateRetry;
+import static com.dimfunky.validation.InputValidation.validateRequestsPerMinute;
+import static com.dimfunky.validation.InputValidation.validateSnapshotPeriod;
+import static com.dimfunky.validation.InputValidation.validateStaleGracePeriod;
+import static com.dimfunky.validation.InputValidation.validateTtl;
 
 /**
  * Contains environment parameters
@@ -17,14 +61,69 @@ import static com.dimfunky.validation.InputValidation.validateCacheUpdatePeriod;
  * {@link com.dimfunky.environment.WeatherEnvironment#weatherUpdateMode} - Flag for
  * the cache data update mode {@link WeatherUpdateMode}
  * <p>
- * {@link com.dimfunky.environment.WeatherEnvironment#weatherCache} - In-memory cache
- * implemented using {@link java.util.concurrent.ConcurrentHashMap}
+ * {@link com.dimfunky.environment.WeatherEnvironment#weatherCache} - Cache of the weather data,
+ * implemented using {@link BoundedCache} or provided by the user, optionally backed by a shared {@link RemoteCache}
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#clock} - Source of the current time for the data expiration
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#ttlSeconds} - Time during which the data is considered relevant
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#expiredRetentionSeconds} - Time during which expired data
+ * is kept in the cache
  * <p>
  * {@link com.dimfunky.environment.WeatherEnvironment#cacheLimit} - Size (limit) of
  * values stored in the cache
  * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#evictionPolicy} - Policy of removing
+ * entries when the cache limit is reached
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#cacheStorage} - Form of storing the cached data
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#geocodeCache} - Cache of city coordinates,
+ * optionally persisted to a file
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#geoIndex} - Index of the weather data by location,
+ * used by the coordinate requests
+ * <p>
  * {@link com.dimfunky.environment.WeatherEnvironment#cacheUpdatePeriodSeconds} - Cache
  * auto-update period in seconds
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#staleGraceSeconds} - Period after the data expiration
+ * during which outdated data is returned while it is refreshed in the background
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#snapshotFile} - File for saving the cache
+ * between restarts
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#batchConcurrency} - Maximum number of
+ * parallel fetches of the batch request
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#pollingThreads} - Number of threads
+ * refreshing the cache in the polling mode
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#pollingRequestsPerMinute} - Limit of
+ * requests per minute sent by the cache refresh in the polling mode
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#pollingIdleSeconds} - Period without reads
+ * after which a city is no longer refreshed in the polling mode
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#rateLimiter} - Limit of all requests of the API key
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#retryPolicy} - Attempts of failed requests
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#requestTimeoutMillis} - Timeout of a single request attempt
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#circuitBreaker} - Breaker suspending requests
+ * after repeated failures of the API
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#httpVersion}, {@link com.dimfunky.environment.WeatherEnvironment#connectTimeoutMillis},
+ * {@link com.dimfunky.environment.WeatherEnvironment#httpThreads} - Settings of the shared HTTP transport
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#compression} - Flag for requesting gzip-compressed responses
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#virtualThreads} - Flag for running blocking work
+ * on virtual threads on Java 21 and later
+ * <p>
+ * {@link com.dimfunky.environment.WeatherEnvironment#metrics} - Counters and latencies of the cache, HTTP and polling
  */
 public class WeatherEnvironment {
 
@@ -42,9 +141,43 @@ public class WeatherEnvironment {
 
 
     /**
-     * In-memory cache implemented using {@link java.util.concurrent.ConcurrentHashMap}
+     * Cache of the weather data: {@link WeatherEnvironment#localCache} removing the expired entries
+     * (a built-in one), in front of {@link WeatherEnvironment#remoteCache} if it is set
+     */
+    private Cache<WeatherData> weatherCache;
+
+    /**
+     * Cache of the current instance, implemented using {@link BoundedCache} or provided by the user
+     */
+    private Cache<WeatherData> localCache;
+
+    /**
+     * {@code true} if {@link WeatherEnvironment#localCache} was provided by the user
+     */
+    private boolean customCache;
+
+    /**
+     * Cache shared by several SDK instances or {@code null}
+     */
+    private RemoteCache remoteCache;
+
+
+    /**
+     * Source of the current time for the data expiration
+     */
+    private WeatherClock clock = WeatherClock.coarse();
+
+
+    /**
+     * Time in seconds during which data is considered relevant after the update
+     */
+    private long ttlSeconds = WeatherData.TTL_SECONDS;
+
+
+    /**
+     * Time in seconds after the expiration during which data is kept in the cache
      */
-    private final MemoryCache<WeatherData> weatherCache;
+    private long expiredRetentionSeconds = WeatherData.TTL_SECONDS;
 
 
     /**
@@ -57,6 +190,38 @@ public class WeatherEnvironment {
     private static final int DEFAULT_CACHE_SIZE = 10;
 
 
+    /**
+     * Policy of removing entries when the cache limit is reached
+     */
+    private EvictionPolicy evictionPolicy = EvictionPolicy.FIFO;
+
+
+    /**
+     * Form of storing the cached data
+     */
+    private CacheStorage cacheStorage = CacheStorage.HEAP;
+
+
+    /**
+     * Cache of city coordinates, optionally persisted to a file
+     */
+    private GeocodeCache geocodeCache = new GeocodeCache(DEFAULT_GEOCODE_CACHE_SIZE);
+    /**
+     * Default geocode cache size = 10000
+     */
+    private static final int DEFAULT_GEOCODE_CACHE_SIZE = 10_000;
+
+
+    /**
+     * Index of the weather data by location
+     */
+    private GeoIndex geoIndex = new GeoIndex(GeoIndex.DEFAULT_RADIUS_METERS, DEFAULT_GEO_INDEX_SIZE, clock, ttlSeconds);
+    /**
+     * Default number of locations in the index = 10000
+     */
+    private static final int DEFAULT_GEO_INDEX_SIZE = 10_000;
+
+
     /**
      * Cache auto-update period in seconds
      */
@@ -67,13 +232,167 @@ public class WeatherEnvironment {
     private static final long DEFAULT_CACHE_UPDATE_PERIOD_SECONDS = 9 * 60L;
 
 
+    /**
+     * Period after the data expiration during which outdated data is returned
+     * while it is refreshed in the background
+     */
+    private final long staleGraceSeconds;
+    /**
+     * Default stale grace period = 5 minutes
+     */
+    private static final long DEFAULT_STALE_GRACE_SECONDS = 5 * 60L;
+
+
+    /**
+     * File for saving the cache between restarts, {@code null} - the cache is not saved
+     */
+    private Path snapshotFile;
+
+
+    /**
+     * Period of saving the cache to the {@link WeatherEnvironment#snapshotFile} in seconds
+     */
+    private long snapshotPeriodSeconds = DEFAULT_SNAPSHOT_PERIOD_SECONDS;
+    /**
+     * Default snapshot period = 5 minutes
+     */
+    private static final long DEFAULT_SNAPSHOT_PERIOD_SECONDS = 5 * 60L;
+
+
+    /**
+     * Maximum number of parallel fetches of the batch request
+     */
+    private int batchConcurrency = DEFAULT_BATCH_CONCURRENCY;
+    /**
+     * Default batch concurrency = 8
+     */
+    private static final int DEFAULT_BATCH_CONCURRENCY = 8;
+
+
+    /**
+     * Number of threads refreshing the cache in the polling mode
+     */
+    private int pollingThreads = DEFAULT_POLLING_THREADS;
+    /**
+     * Default number of polling threads = 4
+     */
+    private static final int DEFAULT_POLLING_THREADS = 4;
+
+
+    /**
+     * Limit of requests per minute sent by the cache refresh in the polling mode, 0 - no limit
+     */
+    private int pollingRequestsPerMinute;
+
+
+    /**
+     * Period without reads after which a city is no longer refreshed in the polling mode, 0 - always refreshed
+     */
+    private long pollingIdleSeconds = DEFAULT_POLLING_IDLE_SECONDS;
+    /**
+     * Default idle period = 1 hour
+     */
+    private static final long DEFAULT_POLLING_IDLE_SECONDS = 60 * 60L;
+
+
+    /**
+     * Limit of all requests of the API key, {@code null} - no limit
+     */
+    private RateLimiter rateLimiter;
+
+
+    /**
+     * Attempts of failed requests
+     */
+    private RetryPolicy retryPolicy = new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    /**
+     * Default number of attempts = 3, with delays up to 200 ms and 400 ms
+     */
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 200;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 2_000;
+
+
+    /**
+     * Timeout of a single request attempt in milliseconds
+     */
+    private long requestTimeoutMillis = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+    /**
+     * Default request timeout = 10 seconds
+     */
+    private static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 10_000;
+
+
+    /**
+     * Breaker suspending requests after repeated failures of the API, {@code null} - requests are never suspended
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    /**
+     * Default circuit breaker opens after 5 consecutive failures for 30 seconds
+     */
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_MILLIS = 30_000;
+
+
+    /**
+     * Preferred HTTP version, HTTP/2 multiplexes the requests over one TLS connection
+     */
+    private HttpClient.Version httpVersion = HttpClient.Version.HTTP_2;
+
+
+    /**
+     * Timeout of establishing a connection in milliseconds
+     */
+    private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    /**
+     * Default connect timeout = 5 seconds
+     */
+    private static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 5_000;
+
+
+    /**
+     * Number of threads of the HTTP client executor
+     */
+    private int httpThreads = DEFAULT_HTTP_THREADS;
+    /**
+     * Default number of HTTP threads = 4
+     */
+    private static final int DEFAULT_HTTP_THREADS = 4;
+
+
+    /**
+     * Flag for requesting gzip-compressed responses
+     */
+    private boolean compression = true;
+
+
+    /**
+     * Flag for running blocking work on virtual threads on Java 21 and later
+     */
+    private boolean virtualThreads = true;
+
+
+    /**
+     * Instrumentation of the cache, HTTP and polling paths
+     */
+    private WeatherMetrics metrics = new DefaultWeatherMetrics();
+
+
     private WeatherEnvironment(String apiKey, WeatherUpdateMode weatherUpdateMode, int cacheLimit, long cacheUpdatePeriodSeconds) {
+        this(apiKey, weatherUpdateMode, cacheLimit, cacheUpdatePeriodSeconds, DEFAULT_STALE_GRACE_SECONDS);
+    }
+
+    private WeatherEnvironment(String apiKey, WeatherUpdateMode weatherUpdateMode, int cacheLimit,
+                               long cacheUpdatePeriodSeconds, long staleGraceSeconds) {
         validateParameters(apiKey, cacheLimit, cacheUpdatePeriodSeconds);
+        validateStaleGracePeriod(staleGraceSeconds);
         this.apiKey = apiKey.toLowerCase();
         this.weatherUpdateMode = weatherUpdateMode;
-        this.weatherCache = new MemoryCache<>();
         this.cacheLimit = cacheLimit;
         this.cacheUpdatePeriodSeconds = cacheUpdatePeriodSeconds;
+        this.staleGraceSeconds = staleGraceSeconds;
+        this.localCache = createCache(cacheLimit, evictionPolicy, cacheStorage);
+        rebuildCache();
     }
 
     public static class OnDemand extends WeatherEnvironment {
@@ -204,6 +523,80 @@ public class WeatherEnvironment {
         }
     }
 
+    public static class StaleWhileRevalidate extends WeatherEnvironment {
+        /**
+         * <pre>
+         * </pre>
+         * Creates an {@link WeatherEnvironment} with an on-demand cache update mode, which returns outdated data
+         * and refreshes it in the background.
+         * <p>
+         * Accept parameters:
+         * <p>
+         * {@code String apiKey} - Your API key.
+         * <p>
+         * {@link com.dimfunky.environment.WeatherEnvironment#cacheLimit} is set to the default value - 10
+         * <p>
+         * {@link com.dimfunky.environment.WeatherEnvironment#staleGraceSeconds} is set to the default
+         * value - 5 minutes
+         *
+         * @param apiKey
+         * @throws com.dimfunky.exception.WeatherServiceValidationException on parameters validation errors.
+         */
+        public StaleWhileRevalidate(String apiKey) {
+            super(apiKey, WeatherUpdateMode.STALE_WHILE_REVALIDATE, DEFAULT_CACHE_SIZE,
+                    DEFAULT_CACHE_UPDATE_PERIOD_SECONDS, DEFAULT_STALE_GRACE_SECONDS);
+        }
+
+        /**
+         * <pre>
+         * </pre>
+         * Creates an {@link WeatherEnvironment} with an on-demand cache update mode, which returns outdated data
+         * and refreshes it in the background.
+         * <p>
+         * Accept parameters:
+         * <p>
+         * {@code String apiKey} - Your API key.
+         * <p>
+         * {@code int cacheLimit} - Size (limit) of values stored in the cache.
+         * <p>
+         * {@link com.dimfunky.environment.WeatherEnvironment#staleGraceSeconds} is set to the default
+         * value - 5 minutes
+         *
+         * @param apiKey
+         * @param cacheLimit
+         * @throws com.dimfunky.exception.WeatherServiceValidationException on parameters validation errors.
+         */
+        public StaleWhileRevalidate(String apiKey, int cacheLimit) {
+            super(apiKey, WeatherUpdateMode.STALE_WHILE_REVALIDATE, cacheLimit,
+                    DEFAULT_CACHE_UPDATE_PERIOD_SECONDS, DEFAULT_STALE_GRACE_SECONDS);
+        }
+
+        /**
+         * <pre>
+         * </pre>
+         * Creates an {@link WeatherEnvironment} with an on-demand cache update mode, which returns outdated data
+         * and refreshes it in the background.
+         * <p>
+         * Accept parameters:
+         * <p>
+         * {@code String apiKey} - Your API key.
+         * <p>
+         * {@code int cacheLimit} - Size (limit) of values stored in the cache.
+         * <p>
+         * {@code long staleGraceSeconds} - Period in seconds after the data expiration, during which outdated
+         * data is returned. Older data is fetched while the caller waits.
+         *
+         * @param apiKey
+         * @param cacheLimit
+         * @param staleGraceSeconds
+         * @throws com.dimfunky.exception.WeatherServiceValidationException on parameters validation errors.
+         */
+        public StaleWhileRevalidate(String apiKey, int cacheLimit, long staleGraceSeconds) {
+            super(apiKey, WeatherUpdateMode.STALE_WHILE_REVALIDATE, cacheLimit,
+                    DEFAULT_CACHE_UPDATE_PERIOD_SECONDS, staleGraceSeconds);
+        }
+    }
+
     public String getApiKey() {
         return apiKey;
     }
@@ -212,18 +605,712 @@ public class WeatherEnvironment {
         return weatherUpdateMode;
     }
 
-    public MemoryCache<WeatherData> getCache() {
+    public long getStaleGraceSeconds() {
+        return staleGraceSeconds;
+    }
+
+    public Cache<WeatherData> getCache() {
         return weatherCache;
     }
 
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the policy of removing entries when the cache limit is reached.
+     * Defaults to {@link EvictionPolicy#FIFO} - the entry with the oldest {@link WeatherData#fetchedAt()} is removed.
+     * <p>
+     * Recreates the cache, so it must be called before the environment is passed to the factory.
+     *
+     * @param evictionPolicy
+     * @return this {@link WeatherEnvironment}
+     */
+    public WeatherEnvironment evictionPolicy(final EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        this.localCache = createCache(cacheLimit, evictionPolicy, cacheStorage);
+        this.customCache = false;
+        rebuildCache();
+        return this;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the cache of the weather data, replacing the built-in one.
+     * <p>
+     * The SDK uses only the {@link Cache} interface, so any thread-safe implementation can be provided.
+     * The cache controls its own limit and eviction, {@code cacheLimit}, {@link WeatherEnvironment#evictionPolicy(EvictionPolicy)}
+     * and {@link WeatherEnvironment#cacheStorage(CacheStorage)} do not apply to it. Calling these setters afterwards
+     * replaces the provided cache with a built-in one.
+     * <p>
+     * The cache also controls its own expiration: expired entries are not served as fresh, but they are removed
+     * only if the cache does it. To remove them after {@link WeatherEnvironment#getExpiredRetentionSeconds()},
+     * wrap the cache in an {@link ExpiringCache}.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param cache
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if cache is null.
+     */
+    public WeatherEnvironment cache(final Cache<WeatherData> cache) {
+        validateCache(cache);
+        this.localCache = cache;
+        this.customCache = true;
+        rebuildCache();
+        return this;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Adds the cache shared by several SDK instances (for example, replicas of a service using the same apiKey)
+     * as the second tier of the weather cache, see {@link TwoTierCache}.
+     * <p>
+     * Data fetched by one instance is visible to all, and a city is refreshed by one instance at a time
+     * while others wait for its result.
+     * <p>
+     * Remote values live for {@link WeatherEnvironment#getTtlSeconds()} + {@link WeatherEnvironment#getExpiredRetentionSeconds()}.
+     * The local cache set by the other setters stays the first tier. Must be called before the environment
+     * is passed to the factory.
+     *
+     * @param remoteCache
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if remoteCache is null.
+     */
+    public WeatherEnvironment remoteCache(final RemoteCache remoteCache) {
+        validateRemoteCache(remoteCache);
+        this.remoteCache = remoteCache;
+        rebuildCache();
+        return this;
+    }
+
+    public CacheStorage getCacheStorage() {
+        return cacheStorage;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the form of storing the cached data. Defaults to {@link CacheStorage#HEAP}.
+     * <p>
+     * {@link CacheStorage#COMPACT} ({@link CompactingCache}) takes several times less heap per city.
+     * {@link CacheStorage#OFF_HEAP} ({@link OffHeapCache}) keeps the data in direct memory and always
+     * uses the CLOCK eviction instead of {@link WeatherEnvironment#getEvictionPolicy()}.
+     * Both create a new {@link WeatherData} on every cache read.
+     * <p>
+     * Recreates the cache, so it must be called before the environment is passed to the factory.
+     *
+     * @param cacheStorage
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if cacheLimit is greater than
+     *                                                                  {@link OffHeapCache#MAX_LIMIT} for {@link CacheStorage#OFF_HEAP}.
+     */
+    public WeatherEnvironment cacheStorage(final CacheStorage cacheStorage) {
+        if (cacheStorage == CacheStorage.OFF_HEAP) {
+            validateOffHeapCacheLimit(cacheLimit);
+        }
+        this.cacheStorage = cacheStorage;
+        this.localCache = createCache(cacheLimit, evictionPolicy, cacheStorage);
+        this.customCache = false;
+        rebuildCache();
+        return this;
+    }
+
+    /**
+     * Returns the limit of the current cache, which may differ from the constructor parameter
+     * if the cache was provided with {@link WeatherEnvironment#cache(Cache)}
+     */
     public int getCacheLimit() {
-        return cacheLimit;
+        return weatherCache.getLimit();
+    }
+
+    public WeatherClock getClock() {
+        return clock;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the source of the current time for the data expiration. Defaults to {@link WeatherClock#coarse()},
+     * which is updated by a background thread, so the expiration checks on reads do not read the system time.
+     * <p>
+     * {@link com.dimfunky.concurrent.ManualClock} moves the time only when told to, for tests.
+     * <p>
+     * Recreates the cache and the location index, so it must be called before the environment is passed to the factory.
+     *
+     * @param clock
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if clock is null.
+     */
+    public WeatherEnvironment clock(final WeatherClock clock) {
+        validateClock(clock);
+        this.clock = clock;
+        rebuildCache();
+        return this;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the time in seconds during which data is considered relevant after the update.
+     * Defaults to {@link WeatherData#TTL_SECONDS}. Expired data is fetched again on the next request.
+     * <p>
+     * Recreates the cache and the location index, so it must be called before the environment is passed to the factory.
+     *
+     * @param ttlSeconds
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if ttlSeconds is not positive.
+     */
+    public WeatherEnvironment ttlSeconds(final long ttlSeconds) {
+        validateTtl(ttlSeconds);
+        this.ttlSeconds = ttlSeconds;
+        rebuildCache();
+        return this;
+    }
+
+    /**
+     * Returns the time in seconds after the expiration during which data is kept in the cache,
+     * not shorter than {@link WeatherEnvironment#getStaleGraceSeconds()} in the stale-while-revalidate mode
+     */
+    public long getExpiredRetentionSeconds() {
+        if (weatherUpdateMode == WeatherUpdateMode.STALE_WHILE_REVALIDATE) {
+            return Math.max(expiredRetentionSeconds, staleGraceSeconds);
+        }
+        return expiredRetentionSeconds;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the time in seconds after the expiration during which data is kept in the cache.
+     * Defaults to {@link WeatherData#TTL_SECONDS}.
+     * <p>
+     * Kept data is returned by the stale-while-revalidate mode and on rate limiting with
+     * {@link RateLimitMode#SERVE_STALE}. Later the entry is removed from the built-in cache (see {@link ExpiringCache})
+     * and not refreshed by the polling mode anymore. The stale-while-revalidate mode keeps data for at least
+     * {@link WeatherEnvironment#getStaleGraceSeconds()}.
+     * <p>
+     * Recreates the cache, so it must be called before the environment is passed to the factory.
+     *
+     * @param expiredRetentionSeconds
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if expiredRetentionSeconds is negative.
+     */
+    public WeatherEnvironment expiredRetentionSeconds(final long expiredRetentionSeconds) {
+        validateExpiredRetention(expiredRetentionSeconds);
+        this.expiredRetentionSeconds = expiredRetentionSeconds;
+        rebuildCache();
+        return this;
     }
 
     public long getCacheUpdatePeriodSeconds() {
         return cacheUpdatePeriodSeconds;
     }
 
+    public GeocodeCache getGeocodeCache() {
+        return geocodeCache;
+    }
+
+    public GeoIndex getGeoIndex() {
+        return geoIndex;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the radius within which the weather data of a location is used for
+     * {@link com.dimfunky.template.WeatherTemplate#getWeatherInfo(double, double)} requests. Defaults to 1000 meters,
+     * {@code 0} - every coordinate request is sent to the API.
+     * <p>
+     * Recreates the index, so it must be called before the environment is passed to the factory.
+     *
+     * @param geoRadiusMeters
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if geoRadiusMeters is negative.
+     */
+    public WeatherEnvironment geoRadiusMeters(final double geoRadiusMeters) {
+        validateGeoRadius(geoRadiusMeters);
+        this.geoIndex = new GeoIndex(geoRadiusMeters, geoIndex.getLimit(), clock, ttlSeconds);
+        return this;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the size (limit) of the city coordinates cache. Defaults to 10000.
+     * <p>
+     * Recreates the geocode cache (reloading it from the file, if set),
+     * so it must be called before the environment is passed to the factory.
+     *
+     * @param geocodeCacheLimit
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if geocodeCacheLimit is not positive.
+     */
+    public WeatherEnvironment geocodeCacheLimit(final int geocodeCacheLimit) {
+        validateGeocodeCacheLimit(geocodeCacheLimit);
+        this.geocodeCache = new GeocodeCache(geocodeCacheLimit, geocodeCache.getFile());
+        return this;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the file for persisting the city coordinates cache across restarts.
+     * The cache is loaded from the file at once, the file is created if missing.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param geocodeCacheFile
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceException if the file cannot be read or created.
+     */
+    public WeatherEnvironment geocodeCacheFile(final Path geocodeCacheFile) {
+        this.geocodeCache = new GeocodeCache(geocodeCache.getLimit(), geocodeCacheFile);
+        return this;
+    }
+
+    public Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the file for saving the cache between restarts.
+     * <p>
+     * {@link com.dimfunky.WeatherTemplateFactory#createInstance(WeatherEnvironment)} restores the cache
+     * from the file and starts saving it every {@link WeatherEnvironment#getSnapshotPeriodSeconds()}.
+     * {@link com.dimfunky.WeatherTemplateFactory#deleteInstance(String)} saves the final snapshot.
+     * Defaults to {@code null} - the cache is not saved.
+     *
+     * @param snapshotFile
+     * @return this {@link WeatherEnvironment}
+     */
+    public WeatherEnvironment snapshotFile(final Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        return this;
+    }
+
+    public long getSnapshotPeriodSeconds() {
+        return snapshotPeriodSeconds;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the period of saving the cache to the {@link WeatherEnvironment#getSnapshotFile()}. Defaults to 5 minutes.
+     *
+     * @param snapshotPeriodSeconds
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if snapshotPeriodSeconds is not positive.
+     */
+    public WeatherEnvironment snapshotPeriodSeconds(final long snapshotPeriodSeconds) {
+        validateSnapshotPeriod(snapshotPeriodSeconds);
+        this.snapshotPeriodSeconds = snapshotPeriodSeconds;
+        return this;
+    }
+
+    public int getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the maximum number of parallel fetches of
+     * {@link com.dimfunky.template.WeatherTemplate#getWeatherInfoAll(java.util.Collection)}.
+     * Defaults to 8.
+     *
+     * @param batchConcurrency
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if batchConcurrency is not positive.
+     */
+    public WeatherEnvironment batchConcurrency(final int batchConcurrency) {
+        validateBatchConcurrency(batchConcurrency);
+        this.batchConcurrency = batchConcurrency;
+        return this;
+    }
+
+    public int getPollingThreads() {
+        return pollingThreads;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the number of threads refreshing the cache in the polling mode. Defaults to 4.
+     *
+     * @param pollingThreads
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if pollingThreads is not positive.
+     */
+    public WeatherEnvironment pollingThreads(final int pollingThreads) {
+        validatePollingThreads(pollingThreads);
+        this.pollingThreads = pollingThreads;
+        return this;
+    }
+
+    public int getPollingRequestsPerMinute() {
+        return pollingRequestsPerMinute;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the limit of requests per minute sent by the cache refresh in the polling mode.
+     * Requests are spread evenly over the minute. Defaults to 0 - no limit.
+     * <p>
+     * ! The Free Access API allows 60 calls per minute !
+     *
+     * @param pollingRequestsPerMinute
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if pollingRequestsPerMinute is negative.
+     */
+    public WeatherEnvironment pollingRequestsPerMinute(final int pollingRequestsPerMinute) {
+        validateRequestsPerMinute(pollingRequestsPerMinute);
+        this.pollingRequestsPerMinute = pollingRequestsPerMinute;
+        return this;
+    }
+
+    public long getPollingIdleSeconds() {
+        return pollingIdleSeconds;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the period without reads after which a cached city is no longer refreshed in the polling mode.
+     * Defaults to 1 hour, {@code 0} - every cached city is refreshed.
+     * <p>
+     * Such a city lapses: its data expires and is fetched again on the next read, or is removed
+     * by the cache eviction. Cities cached without a read through the template, for example restored
+     * from a snapshot, count as never read and lapse once they are due.
+     *
+     * @param pollingIdleSeconds
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if pollingIdleSeconds is negative.
+     */
+    public WeatherEnvironment pollingIdleSeconds(final long pollingIdleSeconds) {
+        validatePollingIdlePeriod(pollingIdleSeconds);
+        this.pollingIdleSeconds = pollingIdleSeconds;
+        return this;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Limits all requests of the API key with a token bucket, see {@link RateLimiter}. Defaults to no limit.
+     * <p>
+     * Accept parameters:
+     * <p>
+     * {@code int requestsPerMinute} - Rate of the requests.
+     * <p>
+     * {@code int burst} - Number of requests that can be sent at once after a pause.
+     * <p>
+     * {@link RateLimitMode} {@code mode} - Behaviour of a request exceeding the limit:
+     * waiting, failing or returning outdated cached data.
+     * <p>
+     * ! The Free Access API allows 60 calls per minute !
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param requestsPerMinute
+     * @param burst
+     * @param mode
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if requestsPerMinute or burst is not positive,
+     *                                                                  or mode is null.
+     */
+    public WeatherEnvironment rateLimit(final int requestsPerMinute, final int burst, final RateLimitMode mode) {
+        validateRateLimit(requestsPerMinute, burst, mode);
+        this.rateLimiter = new RateLimiter(requestsPerMinute, burst, mode);
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the attempts of failed requests. Transport errors, timeouts and server errors (status 500 and above)
+     * are retried with exponential backoff and random jitter, see {@link RetryPolicy}.
+     * Defaults to 3 attempts, with the backoff from 200 ms up to 2 seconds.
+     * <p>
+     * Accept parameters:
+     * <p>
+     * {@code int maxAttempts} - Number of attempts including the first one, 1 - no retries.
+     * <p>
+     * {@code long initialBackoffMillis} - Upper bound of the delay before the first retry, doubled for every next one.
+     * <p>
+     * {@code long maxBackoffMillis} - Upper bound of any delay.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param maxAttempts
+     * @param initialBackoffMillis
+     * @param maxBackoffMillis
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if maxAttempts is not positive, initialBackoffMillis
+     *                                                                  is negative or greater than maxBackoffMillis.
+     */
+    public WeatherEnvironment retry(final int maxAttempts, final long initialBackoffMillis, final long maxBackoffMillis) {
+        validateRetry(maxAttempts, initialBackoffMillis, maxBackoffMillis);
+        this.retryPolicy = new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis);
+        return this;
+    }
+
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the timeout of a single request attempt in milliseconds. Defaults to 10 seconds.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param requestTimeoutMillis
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if requestTimeoutMillis is not positive.
+     */
+    public WeatherEnvironment requestTimeoutMillis(final long requestTimeoutMillis) {
+        validateRequestTimeout(requestTimeoutMillis);
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        return this;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the circuit breaker of the API, see {@link CircuitBreaker}. Defaults to 5 failures and 30 seconds.
+     * <p>
+     * After {@code failureThreshold} consecutive failed attempts, requests are not sent for {@code openSeconds}.
+     * Meanwhile, requests return outdated cached data of the city, if there is any, or fail at once with
+     * {@link com.dimfunky.exception.WeatherServiceUnavailableException}.
+     * <p>
+     * Accept parameters:
+     * <p>
+     * {@code int failureThreshold} - Number of consecutive failures opening the breaker, 0 - disables the breaker.
+     * <p>
+     * {@code long openSeconds} - Time during which requests are not sent.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param failureThreshold
+     * @param openSeconds
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if failureThreshold is negative
+     *                                                                  or openSeconds is not positive.
+     */
+    public WeatherEnvironment circuitBreaker(final int failureThreshold, final long openSeconds) {
+        validateCircuitBreaker(failureThreshold, openSeconds);
+        this.circuitBreaker = failureThreshold == 0
+                ? null
+                : new CircuitBreaker(failureThreshold, TimeUnit.SECONDS.toMillis(openSeconds));
+        return this;
+    }
+
+    public HttpClient.Version getHttpVersion() {
+        return httpVersion;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the preferred HTTP version. Defaults to {@link HttpClient.Version#HTTP_2}, which falls back
+     * to HTTP/1.1 if the server does not support it.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param httpVersion
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if httpVersion is null.
+     */
+    public WeatherEnvironment httpVersion(final HttpClient.Version httpVersion) {
+        validateHttpVersion(httpVersion);
+        this.httpVersion = httpVersion;
+        return this;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the timeout of establishing a connection in milliseconds. Defaults to 5 seconds.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param connectTimeoutMillis
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if connectTimeoutMillis is not positive.
+     */
+    public WeatherEnvironment connectTimeoutMillis(final long connectTimeoutMillis) {
+        validateConnectTimeout(connectTimeoutMillis);
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    public int getHttpThreads() {
+        return httpThreads;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the number of threads of the HTTP client executor. Defaults to 4.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param httpThreads
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if httpThreads is not positive.
+     */
+    public WeatherEnvironment httpThreads(final int httpThreads) {
+        validateHttpThreads(httpThreads);
+        this.httpThreads = httpThreads;
+        return this;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the flag for requesting gzip-compressed responses. Defaults to {@code true}.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param compression
+     * @return this {@link WeatherEnvironment}
+     */
+    public WeatherEnvironment compression(final boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Returns {@code true} if blocking work runs on virtual threads: they are enabled
+     * and supported by the running JVM (Java 21 or later)
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads && ThreadSupport.isVirtualThreadsAvailable();
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the flag for running blocking work on virtual threads. Defaults to {@code true},
+     * has no effect before Java 21.
+     * <p>
+     * With virtual threads, the polling refreshes and the fetches of
+     * {@link com.dimfunky.template.WeatherTemplate#getWeatherInfoAll(java.util.Collection)} run on a virtual thread
+     * each, and the shared {@link HttpClient} runs its tasks on virtual threads. {@link #getPollingThreads()}
+     * and {@link #getHttpThreads()} are then not used, the requests are still limited by
+     * {@link #getPollingRequestsPerMinute()} and {@link #getBatchConcurrency()}.
+     * <p>
+     * Must be called before the environment is passed to the factory.
+     *
+     * @param virtualThreads
+     * @return this {@link WeatherEnvironment}
+     */
+    public WeatherEnvironment virtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public WeatherMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Sets the instrumentation of the cache, HTTP and polling paths.
+     * Defaults to {@link DefaultWeatherMetrics}, read with {@link WeatherMetrics#snapshot()}.
+     * <p>
+     * {@link WeatherMetrics#NONE} disables the instrumentation. Must be called before the environment
+     * is passed to the factory.
+     *
+     * @param metrics
+     * @return this {@link WeatherEnvironment}
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if metrics is null.
+     */
+    public WeatherEnvironment metrics(final WeatherMetrics metrics) {
+        validateMetrics(metrics);
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Returns {@code true} if outdated cached data should be returned for requests exceeding the rate limit
+     */
+    public boolean isServeStaleOnRateLimit() {
+        return rateLimiter != null && rateLimiter.getMode() == RateLimitMode.SERVE_STALE;
+    }
+
+    /**
+     * Composes {@link WeatherEnvironment#weatherCache} of the local and remote caches with the current expiration
+     * settings, and recreates the location index, which depends on them too.
+     * <p>
+     * {@link OffHeapCache} keeps the deadlines in its records, so it is not wrapped in an {@link ExpiringCache},
+     * which would hold heap objects per entry. A cache provided by the user is used as it is.
+     */
+    private void rebuildCache() {
+        long lifetimeSeconds = ttlSeconds + getExpiredRetentionSeconds();
+        Cache<WeatherData> cache;
+        if (customCache) {
+            cache = localCache;
+        } else if (localCache instanceof OffHeapCache) {
+            cache = ((OffHeapCache) localCache).expireAfter(clock, lifetimeSeconds);
+        } else {
+            cache = new ExpiringCache(localCache, clock, lifetimeSeconds);
+        }
+        if (remoteCache != null) {
+            cache = new TwoTierCache(cache, remoteCache, TimeUnit.SECONDS.toMillis(lifetimeSeconds),
+                    TwoTierCache.DEFAULT_LEASE_MILLIS, clock, ttlSeconds);
+        }
+        this.weatherCache = cache;
+        this.geoIndex = new GeoIndex(geoIndex.getRadiusMeters(), geoIndex.getLimit(), clock, ttlSeconds);
+    }
+
+    private static Cache<WeatherData> createCache(final int cacheLimit, final EvictionPolicy evictionPolicy,
+                                                  final CacheStorage cacheStorage) {
+        switch (cacheStorage) {
+            case COMPACT:
+                return new CompactingCache(cacheLimit, evictionPolicy);
+            case OFF_HEAP:
+                return new OffHeapCache(cacheLimit);
+            default:
+                break;
+        }
+        return new BoundedCache<>(cacheLimit, evictionPolicy,
+                data -> data.fetchedAt() == null ? 0L : data.fetchedAt());
+    }
+
     private void validateParameters(final String apiKey, final int cacheLimit, final long cacheUpdatePeriodSeconds) {
         validateApiKey(apiKey);
         validateCacheLimit(cacheLimit);
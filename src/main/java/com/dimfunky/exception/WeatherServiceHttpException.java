@@ -0,0 +1,17 @@
+package com.dimfunky.exception;
+
+/**
+ * Thrown when the API responds with an error status (400 and above)
+ */
+public class WeatherServiceHttpException extends WeatherServiceException {
+    private final int statusCode;
+
+    public WeatherServiceHttpException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
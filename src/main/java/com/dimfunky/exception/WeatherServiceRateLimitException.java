@@ -0,0 +1,21 @@
+package com.dimfunky.exception;
+
+/**
+ * Thrown when the request exceeds the client-side rate limit of the API key,
+ * or when the API rejects it with the 429 (Too Many Requests) status.
+ */
+public class WeatherServiceRateLimitException extends WeatherServiceException {
+    private final long retryAfterMillis;
+
+    public WeatherServiceRateLimitException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Time after which the request may succeed, 0 if unknown
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,11 @@
+package com.dimfunky.exception;
+
+/**
+ * Thrown without sending the request while the circuit breaker is open
+ * after repeated failures of the API
+ */
+public class WeatherServiceUnavailableException extends WeatherServiceException {
+    public WeatherServiceUnavailableException(String message) {
+        super(message);
+    }
+}
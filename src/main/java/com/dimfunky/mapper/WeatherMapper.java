@@ -3,45 +3,382 @@ package com.dimfunky.mapper;
 import com.dimfunky.exception.WeatherServiceException;
 import com.dimfunky.model.CityCoords;
 import com.dimfunky.model.WeatherData;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mapping between the JSON of <a href="https://openweathermap.org">OpenWeatherMap</a> and the SDK model.
+ * <p>
+ * Responses are decoded with a streaming {@link JsonParser} straight from the response bytes:
+ * only the fields of {@link WeatherData} and {@link CityCoords} are read, everything else is skipped
+ * without materializing it. The geocode list is read up to its first element.
+ */
 public class WeatherMapper {
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static final String TRIM_CITY_LIST_STRING_REGEX = "(^\\[)|(\\])$";
+    private static final JsonFactory jsonFactory = objectMapper.getFactory();
 
     private WeatherMapper() {
     }
 
+    /**
+     * Maps the first element of the 'Geocode API' response list
+     *
+     * @param jsonString
+     * @return {@link CityCoords} or {@code null} if the list is empty
+     * @throws WeatherServiceException if the JSON is malformed
+     */
     public static CityCoords toCityCoords(final String jsonString) {
-        String trimmedString = jsonString.replaceAll(TRIM_CITY_LIST_STRING_REGEX, "");
-        try {
-            return objectMapper.readValue(trimmedString, CityCoords.class);
-        } catch (JsonProcessingException e) {
+        try (JsonParser parser = jsonFactory.createParser(jsonString)) {
+            return readCityCoords(parser);
+        } catch (IOException e) {
+            throw new WeatherServiceException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Maps the first element of the 'Geocode API' response list
+     *
+     * @param json UTF-8 encoded response
+     * @return {@link CityCoords} or {@code null} if the list is empty
+     * @throws WeatherServiceException if the JSON is malformed
+     */
+    public static CityCoords toCityCoords(final byte[] json) {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            return readCityCoords(parser);
+        } catch (IOException e) {
+            throw new WeatherServiceException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Maps the first element of the 'Geocode API' response list, reading it from the stream.
+     * The stream is closed.
+     *
+     * @param json UTF-8 encoded response
+     * @return {@link CityCoords} or {@code null} if the list is empty
+     * @throws WeatherServiceException if the JSON is malformed or the stream cannot be read
+     */
+    public static CityCoords toCityCoords(final InputStream json) {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            return readCityCoords(parser);
+        } catch (IOException e) {
             throw new WeatherServiceException(e.getMessage(), e);
         }
     }
 
     public static WeatherData toWeatherData(final String jsonString) {
-        try {
-            return objectMapper.readValue(jsonString, WeatherData.class);
-        } catch (JsonProcessingException e) {
+        try (JsonParser parser = jsonFactory.createParser(jsonString)) {
+            return readWeatherData(parser);
+        } catch (IOException e) {
             throw new WeatherServiceException(e.getMessage(), e);
         }
     }
 
-    public static String weatherDataToJson(final WeatherData weatherData) {
-        try {
-            return objectMapper.writeValueAsString(weatherData);
-        } catch (JsonProcessingException e) {
+    /**
+     * Maps the 'Data API' response
+     *
+     * @param json UTF-8 encoded response
+     * @return {@link WeatherData}
+     * @throws WeatherServiceException if the JSON is malformed
+     */
+    public static WeatherData toWeatherData(final byte[] json) {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            return readWeatherData(parser);
+        } catch (IOException e) {
+            throw new WeatherServiceException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Maps the 'Data API' response, reading it from the stream. The stream is closed.
+     *
+     * @param json UTF-8 encoded response
+     * @return {@link WeatherData}
+     * @throws WeatherServiceException if the JSON is malformed or the stream cannot be read
+     */
+    public static WeatherData toWeatherData(final InputStream json) {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            return readWeatherData(parser);
+        } catch (IOException e) {
             throw new WeatherServiceException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Serializes the data to a JSON String once and memoizes the result in {@link WeatherData#jsonString()}.
+     *
+     * @param weatherData
+     * @return JSON
+     * @throws WeatherServiceException if the data cannot be serialized
+     */
+    public static String weatherDataToJson(final WeatherData weatherData) {
+        String jsonString = weatherData.jsonString();
+        if (jsonString == null) {
+            jsonString = new String(weatherDataToJsonBytes(weatherData), StandardCharsets.UTF_8);
+            weatherData.jsonString(jsonString);
+        }
+        return jsonString;
+    }
+
+    /**
+     * Serializes the data to UTF-8 encoded JSON once and memoizes the result in {@link WeatherData#json()}.
+     *
+     * @param weatherData
+     * @return JSON bytes shared by all callers, must not be modified
+     * @throws WeatherServiceException if the data cannot be serialized
+     */
+    public static byte[] weatherDataToJsonBytes(final WeatherData weatherData) {
+        byte[] json = weatherData.json();
+        if (json == null) {
+            try {
+                json = objectMapper.writeValueAsBytes(weatherData);
+            } catch (JsonProcessingException e) {
+                throw new WeatherServiceException(e.getMessage(), e);
+            }
+            weatherData.json(json);
+        }
+        return json;
+    }
+
     public static CityCoords infoToCoords(final WeatherData weatherData) {
         return new CityCoords()
                 .name(weatherData.name())
                 .lat(weatherData.getCoord().lat())
                 .lon(weatherData.getCoord().lon());
     }
+
+    private static CityCoords readCityCoords(final JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY) {
+                return null;
+            }
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        var cityCoords = new CityCoords();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "name":
+                    cityCoords.name(readString(parser));
+                    break;
+                case "lat":
+                    cityCoords.lat(readDouble(parser));
+                    break;
+                case "lon":
+                    cityCoords.lon(readDouble(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return cityCoords;
+    }
+
+    private static WeatherData readWeatherData(final JsonParser parser) throws IOException {
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+
+        var weatherData = new WeatherData();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "coord":
+                    weatherData.coord(readCoord(parser, token));
+                    break;
+                case "weather":
+                    weatherData.weather(readWeather(parser, token));
+                    break;
+                case "main":
+                case "temperature":
+                    weatherData.temperature(readTemperature(parser, token));
+                    break;
+                case "visibility":
+                    weatherData.visibility(readInteger(parser));
+                    break;
+                case "wind":
+                    weatherData.wind(readWind(parser, token));
+                    break;
+                case "dt":
+                case "date_time":
+                    weatherData.dateTime(readLong(parser));
+                    break;
+                case "sys":
+                    weatherData.sys(readSys(parser, token));
+                    break;
+                case "timezone":
+                    weatherData.timeZone(readInteger(parser));
+                    break;
+                case "name":
+                    weatherData.name(readString(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        expect(parser, parser.currentToken(), JsonToken.END_OBJECT);
+        return weatherData;
+    }
+
+    private static WeatherData.Coord readCoord(final JsonParser parser, final JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+        var coord = new WeatherData.Coord();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "lat":
+                    coord.lat(readDouble(parser));
+                    break;
+                case "lon":
+                    coord.lon(readDouble(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return coord;
+    }
+
+    /**
+     * The 'Data API' returns a list of conditions, the first one is the primary.
+     * The SDK JSON has a single object.
+     */
+    private static WeatherData.Weather readWeather(final JsonParser parser, final JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.START_ARRAY) {
+            return readWeatherObject(parser, token);
+        }
+        WeatherData.Weather weather = null;
+        JsonToken elementToken = parser.nextToken();
+        if (elementToken != JsonToken.END_ARRAY) {
+            weather = readWeatherObject(parser, elementToken);
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+            }
+        }
+        return weather;
+    }
+
+    private static WeatherData.Weather readWeatherObject(final JsonParser parser, final JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.START_OBJECT);
+        var weather = new WeatherData.Weather();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "main":
+                    weather.main(readString(parser));
+                    break;
+                case "description":
+                    weather.description(readString(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return weather;
+    }
+
+    private static WeatherData.Temperature readTemperature(final JsonParser parser, final JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+        var temperature = new WeatherData.Temperature();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "temp":
+                    temperature.temp(readDouble(parser));
+                    break;
+                case "feels_like":
+                    temperature.feelsLike(readDouble(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return temperature;
+    }
+
+    private static WeatherData.Wind readWind(final JsonParser parser, final JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+        var wind = new WeatherData.Wind();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("speed")) {
+                wind.speed(readDouble(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return wind;
+    }
+
+    private static WeatherData.Sys readSys(final JsonParser parser, final JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+        var sys = new WeatherData.Sys();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "sunrise":
+                    sys.sunrise(readLong(parser));
+                    break;
+                case "sunset":
+                    sys.sunset(readLong(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return sys;
+    }
+
+    private static String readString(final JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+
+    private static Double readDouble(final JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getDoubleValue();
+    }
+
+    private static Integer readInteger(final JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getIntValue();
+    }
+
+    private static Long readLong(final JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getLongValue();
+    }
+
+    private static void expect(final JsonParser parser, final JsonToken actual, final JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new WeatherServiceException("Unexpected JSON token " + actual + ", expected " + expected
+                    + " at " + parser.currentLocation());
+        }
+    }
 }
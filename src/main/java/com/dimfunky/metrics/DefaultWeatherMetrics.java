@@ -0,0 +1,48 @@
+package com.dimfunky.metrics;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link WeatherMetrics} aggregated in memory: a {@link LongAdder} per counter and
+ * a {@link LatencyHistogram} per timer. Read with {@link #snapshot()}.
+ */
+public class DefaultWeatherMetrics implements WeatherMetrics {
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Timer[] TIMERS = Timer.values();
+
+    private final LongAdder[] counters = new LongAdder[COUNTERS.length];
+    private final LatencyHistogram[] timers = new LatencyHistogram[TIMERS.length];
+
+    public DefaultWeatherMetrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void increment(final Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    @Override
+    public void record(final Timer timer, final long nanos) {
+        timers[timer.ordinal()].record(nanos);
+    }
+
+    @Override
+    public MetricsSnapshot snapshot() {
+        EnumMap<Counter, Long> counterValues = new EnumMap<>(Counter.class);
+        for (Counter counter : COUNTERS) {
+            counterValues.put(counter, counters[counter.ordinal()].sum());
+        }
+        EnumMap<Timer, LatencySnapshot> timerValues = new EnumMap<>(Timer.class);
+        for (Timer timer : TIMERS) {
+            timerValues.put(timer, timers[timer.ordinal()].snapshot());
+        }
+        return new MetricsSnapshot(counterValues, timerValues);
+    }
+}
@@ -0,0 +1,79 @@
+package com.dimfunky.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable copy of a {@link LatencyHistogram}
+ */
+public class LatencySnapshot {
+    static final LatencySnapshot EMPTY = new LatencySnapshot(new long[LatencyHistogram.BUCKETS], 0, 0);
+
+    private final long[] counts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    LatencySnapshot(final long[] counts, final long totalNanos, final long maxNanos) {
+        this.counts = counts;
+        long sum = 0;
+        for (long bucketCount : counts) {
+            sum += bucketCount;
+        }
+        this.count = sum;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * Number of recorded durations
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Returns the duration below which the {@code percentile} of the recorded durations fall,
+     * for example {@code getPercentileNanos(99)}.
+     * <p>
+     * The value is the upper bound of the histogram bucket, not greater than {@link #getMaxNanos()}.
+     *
+     * @param percentile from 0 to 100
+     * @return duration in nanoseconds, 0 if nothing is recorded
+     * @throws IllegalArgumentException if the percentile is out of range
+     */
+    public long getPercentileNanos(final double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upperBoundOf(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    public long getPercentileMillis(final double percentile) {
+        return TimeUnit.NANOSECONDS.toMillis(getPercentileNanos(percentile));
+    }
+}
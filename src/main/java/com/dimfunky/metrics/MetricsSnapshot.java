@@ -0,0 +1,52 @@
+package com.dimfunky.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Values of the {@link WeatherMetrics} at a point in time.
+ * <p>
+ * Counters and durations are cumulative since the metrics were created, an adapter exporting them
+ * periodically computes the rates from the differences of consecutive snapshots.
+ */
+public class MetricsSnapshot {
+    static final MetricsSnapshot EMPTY = new MetricsSnapshot(
+            new EnumMap<>(WeatherMetrics.Counter.class), new EnumMap<>(WeatherMetrics.Timer.class));
+
+    private final Map<WeatherMetrics.Counter, Long> counters;
+    private final Map<WeatherMetrics.Timer, LatencySnapshot> timers;
+
+    MetricsSnapshot(final EnumMap<WeatherMetrics.Counter, Long> counters,
+                    final EnumMap<WeatherMetrics.Timer, LatencySnapshot> timers) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.timers = Collections.unmodifiableMap(timers);
+    }
+
+    public long getCount(final WeatherMetrics.Counter counter) {
+        return counters.getOrDefault(counter, 0L);
+    }
+
+    public LatencySnapshot getLatency(final WeatherMetrics.Timer timer) {
+        return timers.getOrDefault(timer, LatencySnapshot.EMPTY);
+    }
+
+    public Map<WeatherMetrics.Counter, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<WeatherMetrics.Timer, LatencySnapshot> getTimers() {
+        return timers;
+    }
+
+    /**
+     * Share of requests answered from the cache, including outdated data
+     *
+     * @return ratio from 0 to 1, 0 if there were no requests
+     */
+    public double getCacheHitRatio() {
+        long hits = getCount(WeatherMetrics.Counter.CACHE_HIT) + getCount(WeatherMetrics.Counter.CACHE_STALE_HIT);
+        long requests = hits + getCount(WeatherMetrics.Counter.CACHE_MISS);
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
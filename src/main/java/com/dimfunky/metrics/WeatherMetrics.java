@@ -0,0 +1,111 @@
+package com.dimfunky.metrics;
+
+/**
+ * Instrumentation SPI of the SDK.
+ * <p>
+ * The template, the HTTP client and the polling scheduler report events as {@link Counter} increments
+ * and latencies as {@link Timer} durations. Methods are called on the request paths, so implementations
+ * must be thread-safe and must not block.
+ * <p>
+ * {@link DefaultWeatherMetrics} aggregates the values in memory and exposes them with {@link #snapshot()},
+ * which an adapter can read periodically and export to a metrics backend. An adapter may also implement
+ * this interface and forward each event directly. {@link #NONE} disables the instrumentation.
+ */
+public interface WeatherMetrics {
+
+    /**
+     * Counted events
+     */
+    enum Counter {
+        /**
+         * Request answered with fresh cached data
+         */
+        CACHE_HIT,
+        /**
+         * Request for a missing or outdated city, which is fetched
+         */
+        CACHE_MISS,
+        /**
+         * Request answered with outdated cached data without waiting for the fetch
+         */
+        CACHE_STALE_HIT,
+        /**
+         * Failed fetch of a city
+         */
+        FETCH_ERROR,
+        /**
+         * Failed request to the API, after all attempts
+         */
+        HTTP_ERROR,
+        /**
+         * Failed refresh of a city by the polling scheduler
+         */
+        POLL_REFRESH_ERROR,
+        /**
+         * Cached city not refreshed by the polling scheduler, because it is not read or the budget is spent
+         */
+        POLL_REFRESH_SKIPPED
+    }
+
+    /**
+     * Measured operations
+     */
+    enum Timer {
+        /**
+         * {@link com.dimfunky.template.WeatherTemplate#getWeatherInfo(String)} and its non-blocking variant
+         */
+        GET_WEATHER_INFO,
+        /**
+         * Fetch of a city: the coordinates (if needed) and the weather data
+         */
+        FETCH_DATA,
+        /**
+         * Update of the cache with the fetched data
+         */
+        UPDATE_CACHE,
+        /**
+         * Request to the 'Geocode API', including retries
+         */
+        GEOCODE_REQUEST,
+        /**
+         * Request to the 'Data API', including retries
+         */
+        WEATHER_DATA_REQUEST,
+        /**
+         * Update cycle of the polling scheduler
+         */
+        POLL_CYCLE
+    }
+
+    /**
+     * Instrumentation that ignores all events
+     */
+    WeatherMetrics NONE = new WeatherMetrics() {
+        @Override
+        public void increment(final Counter counter) {
+        }
+
+        @Override
+        public void record(final Timer timer, final long nanos) {
+        }
+    };
+
+    void increment(Counter counter);
+
+    /**
+     * Records the duration of the operation
+     *
+     * @param timer
+     * @param nanos duration in nanoseconds
+     */
+    void record(Timer timer, long nanos);
+
+    /**
+     * Returns the values aggregated so far. Implementations that do not aggregate return an empty snapshot.
+     *
+     * @return {@link MetricsSnapshot}
+     */
+    default MetricsSnapshot snapshot() {
+        return MetricsSnapshot.EMPTY;
+    }
+}
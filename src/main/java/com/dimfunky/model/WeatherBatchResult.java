@@ -0,0 +1,42 @@
+package com.dimfunky.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of the batch weather request.
+ * <p>
+ * {@link WeatherBatchResult#results()} - weather data by the lowercase city name.
+ * <p>
+ * {@link WeatherBatchResult#errors()} - exceptions by the lowercase city name
+ * (or by the original input if it is not a valid city name).
+ */
+public class WeatherBatchResult {
+    private final Map<String, WeatherData> results;
+    private final Map<String, RuntimeException> errors;
+
+    public WeatherBatchResult(final Map<String, WeatherData> results, final Map<String, RuntimeException> errors) {
+        this.results = Collections.unmodifiableMap(results);
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    public Map<String, WeatherData> results() {
+        return results;
+    }
+
+    public Map<String, RuntimeException> errors() {
+        return errors;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherBatchResult{" +
+                "results=" + results +
+                ", errors=" + errors +
+                '}';
+    }
+}
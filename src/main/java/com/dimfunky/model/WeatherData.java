@@ -17,6 +17,11 @@ import java.util.Objects;
 @JsonPropertyOrder({"weather", "temperature", "visibility", "wind", "datetime", "sys"})
 public class WeatherData {
 
+    /**
+     * Time in seconds during which data is considered relevant after the update
+     */
+    public static final long TTL_SECONDS = 10 * 60L;
+
     /**
      * Timestamp of cache data update in UNIX epochSeconds.
      */
@@ -51,7 +56,84 @@ public class WeatherData {
      */
     @JsonIgnore
     public boolean isExpired() {
-        return (Instant.now().getEpochSecond() - fetchedAt) >= 10 * 60L;
+        return isOlderThan(TTL_SECONDS);
+    }
+
+    /**
+     * Returns {@code true} if data was updated {@code seconds} or more seconds ago.
+     *
+     * @param seconds
+     */
+    @JsonIgnore
+    public boolean isOlderThan(final long seconds) {
+        return isOlderThan(seconds, Instant.now().getEpochSecond());
+    }
+
+    /**
+     * Returns {@code true} if data was updated {@code ttlSeconds} or more seconds before {@code nowEpochSecond}.
+     *
+     * @param ttlSeconds     time in seconds during which data is considered relevant
+     * @param nowEpochSecond current time in UNIX epochSeconds, see {@link com.dimfunky.concurrent.WeatherClock}
+     */
+    @JsonIgnore
+    public boolean isExpired(final long ttlSeconds, final long nowEpochSecond) {
+        return isOlderThan(ttlSeconds, nowEpochSecond);
+    }
+
+    /**
+     * Returns {@code true} if data was updated {@code seconds} or more seconds before {@code nowEpochSecond}.
+     *
+     * @param seconds
+     * @param nowEpochSecond current time in UNIX epochSeconds
+     */
+    @JsonIgnore
+    public boolean isOlderThan(final long seconds, final long nowEpochSecond) {
+        return (nowEpochSecond - fetchedAt) >= seconds;
+    }
+
+    /**
+     * Serialized JSON of this object, memoized by {@link com.dimfunky.mapper.WeatherMapper#weatherDataToJsonBytes(WeatherData)}.
+     * Reset by the setters of this class and ignored once a nested object changes. Cached objects are replaced
+     * on refresh, so the memoized JSON lives exactly as long as the cache entry.
+     */
+    private volatile byte[] json;
+    /**
+     * {@link WeatherData#json} decoded to a String, memoized by {@link com.dimfunky.mapper.WeatherMapper#weatherDataToJson(WeatherData)}
+     */
+    private volatile String jsonString;
+    /**
+     * Sum of the change counts of the nested objects when {@link WeatherData#json} was memoized
+     */
+    private volatile int jsonVersion;
+
+    /**
+     * Memoized serialized JSON or {@code null}, also if a nested object changed since. The array must not be modified.
+     */
+    @JsonIgnore
+    public byte[] json() {
+        return jsonVersion == nestedVersion() ? json : null;
+    }
+
+    @JsonIgnore
+    public WeatherData json(byte[] json) {
+        this.jsonVersion = nestedVersion();
+        this.json = json;
+        this.jsonString = null;
+        return this;
+    }
+
+    /**
+     * Memoized serialized JSON as a String or {@code null}, also if a nested object changed since
+     */
+    @JsonIgnore
+    public String jsonString() {
+        return jsonVersion == nestedVersion() ? jsonString : null;
+    }
+
+    @JsonIgnore
+    public WeatherData jsonString(String jsonString) {
+        this.jsonString = jsonString;
+        return this;
     }
 
     private Coord coord;
@@ -64,6 +146,7 @@ public class WeatherData {
     @JsonProperty
     public void setCoord(Coord coord) {
         this.coord = coord;
+        invalidateJson();
     }
 
     public Coord coord() {
@@ -72,6 +155,7 @@ public class WeatherData {
 
     public WeatherData coord(Coord coord) {
         this.coord = coord;
+        invalidateJson();
         return this;
     }
 
@@ -84,6 +168,7 @@ public class WeatherData {
         if (weather != null && !weather.isEmpty()) {
             this.weather = weather.get(0);
         }
+        invalidateJson();
     }
 
     public Weather weather() {
@@ -92,6 +177,7 @@ public class WeatherData {
 
     public WeatherData weather(Weather weather) {
         this.weather = weather;
+        invalidateJson();
         return this;
     }
 
@@ -105,6 +191,7 @@ public class WeatherData {
 
     public WeatherData temperature(Temperature temperature) {
         this.temperature = temperature;
+        invalidateJson();
         return this;
     }
 
@@ -117,6 +204,7 @@ public class WeatherData {
 
     public WeatherData visibility(Integer visibility) {
         this.visibility = visibility;
+        invalidateJson();
         return this;
     }
 
@@ -129,6 +217,7 @@ public class WeatherData {
 
     public WeatherData wind(Wind wind) {
         this.wind = wind;
+        invalidateJson();
         return this;
     }
 
@@ -142,6 +231,7 @@ public class WeatherData {
 
     public WeatherData dateTime(Long dateTime) {
         this.dateTime = dateTime;
+        invalidateJson();
         return this;
     }
 
@@ -154,6 +244,7 @@ public class WeatherData {
 
     public WeatherData sys(Sys sys) {
         this.sys = sys;
+        invalidateJson();
         return this;
     }
 
@@ -166,6 +257,7 @@ public class WeatherData {
 
     public WeatherData timeZone(Integer timeZone) {
         this.timeZone = timeZone;
+        invalidateJson();
         return this;
     }
 
@@ -178,12 +270,42 @@ public class WeatherData {
 
     public WeatherData name(String name) {
         this.name = name;
+        invalidateJson();
         return this;
     }
 
     public WeatherData() {
     }
 
+    private void invalidateJson() {
+        this.json = null;
+        this.jsonString = null;
+    }
+
+    /**
+     * Sum of the change counts of the nested objects, incremented by their setters. The counts only grow
+     * and a replaced object resets the memoized JSON, so any change of a nested object changes the sum.
+     */
+    private int nestedVersion() {
+        int version = 0;
+        if (coord != null) {
+            version += coord.version;
+        }
+        if (weather != null) {
+            version += weather.version;
+        }
+        if (temperature != null) {
+            version += temperature.version;
+        }
+        if (wind != null) {
+            version += wind.version;
+        }
+        if (sys != null) {
+            version += sys.version;
+        }
+        return version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -215,6 +337,8 @@ public class WeatherData {
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Coord {
 
+        private int version;
+
         @JsonProperty("lat")
         private Double lat;
 
@@ -224,6 +348,7 @@ public class WeatherData {
 
         public Coord lat(Double lat) {
             this.lat = lat;
+            version++;
             return this;
         }
 
@@ -236,6 +361,7 @@ public class WeatherData {
 
         public Coord lon(Double lon) {
             this.lon = lon;
+            version++;
             return this;
         }
 
@@ -268,6 +394,8 @@ public class WeatherData {
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Weather {
 
+        private int version;
+
         @JsonProperty("main")
         private String main;
 
@@ -277,6 +405,7 @@ public class WeatherData {
 
         public Weather main(String main) {
             this.main = main;
+            version++;
             return this;
         }
 
@@ -289,6 +418,7 @@ public class WeatherData {
 
         public Weather description(String description) {
             this.description = description;
+            version++;
             return this;
         }
 
@@ -321,6 +451,8 @@ public class WeatherData {
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Temperature {
 
+        private int version;
+
         @JsonProperty("temp")
         private Double temp;
 
@@ -330,6 +462,7 @@ public class WeatherData {
 
         public Temperature temp(Double temp) {
             this.temp = temp;
+            version++;
             return this;
         }
 
@@ -342,6 +475,7 @@ public class WeatherData {
 
         public Temperature feelsLike(Double feelsLike) {
             this.feelsLike = feelsLike;
+            version++;
             return this;
         }
 
@@ -374,6 +508,8 @@ public class WeatherData {
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Wind {
 
+        private int version;
+
         @JsonProperty("speed")
         private Double speed;
 
@@ -383,6 +519,7 @@ public class WeatherData {
 
         public Wind speed(Double speed) {
             this.speed = speed;
+            version++;
             return this;
         }
 
@@ -414,6 +551,8 @@ public class WeatherData {
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Sys {
 
+        private int version;
+
         @JsonProperty("sunrise")
         private Long sunrise;
 
@@ -423,6 +562,7 @@ public class WeatherData {
 
         public Sys sunrise(Long sunrise) {
             this.sunrise = sunrise;
+            version++;
             return this;
         }
 
@@ -435,6 +575,7 @@ public class WeatherData {
 
         public Sys sunset(Long sunset) {
             this.sunset = sunset;
+            version++;
             return this;
         }
 
@@ -0,0 +1,88 @@
+package com.dimfunky.template;
+
+import com.dimfunky.concurrent.WeatherClock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Read frequency and recency of the cached cities, used by {@link WeatherTemplatePolling}
+ * to choose the cities worth refreshing.
+ * <p>
+ * Reads are counted with a {@link LongAdder} per key. On every update cycle, {@link #decay()}
+ * folds the reads of the cycle into an exponentially decayed score, so recent traffic outweighs
+ * old traffic: a key read {@code n} times per cycle converges to a score of {@code 2n}.
+ * The time of the last read is taken from a {@link WeatherClock}.
+ */
+final class AccessTracker {
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final WeatherClock clock;
+
+    AccessTracker(final WeatherClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Records a read of the key, called on every request
+     */
+    void recordAccess(final String key) {
+        Stats keyStats = stats.get(key);
+        if (keyStats == null) {
+            keyStats = stats.computeIfAbsent(key, k -> new Stats(clock.epochSecond()));
+        }
+        keyStats.reads.increment();
+        keyStats.lastAccessSecond = clock.epochSecond();
+    }
+
+    /**
+     * Returns the stats of the key or {@code null} if the key was never read, without recording anything
+     */
+    Stats peek(final String key) {
+        return stats.get(key);
+    }
+
+    /**
+     * Folds the reads since the last call into the scores, called once per cycle
+     */
+    void decay() {
+        stats.values().forEach(Stats::decay);
+    }
+
+    /**
+     * Forgets the keys not matching the {@code filter}
+     */
+    void retain(final Predicate<String> filter) {
+        stats.keySet().removeIf(filter.negate());
+    }
+
+    int size() {
+        return stats.size();
+    }
+
+    static final class Stats {
+        private final LongAdder reads = new LongAdder();
+        private volatile long lastAccessSecond;
+        private volatile double score;
+
+        private Stats(final long lastAccessSecond) {
+            this.lastAccessSecond = lastAccessSecond;
+        }
+
+        long idleSeconds(final long nowEpochSecond) {
+            return nowEpochSecond - lastAccessSecond;
+        }
+
+        /**
+         * Decayed number of reads per cycle, including the reads of the current cycle
+         */
+        double score() {
+            return score + reads.sum();
+        }
+
+        private void decay() {
+            score = score / 2 + reads.sumThenReset();
+        }
+    }
+}
@@ -1,26 +1,57 @@
 package com.dimfunky.template;
 
-import com.dimfunky.cache.MemoryCache;
+import com.dimfunky.cache.Cache;
+import com.dimfunky.cache.GeoIndex;
+import com.dimfunky.cache.TwoTierCache;
 import com.dimfunky.client.WeatherHttpClient;
+import com.dimfunky.concurrent.SingleFlight;
+import com.dimfunky.concurrent.ThreadSupport;
 import com.dimfunky.environment.WeatherEnvironment;
+import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.exception.WeatherServiceRateLimitException;
+import com.dimfunky.exception.WeatherServiceUnavailableException;
 import com.dimfunky.mapper.WeatherMapper;
+import com.dimfunky.metrics.MetricsSnapshot;
+import com.dimfunky.metrics.WeatherMetrics;
 import com.dimfunky.model.CityCoords;
+import com.dimfunky.model.WeatherBatchResult;
 import com.dimfunky.model.WeatherData;
-import com.dimfunky.validation.InputValidation;
+import com.dimfunky.validation.CityKeys;
 
-import java.time.Instant;
-import java.util.Comparator;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static com.dimfunky.validation.InputValidation.validateCoordinates;
 
 /**
  * Contains methods for retrieving weather data as a {@link WeatherData} object
- * or as a {@link String} in JSON format.
+ * or in JSON format as a {@link String}, bytes or a {@link ByteBuffer}.
+ * <p>
+ * Every method has a non-blocking variant returning a {@link CompletableFuture}.
  * <p>
  * Also allows retrieving information about the current environment using the {@link com.dimfunky.template.WeatherTemplate#getEnvironment()} method.
+ * <p>
+ * Cache lookups, fetches and cache updates are reported to {@link WeatherEnvironment#getMetrics()}.
  */
 public class WeatherTemplate {
     protected final WeatherHttpClient httpClient;
     protected final WeatherEnvironment environment;
+    protected final SingleFlight<WeatherData> fetches = new SingleFlight<>();
+    private final LongAdder rateLimitedStaleCount = new LongAdder();
+    private final LongAdder unavailableStaleCount = new LongAdder();
 
 
     /**
@@ -43,6 +74,7 @@ public class WeatherTemplate {
      * Retrieve weather data for the city with the name {@code cityName} as a {@link String} in JSON format.
      * <p>
      * Calls the {@link com.dimfunky.template.WeatherTemplate#getWeatherInfo(String)} method and maps the result to a String.
+     * The JSON is serialized once per cache entry and reused until the entry is refreshed.
      * <p>
      * Accept parameters:
      * <p>
@@ -59,6 +91,51 @@ public class WeatherTemplate {
         return WeatherMapper.weatherDataToJson(weatherData);
     }
 
+    /**
+     * <pre>
+     * </pre>
+     * Retrieve weather data for the city with the name {@code cityName} as UTF-8 encoded JSON.
+     * <p>
+     * The JSON is serialized once per cache entry and reused until the entry is refreshed,
+     * the method returns a copy of it.
+     * <p>
+     * Accept parameters:
+     * <p>
+     * {@code String cityName} - Name of city witch must contain at least one character and consist only of letters, spaces, and hyphens.
+     * <p>
+     *
+     * @param cityName
+     * @return UTF-8 encoded JSON
+     * @throws com.dimfunky.exception.WeatherServiceException           if errors occur during data retrieval and conversion.
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if cityName not valid.
+     */
+    public byte[] getWeatherInfoJsonBytes(final String cityName) {
+        return WeatherMapper.weatherDataToJsonBytes(getWeatherInfo(cityName)).clone();
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Retrieve weather data for the city with the name {@code cityName} as UTF-8 encoded JSON
+     * in a read-only {@link ByteBuffer}.
+     * <p>
+     * The buffer wraps the JSON memoized for the cache entry without copying, so it can be written
+     * to a channel directly.
+     * <p>
+     * Accept parameters:
+     * <p>
+     * {@code String cityName} - Name of city witch must contain at least one character and consist only of letters, spaces, and hyphens.
+     * <p>
+     *
+     * @param cityName
+     * @return read-only {@link ByteBuffer} with UTF-8 encoded JSON
+     * @throws com.dimfunky.exception.WeatherServiceException           if errors occur during data retrieval and conversion.
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if cityName not valid.
+     */
+    public ByteBuffer getWeatherInfoJsonBuffer(final String cityName) {
+        return ByteBuffer.wrap(WeatherMapper.weatherDataToJsonBytes(getWeatherInfo(cityName))).asReadOnlyBuffer();
+    }
+
     /**
      * <pre>
      * </pre>
@@ -67,17 +144,25 @@ public class WeatherTemplate {
      * Validates the input, converts {@code cityName} to lowercase, and retrieves data from the cache.
      * If the data is missing or outdated, it makes a request to the API of <a href="https://openweathermap.org">OpenWeatherMap</a>,
      * fetches the data, updates the cache, and returns the retrieved data as an object {@link WeatherData}.
-     * The relevance of the data is checked within the method {@link WeatherData#isExpired()}.
+     * The relevance of the data is checked within the method {@link WeatherTemplate#isExpired(WeatherData)}.
+     * <p>
+     * Concurrent requests for the same missing or outdated city are coalesced: only one thread
+     * fetches the data, other threads wait for its result (or its exception).
+     * <p>
+     * If the request exceeds the rate limit and {@link WeatherEnvironment#isServeStaleOnRateLimit()},
+     * or the API is suspended by {@link WeatherEnvironment#getCircuitBreaker()},
+     * outdated cached data is returned instead of failing.
      * <p>
      * When retrieving weather data from the 'Data API', the cache is checked for an existing record of the city.
      * If found, the coordinates are taken from the cached entry to avoid an additional 'Geocode API' request.
-     * If no data for the city exists in the cache, the coordinates are requested from the 'Geocode API'.
-     * For the retrieved data, a timestamp of the update is set using {@link Instant#now()}.
+     * If no data for the city exists in the cache, the coordinates are taken from
+     * {@link WeatherEnvironment#getGeocodeCache()} or, if missing there, requested from the 'Geocode API'.
+     * For the retrieved data, a timestamp of the update is set using {@link WeatherEnvironment#getClock()}.
      * <p>
-     * On the cache updating, checks the presence of an existing record and whether the cache limit is exceeded.
-     * If no record exists and the cache limit is exceeded, the oldest entry
-     * (based on the {@link WeatherData#fetchedAt()}) is removed.
-     * In all other cases, the record is either added or updates the existing one.
+     * On the cache updating, the record is either added or updates the existing one.
+     * If the cache limit is exceeded, the cache removes an entry chosen by
+     * {@link WeatherEnvironment#getEvictionPolicy()} (by default, the oldest entry
+     * based on the {@link WeatherData#fetchedAt()}).
      * <p>
      * Accept parameters:
      * <p>
@@ -90,17 +175,529 @@ public class WeatherTemplate {
      * @throws com.dimfunky.exception.WeatherServiceValidationException if cityName not valid.
      */
     public WeatherData getWeatherInfo(final String cityName) {
-        InputValidation.validateCityName(cityName);
+        long startNanos = System.nanoTime();
+        try {
+            var cityKey = CityKeys.of(cityName);
+            onAccess(cityKey);
+            var cachedData = getDataFromCache(cityKey);
 
-        var cityKey = cityName.toLowerCase();
+            if (cachedData == null || isExpired(cachedData)) {
+                if (cachedData != null && serveStale(cityKey, cachedData)) {
+                    metrics().increment(WeatherMetrics.Counter.CACHE_STALE_HIT);
+                    return cachedData;
+                }
+                metrics().increment(WeatherMetrics.Counter.CACHE_MISS);
+                return fetches.execute(cityKey, () -> loadData(cityKey));
+            }
+            metrics().increment(WeatherMetrics.Counter.CACHE_HIT);
+            return cachedData;
+        } finally {
+            metrics().record(WeatherMetrics.Timer.GET_WEATHER_INFO, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Retrieve weather data at the location with the coordinates {@code lat} and {@code lon}
+     * as a {@link WeatherData} object.
+     * <p>
+     * Returns the closest fresh data within {@link WeatherEnvironment#getGeoIndex()} radius of the location,
+     * fetched either by a previous coordinate request or for a city. Otherwise, requests the 'Data API'
+     * with the coordinates directly (without the 'Geocode API') and indexes the retrieved data.
+     * The name of the data is the name of the location returned by the API.
+     * <p>
+     * Concurrent requests for the same coordinates are coalesced. The data is not put to the city cache
+     * and is not refreshed by the polling.
+     * <p>
+     * Accept parameters:
+     * <p>
+     * {@code double lat} - Latitude from -90 to 90.
+     * <p>
+     * {@code double lon} - Longitude from -180 to 180.
+     *
+     * @param lat
+     * @param lon
+     * @return {@link WeatherData}
+     * @throws com.dimfunky.exception.WeatherServiceException           if errors occur during data retrieval and conversion.
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if the coordinates are out of range.
+     */
+    public WeatherData getWeatherInfo(final double lat, final double lon) {
+        long startNanos = System.nanoTime();
+        try {
+            validateCoordinates(lat, lon);
+            var nearbyData = environment.getGeoIndex().findNearest(lat, lon);
+            if (nearbyData != null) {
+                metrics().increment(WeatherMetrics.Counter.CACHE_HIT);
+                return nearbyData;
+            }
+            metrics().increment(WeatherMetrics.Counter.CACHE_MISS);
+            return fetches.execute(locationKey(lat, lon), () -> loadLocation(lat, lon));
+        } finally {
+            metrics().record(WeatherMetrics.Timer.GET_WEATHER_INFO, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link com.dimfunky.template.WeatherTemplate#getWeatherInfo(double, double)}.
+     * <p>
+     * The response is mapped on the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param lat
+     * @param lon
+     * @return {@link CompletableFuture} with {@link WeatherData}
+     */
+    public CompletableFuture<WeatherData> getWeatherInfoAsync(final double lat, final double lon) {
+        return getWeatherInfoAsync(lat, lon, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link com.dimfunky.template.WeatherTemplate#getWeatherInfo(double, double)}.
+     *
+     * @param lat
+     * @param lon
+     * @param executor executor for mapping the response and running dependent stages
+     * @return {@link CompletableFuture} with {@link WeatherData}
+     */
+    public CompletableFuture<WeatherData> getWeatherInfoAsync(final double lat, final double lon,
+                                                              final Executor executor) {
+        try {
+            validateCoordinates(lat, lon);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long startNanos = System.nanoTime();
+        var nearbyData = environment.getGeoIndex().findNearest(lat, lon);
+        if (nearbyData != null) {
+            metrics().increment(WeatherMetrics.Counter.CACHE_HIT);
+            metrics().record(WeatherMetrics.Timer.GET_WEATHER_INFO, System.nanoTime() - startNanos);
+            return CompletableFuture.completedFuture(nearbyData);
+        }
+        metrics().increment(WeatherMetrics.Counter.CACHE_MISS);
+        return fetches.executeAsync(locationKey(lat, lon), () -> loadLocationAsync(lat, lon, executor))
+                .whenComplete((data, ex) -> metrics().record(WeatherMetrics.Timer.GET_WEATHER_INFO,
+                        System.nanoTime() - startNanos));
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link com.dimfunky.template.WeatherTemplate#getWeatherInfoJsonString(String)}.
+     * <p>
+     * The response is mapped on the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param cityName
+     * @return {@link CompletableFuture} with {@link String}
+     */
+    public CompletableFuture<String> getWeatherInfoJsonStringAsync(final String cityName) {
+        return getWeatherInfoJsonStringAsync(cityName, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link com.dimfunky.template.WeatherTemplate#getWeatherInfoJsonString(String)}.
+     *
+     * @param cityName
+     * @param executor executor for mapping the responses and running dependent stages
+     * @return {@link CompletableFuture} with {@link String}
+     */
+    public CompletableFuture<String> getWeatherInfoJsonStringAsync(final String cityName, final Executor executor) {
+        return getWeatherInfoAsync(cityName, executor)
+                .thenApplyAsync(WeatherMapper::weatherDataToJson, executor);
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link com.dimfunky.template.WeatherTemplate#getWeatherInfo(String)}.
+     * <p>
+     * The response is mapped on the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param cityName
+     * @return {@link CompletableFuture} with {@link WeatherData}
+     */
+    public CompletableFuture<WeatherData> getWeatherInfoAsync(final String cityName) {
+        return getWeatherInfoAsync(cityName, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Non-blocking variant of {@link com.dimfunky.template.WeatherTemplate#getWeatherInfo(String)}.
+     * <p>
+     * Returns a completed future for fresh cached data. Otherwise, sends the 'Geocode API' request (if needed)
+     * and the 'Data API' request with {@link java.net.http.HttpClient#sendAsync}, composing them
+     * without blocking the calling thread. Concurrent requests for the same city share one fetch
+     * with the blocking variant.
+     * <p>
+     * Validation errors and API errors complete the future exceptionally with
+     * {@link com.dimfunky.exception.WeatherServiceValidationException} and
+     * {@link com.dimfunky.exception.WeatherServiceException}.
+     *
+     * @param cityName
+     * @param executor executor for mapping the responses and running dependent stages
+     * @return {@link CompletableFuture} with {@link WeatherData}
+     */
+    public CompletableFuture<WeatherData> getWeatherInfoAsync(final String cityName, final Executor executor) {
+        String cityKey;
+        try {
+            cityKey = CityKeys.of(cityName);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long startNanos = System.nanoTime();
+        onAccess(cityKey);
         var cachedData = getDataFromCache(cityKey);
 
-        if (cachedData == null || cachedData.isExpired()) {
+        if (cachedData == null || isExpired(cachedData)) {
+            if (cachedData != null && serveStale(cityKey, cachedData)) {
+                metrics().increment(WeatherMetrics.Counter.CACHE_STALE_HIT);
+                metrics().record(WeatherMetrics.Timer.GET_WEATHER_INFO, System.nanoTime() - startNanos);
+                return CompletableFuture.completedFuture(cachedData);
+            }
+            metrics().increment(WeatherMetrics.Counter.CACHE_MISS);
+            return fetches.executeAsync(cityKey, () -> loadDataAsync(cityKey, executor))
+                    .whenComplete((data, ex) -> metrics().record(WeatherMetrics.Timer.GET_WEATHER_INFO,
+                            System.nanoTime() - startNanos));
+        }
+        metrics().increment(WeatherMetrics.Counter.CACHE_HIT);
+        metrics().record(WeatherMetrics.Timer.GET_WEATHER_INFO, System.nanoTime() - startNanos);
+        return CompletableFuture.completedFuture(cachedData);
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Retrieve weather data for several cities at once.
+     * <p>
+     * Names are validated and converted to lowercase, so duplicates and case variants are fetched only once.
+     * Fresh cached data is taken right away, missing and outdated cities are fetched in parallel
+     * with the non-blocking API. No more than {@link WeatherEnvironment#getBatchConcurrency()} fetches
+     * run at the same time: the first ones start right away and each completed fetch starts the next one,
+     * so the calling thread only waits for the results. The responses are mapped on the {@link ForkJoinPool#commonPool()}.
+     * If {@link WeatherEnvironment#isVirtualThreads()}, each city is fetched with the blocking API
+     * on its own virtual thread instead.
+     * <p>
+     * The method blocks until all fetches are completed and never throws on a single city error.
+     * Such errors are returned in {@link WeatherBatchResult#errors()}.
+     * <p>
+     * Accept parameters:
+     * <p>
+     * {@code Collection<String> cityNames} - Names of cities, see {@link WeatherTemplate#getWeatherInfo(String)}.
+     *
+     * @param cityNames
+     * @return {@link WeatherBatchResult}
+     * @throws WeatherServiceException if the thread is interrupted while waiting, the fetches not started yet
+     *                                 are skipped
+     */
+    public WeatherBatchResult getWeatherInfoAll(final Collection<String> cityNames) {
+        Map<String, WeatherData> results = new LinkedHashMap<>();
+        Map<String, RuntimeException> errors = new LinkedHashMap<>();
+        Map<String, CompletableFuture<WeatherData>> pending = new LinkedHashMap<>();
+        Queue<Map.Entry<String, CompletableFuture<WeatherData>>> queue = new ConcurrentLinkedQueue<>();
+        Executor executor = ForkJoinPool.commonPool();
+
+        List<String> cityKeys = new ArrayList<>();
+        for (String cityName : cityNames) {
+            try {
+                cityKeys.add(CityKeys.of(cityName));
+            } catch (RuntimeException e) {
+                errors.put(cityName, e);
+            }
+        }
+
+        for (String cityKey : cityKeys) {
+            if (results.containsKey(cityKey) || pending.containsKey(cityKey)) {
+                continue;
+            }
+            onAccess(cityKey);
+            var cachedData = getDataFromCache(cityKey);
+            if (cachedData != null && !isExpired(cachedData)) {
+                metrics().increment(WeatherMetrics.Counter.CACHE_HIT);
+                results.put(cityKey, cachedData);
+                continue;
+            }
+            if (cachedData != null && serveStale(cityKey, cachedData)) {
+                metrics().increment(WeatherMetrics.Counter.CACHE_STALE_HIT);
+                results.put(cityKey, cachedData);
+                continue;
+            }
+            metrics().increment(WeatherMetrics.Counter.CACHE_MISS);
+            var future = new CompletableFuture<WeatherData>();
+            pending.put(cityKey, future);
+            queue.add(Map.entry(cityKey, future));
+        }
+
+        int lanes = Math.min(environment.getBatchConcurrency(), queue.size());
+        for (int i = 0; i < lanes; i++) {
+            fetchNext(queue, executor);
+        }
+        try {
+            CompletableFuture.allOf(pending.values().toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            queue.clear();
+            Thread.currentThread().interrupt();
+            throw new WeatherServiceException("Interrupted while waiting for the batch", e);
+        } catch (ExecutionException e) {
+            // the errors of single cities are collected below
+        }
+
+        pending.forEach((cityKey, future) -> {
+            try {
+                results.put(cityKey, future.join());
+            } catch (CompletionException e) {
+                errors.put(cityKey, e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e);
+            }
+        });
+        return new WeatherBatchResult(results, errors);
+    }
+
+    /**
+     * Fetches the queued cities one after another until the queue is empty. A fetch completed right away
+     * is followed in the loop, a pending one starts the next fetch on its completion.
+     */
+    private void fetchNext(final Queue<Map.Entry<String, CompletableFuture<WeatherData>>> queue,
+                           final Executor executor) {
+        Map.Entry<String, CompletableFuture<WeatherData>> next;
+        while ((next = queue.poll()) != null) {
+            String cityKey = next.getKey();
+            CompletableFuture<WeatherData> result = next.getValue();
+            var fetch = environment.isVirtualThreads()
+                    ? CompletableFuture.supplyAsync(() -> fetches.execute(cityKey, () -> loadData(cityKey)),
+                            ThreadSupport.virtualThreadExecutor())
+                    : fetches.executeAsync(cityKey, () -> loadDataAsync(cityKey, executor));
+            if (!fetch.isDone()) {
+                fetch.whenComplete((data, ex) -> {
+                    complete(result, data, ex);
+                    fetchNext(queue, executor);
+                });
+                return;
+            }
+            fetch.whenComplete((data, ex) -> complete(result, data, ex));
+        }
+    }
+
+    private static void complete(final CompletableFuture<WeatherData> result, final WeatherData data,
+                                 final Throwable ex) {
+        if (ex != null) {
+            result.completeExceptionally(ex);
+        } else {
+            result.complete(data);
+        }
+    }
+
+    /**
+     * Returns the counters and latencies aggregated by {@link WeatherEnvironment#getMetrics()}
+     *
+     * @return {@link MetricsSnapshot}
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        return metrics().snapshot();
+    }
+
+    /**
+     * Number of API fetches started by {@link WeatherTemplate#getWeatherInfo(String)} calls
+     */
+    public long getOriginatedFetchCount() {
+        return fetches.getOriginatedCount();
+    }
+
+    /**
+     * Number of {@link WeatherTemplate#getWeatherInfo(String)} calls served by waiting for a fetch
+     * already started by another thread
+     */
+    public long getCoalescedFetchCount() {
+        return fetches.getCoalescedCount();
+    }
+
+    /**
+     * Number of requests answered with outdated data because of the rate limit
+     */
+    public long getRateLimitedStaleCount() {
+        return rateLimitedStaleCount.sum();
+    }
+
+    /**
+     * Number of requests answered with outdated data because the API was suspended by the circuit breaker
+     */
+    public long getUnavailableStaleCount() {
+        return unavailableStaleCount.sum();
+    }
+
+    /**
+     * Re-checks the cache, because another flight for the same key may have finished
+     * between the caller's cache lookup and the start of this flight.
+     */
+    private WeatherData loadData(final String cityKey) {
+        var cachedData = getDataFromCache(cityKey);
+        if (cachedData != null && !isExpired(cachedData)) {
+            return cachedData;
+        }
+        try {
+            return refreshData(cityKey, cachedData);
+        } catch (WeatherServiceRateLimitException | WeatherServiceUnavailableException e) {
+            return staleOnError(cachedData, e);
+        }
+    }
+
+    /**
+     * Re-checks the index, because a concurrent request for nearby coordinates may have finished meanwhile
+     */
+    private WeatherData loadLocation(final double lat, final double lon) {
+        var geoIndex = environment.getGeoIndex();
+        var nearbyData = geoIndex.findNearest(lat, lon);
+        if (nearbyData != null) {
+            return nearbyData;
+        }
+        long startNanos = System.nanoTime();
+        WeatherData fetchedData;
+        try {
+            fetchedData = httpClient.getWeatherData(lat, lon, environment.getApiKey())
+                    .fetchedAt(environment.getClock().epochSecond());
+        } catch (RuntimeException e) {
+            metrics().increment(WeatherMetrics.Counter.FETCH_ERROR);
+            throw e;
+        } finally {
+            metrics().record(WeatherMetrics.Timer.FETCH_DATA, System.nanoTime() - startNanos);
+        }
+        geoIndex.put(fetchedData);
+        return fetchedData;
+    }
+
+    private CompletableFuture<WeatherData> loadLocationAsync(final double lat, final double lon,
+                                                             final Executor executor) {
+        var geoIndex = environment.getGeoIndex();
+        var nearbyData = geoIndex.findNearest(lat, lon);
+        if (nearbyData != null) {
+            return CompletableFuture.completedFuture(nearbyData);
+        }
+        long startNanos = System.nanoTime();
+        return httpClient.getWeatherDataAsync(lat, lon, environment.getApiKey(), executor)
+                .thenApply(fetchedData -> {
+                    fetchedData.fetchedAt(environment.getClock().epochSecond());
+                    geoIndex.put(fetchedData);
+                    return fetchedData;
+                })
+                .whenComplete((data, ex) -> {
+                    if (ex != null) {
+                        metrics().increment(WeatherMetrics.Counter.FETCH_ERROR);
+                    }
+                    metrics().record(WeatherMetrics.Timer.FETCH_DATA, System.nanoTime() - startNanos);
+                });
+    }
+
+    /**
+     * Key of the coordinate requests, which never equals a city key. Only the requests for the same location
+     * (rounded as in {@link GeoIndex}) are coalesced, so every caller gets data within the radius of its location.
+     */
+    private static String locationKey(final double lat, final double lon) {
+        return "point:" + GeoIndex.pointOf(lat, lon);
+    }
+
+    protected CompletableFuture<WeatherData> loadDataAsync(final String cityKey, final Executor executor) {
+        var cachedData = getDataFromCache(cityKey);
+        if (cachedData != null && !isExpired(cachedData)) {
+            return CompletableFuture.completedFuture(cachedData);
+        }
+        return refreshDataAsync(cityKey, cachedData, executor)
+                .handle((data, ex) -> ex == null ? data : staleOnError(cachedData, ex));
+    }
+
+    /**
+     * Returns {@code cachedData} if the fetch exceeded the rate limit and outdated data may be served,
+     * or the API is suspended, otherwise rethrows the error
+     */
+    private WeatherData staleOnError(final WeatherData cachedData, final Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cachedData != null) {
+            if (cause instanceof WeatherServiceRateLimitException && environment.isServeStaleOnRateLimit()) {
+                rateLimitedStaleCount.increment();
+                return cachedData;
+            }
+            if (cause instanceof WeatherServiceUnavailableException) {
+                unavailableStaleCount.increment();
+                return cachedData;
+            }
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new CompletionException(cause);
+    }
+
+    /**
+     * Fetches the data and puts it to the cache.
+     * <p>
+     * If the cache is a {@link TwoTierCache}, only the instance holding the lease of the city fetches it,
+     * other instances wait for the data in the remote tier, see {@link TwoTierCache#load(String, WeatherData, Supplier)}.
+     */
+    protected WeatherData refreshData(final String cityKey, final WeatherData cachedData) {
+        Supplier<WeatherData> loader = () -> {
             var fetchedData = fetchData(cityKey, cachedData);
             updateCache(fetchedData, environment.getCache());
             return fetchedData;
+        };
+        var cache = environment.getCache();
+        if (cache instanceof TwoTierCache) {
+            return ((TwoTierCache) cache).load(cityKey, cachedData, loader);
+        }
+        return loader.get();
+    }
+
+    protected CompletableFuture<WeatherData> refreshDataAsync(final String cityKey, final WeatherData cachedData,
+                                                              final Executor executor) {
+        Supplier<CompletableFuture<WeatherData>> loader = () -> fetchDataAsync(cityKey, cachedData, executor)
+                .thenApply(fetchedData -> {
+                    updateCache(fetchedData, environment.getCache());
+                    return fetchedData;
+                });
+        var cache = environment.getCache();
+        if (cache instanceof TwoTierCache) {
+            return ((TwoTierCache) cache).loadAsync(cityKey, cachedData, loader);
         }
-        return cachedData;
+        return loader.get();
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Decides whether outdated {@code cachedData} can be returned without waiting for a fetch.
+     * <p>
+     * Returns {@code false}, so outdated data is always fetched. Subclasses may return {@code true}
+     * and refresh the data in the background.
+     *
+     * @param cityKey    lowercase city name
+     * @param cachedData outdated cached data
+     * @return {@code true} if {@code cachedData} should be returned to the caller
+     */
+    protected boolean serveStale(final String cityKey, final WeatherData cachedData) {
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if the data was updated {@link WeatherEnvironment#getTtlSeconds()} or more seconds ago
+     * by {@link WeatherEnvironment#getClock()}
+     */
+    protected boolean isExpired(final WeatherData data) {
+        return data.isExpired(environment.getTtlSeconds(), environment.getClock().epochSecond());
+    }
+
+    /**
+     * Called once per request for the city, before the cache lookup. Does nothing,
+     * subclasses may track the reads.
+     *
+     * @param cityKey lowercase city name
+     */
+    protected void onAccess(final String cityKey) {
     }
 
     protected WeatherData getDataFromCache(final String cityName) {
@@ -108,29 +705,89 @@ public class WeatherTemplate {
     }
 
     protected WeatherData fetchData(final String cityName, final WeatherData cachedData) {
+        long startNanos = System.nanoTime();
+        try {
+            return fetchCity(cityName, cachedData);
+        } catch (RuntimeException e) {
+            metrics().increment(WeatherMetrics.Counter.FETCH_ERROR);
+            throw e;
+        } finally {
+            metrics().record(WeatherMetrics.Timer.FETCH_DATA, System.nanoTime() - startNanos);
+        }
+    }
+
+    private WeatherData fetchCity(final String cityName, final WeatherData cachedData) {
         var apiKey = environment.getApiKey();
         CityCoords cityCoords;
-        if (cachedData == null) {
-            cityCoords = httpClient.getCoordsByCityName(cityName, apiKey);
-        } else {
+        if (cachedData != null) {
             cityCoords = WeatherMapper.infoToCoords(cachedData);
+        } else {
+            cityCoords = environment.getGeocodeCache().get(cityName);
+            if (cityCoords == null) {
+                cityCoords = httpClient.getCoordsByCityName(cityName, apiKey);
+                environment.getGeocodeCache().put(cityName, cityCoords);
+            }
         }
         return httpClient.getWeatherData(cityCoords, apiKey)
-                .fetchedAt(Instant.now().getEpochSecond());
+                .fetchedAt(environment.getClock().epochSecond());
     }
 
-    protected void updateCache(WeatherData value, MemoryCache<WeatherData> cache) {
-        var cityKey = value.name().toLowerCase();
-
-        if (!cache.contains(cityKey) && cache.size() >= environment.getCacheLimit()) {
-            Map<String, WeatherData> store = cache.getAll();
+    protected CompletableFuture<WeatherData> fetchDataAsync(final String cityName, final WeatherData cachedData,
+                                                            final Executor executor) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<WeatherData> future;
+        try {
+            future = fetchCityAsync(cityName, cachedData, executor);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((data, ex) -> {
+            if (ex != null) {
+                metrics().increment(WeatherMetrics.Counter.FETCH_ERROR);
+            }
+            metrics().record(WeatherMetrics.Timer.FETCH_DATA, System.nanoTime() - startNanos);
+        });
+    }
 
-            store.entrySet().stream()
-                    .min(Comparator.comparingLong(entry -> entry.getValue().fetchedAt()))
-                    .map(Map.Entry::getKey)
-                    .ifPresent(store::remove);
+    private CompletableFuture<WeatherData> fetchCityAsync(final String cityName, final WeatherData cachedData,
+                                                          final Executor executor) {
+        var apiKey = environment.getApiKey();
+        CompletableFuture<CityCoords> cityCoords;
+        CityCoords knownCoords = cachedData != null
+                ? WeatherMapper.infoToCoords(cachedData)
+                : environment.getGeocodeCache().get(cityName);
+        if (knownCoords != null) {
+            cityCoords = CompletableFuture.completedFuture(knownCoords);
+        } else {
+            cityCoords = httpClient.getCoordsByCityNameAsync(cityName, apiKey, executor)
+                    .thenApply(coords -> {
+                        environment.getGeocodeCache().put(cityName, coords);
+                        return coords;
+                    });
         }
+        return cityCoords
+                .thenCompose(coords -> httpClient.getWeatherDataAsync(coords, apiKey, executor))
+                .thenApply(weatherData -> weatherData.fetchedAt(environment.getClock().epochSecond()));
+    }
+
+    /**
+     * Puts the fetched data to the cache, unless the cache already holds data fetched later
+     * (for example, by a concurrent refresh that finished first).
+     */
+    protected void updateCache(WeatherData value, Cache<WeatherData> cache) {
+        long startNanos = System.nanoTime();
+        var cityKey = CityKeys.normalize(value.name());
+        cache.compute(cityKey, (key, cachedData) -> isNewer(cachedData, value) ? cachedData : value);
+        environment.getGeoIndex().put(value);
+        metrics().record(WeatherMetrics.Timer.UPDATE_CACHE, System.nanoTime() - startNanos);
+    }
+
+    protected WeatherMetrics metrics() {
+        return environment.getMetrics();
+    }
 
-        cache.put(cityKey, value);
+    private static boolean isNewer(final WeatherData cachedData, final WeatherData value) {
+        return cachedData != null && cachedData.fetchedAt() != null && value.fetchedAt() != null
+                && cachedData.fetchedAt() > value.fetchedAt();
     }
 }
\ No newline at end of file
@@ -1,19 +1,55 @@
 package com.dimfunky.template;
 
 import com.dimfunky.client.WeatherHttpClient;
+import com.dimfunky.concurrent.RatePacer;
+import com.dimfunky.concurrent.ThreadSupport;
 import com.dimfunky.environment.WeatherEnvironment;
+import com.dimfunky.metrics.WeatherMetrics;
 import com.dimfunky.model.WeatherData;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A subclass of the {@link WeatherTemplate} that additionally implements the {@link Polling} interface,
  * which contains methods for starting and stopping the data update scheduler.
+ * <p>
+ * Each update cycle refreshes the cached cities in parallel on a pool of
+ * {@link WeatherEnvironment#getPollingThreads()} workers (or on virtual threads, see
+ * {@link WeatherEnvironment#isVirtualThreads()}), keeping the requests within
+ * {@link WeatherEnvironment#getPollingRequestsPerMinute()}. A failed refresh of one city
+ * is counted and does not affect other cities or the next cycles.
+ * <p>
+ * A cycle refreshes only the cities whose data expires before the next cycle, by {@link WeatherEnvironment#getClock()}.
+ * Cities are refreshed by their read traffic. Cities not read for {@link WeatherEnvironment#getPollingIdleSeconds()}
+ * are skipped and lapse. Others are refreshed ahead of their expiry, the most read first. When
+ * {@link WeatherEnvironment#getPollingRequestsPerMinute()} does not allow refreshing all of them within a cycle,
+ * the least read cities are skipped, so the budget goes to the cities that serve traffic.
+ * <p>
+ * With a {@link com.dimfunky.cache.TwoTierCache}, each city is fetched by one of the instances
+ * sharing the remote cache, other instances take the data from it.
  */
 public class WeatherTemplatePolling extends WeatherTemplate implements Polling {
     private ScheduledExecutorService scheduler;
+    private ExecutorService workers;
+    private RatePacer ratePacer;
+
+    private final AtomicLong cycleCount = new AtomicLong();
+    private final LongAdder refreshFailureCount = new LongAdder();
+    private final LongAdder lapsedRefreshCount = new LongAdder();
+    private final LongAdder deferredRefreshCount = new LongAdder();
+    private final AccessTracker accessTracker = new AccessTracker(() -> environment.getClock().epochSecond());
+    private volatile long lastCycleDurationMillis;
+    private volatile long lastCycleLagMillis;
+    private long nextCycleNanos;
 
 
     public WeatherTemplatePolling(WeatherHttpClient httpClient, WeatherEnvironment weatherEnvironment) {
@@ -24,37 +60,205 @@ public class WeatherTemplatePolling extends WeatherTemplate implements Polling {
         return scheduler;
     }
 
+    /**
+     * Number of finished update cycles
+     */
+    public long getCycleCount() {
+        return cycleCount.get();
+    }
+
+    /**
+     * Number of failed city refreshes over all cycles
+     */
+    public long getRefreshFailureCount() {
+        return refreshFailureCount.sum();
+    }
+
+    /**
+     * Number of refreshes skipped because the city was not read for {@link WeatherEnvironment#getPollingIdleSeconds()}
+     */
+    public long getLapsedRefreshCount() {
+        return lapsedRefreshCount.sum();
+    }
+
+    /**
+     * Number of refreshes of less read cities skipped because of {@link WeatherEnvironment#getPollingRequestsPerMinute()}
+     */
+    public long getDeferredRefreshCount() {
+        return deferredRefreshCount.sum();
+    }
+
+    /**
+     * Duration of the last finished update cycle in milliseconds
+     */
+    public long getLastCycleDurationMillis() {
+        return lastCycleDurationMillis;
+    }
+
+    /**
+     * Delay of the last update cycle start relative to its schedule in milliseconds.
+     * Grows when cycles take longer than {@link WeatherEnvironment#getCacheUpdatePeriodSeconds()}.
+     */
+    public long getLastCycleLagMillis() {
+        return lastCycleLagMillis;
+    }
+
     /**
      * Methods for starting {@link com.dimfunky.template.WeatherTemplatePolling#scheduler}.
      * <p>
-     * Initialize the {@link com.dimfunky.template.WeatherTemplatePolling#scheduler}.
-     * Creates a thread to start updates data in cache at a specified interval.
-     * For each entry in the cache, it makes a request to the API of
-     * <a href="https://openweathermap.org">OpenWeatherMap</a>.
-     * Updates the data for each entry in the cache.
+     * Initialize the {@link com.dimfunky.template.WeatherTemplatePolling#scheduler} and the pool of
+     * {@link WeatherEnvironment#getPollingThreads()} workers.
+     * The scheduler starts update cycles at a specified interval.
+     * For each entry in the cache, a worker makes a request to the API of
+     * <a href="https://openweathermap.org">OpenWeatherMap</a> and updates the entry.
+     * Requests are paced to stay within {@link WeatherEnvironment#getPollingRequestsPerMinute()}.
      * Starts scheduler without delays. The update interval is taken from the
      * {@link WeatherEnvironment#getCacheUpdatePeriodSeconds()}.
      */
     @Override
     public void startPolling() {
         scheduler = Executors.newScheduledThreadPool(1);
-        var cache = environment.getCache();
-        scheduler.scheduleAtFixedRate(() -> {
-            for (WeatherData data : cache.getAll().values()) {
-                var fetchedData = fetchData(data.name(), data);
-                updateCache(fetchedData, cache);
-            }
-        }, 0, environment.getCacheUpdatePeriodSeconds(), TimeUnit.SECONDS);
+        workers = ThreadSupport.newWorkerPool("weather-polling", environment.getPollingThreads(),
+                environment.isVirtualThreads());
+        ratePacer = new RatePacer(environment.getPollingRequestsPerMinute());
+        nextCycleNanos = System.nanoTime();
+        scheduler.scheduleAtFixedRate(this::runCycle, 0, environment.getCacheUpdatePeriodSeconds(), TimeUnit.SECONDS);
     }
 
 
     /**
-     * Stops the {@link com.dimfunky.template.WeatherTemplatePolling#scheduler} if it has been initialized
+     * Stops the {@link com.dimfunky.template.WeatherTemplatePolling#scheduler} and the workers
+     * if they have been initialized. A running update cycle is interrupted, its pending refreshes are cancelled.
      */
     @Override
     public void stopPolling() {
         if (scheduler != null) {
-            scheduler.shutdown();
+            scheduler.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    @Override
+    protected void onAccess(final String cityKey) {
+        accessTracker.recordAccess(cityKey);
+    }
+
+    /**
+     * Refreshes the cached cities chosen by {@link #selectRefreshes()} and waits for the refreshes to finish.
+     * Never throws, so the scheduled task is not cancelled. Called by the scheduler, tests call it directly
+     * after {@link #startPolling()} to run a cycle at a chosen time of the clock.
+     */
+    void runCycle() {
+        long startNanos = System.nanoTime();
+        lastCycleLagMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(startNanos - nextCycleNanos));
+        nextCycleNanos += TimeUnit.SECONDS.toNanos(environment.getCacheUpdatePeriodSeconds());
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Refresh refresh : selectRefreshes()) {
+                tasks.add(() -> refresh(refresh.cityKey, refresh.data));
+            }
+            workers.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            refreshFailureCount.increment();
+            metrics().increment(WeatherMetrics.Counter.POLL_REFRESH_ERROR);
+        } finally {
+            accessTracker.decay();
+            accessTracker.retain(environment.getCache()::contains);
+            long durationNanos = System.nanoTime() - startNanos;
+            lastCycleDurationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            metrics().record(WeatherMetrics.Timer.POLL_CYCLE, durationNanos);
+            cycleCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the cached cities expiring before the next cycle and read within the idle period,
+     * the most read first, no more than the requests budget of a cycle. Cities never read are idle.
+     */
+    private List<Refresh> selectRefreshes() {
+        long now = environment.getClock().epochSecond();
+        long idleSeconds = environment.getPollingIdleSeconds();
+        List<Refresh> refreshes = new ArrayList<>();
+        environment.getCache().forEach((cityKey, data) -> {
+            if (!isDue(data, now)) {
+                return;
+            }
+            var stats = accessTracker.peek(cityKey);
+            if (idleSeconds > 0 && (stats == null || stats.idleSeconds(now) > idleSeconds)) {
+                lapsedRefreshCount.increment();
+                metrics().increment(WeatherMetrics.Counter.POLL_REFRESH_SKIPPED);
+                return;
+            }
+            refreshes.add(new Refresh(cityKey, data, stats == null ? 0 : stats.score()));
+        });
+        refreshes.sort(Comparator.comparingDouble((Refresh refresh) -> refresh.score).reversed());
+
+        long budget = cycleBudget();
+        if (refreshes.size() > budget) {
+            int deferred = refreshes.size() - (int) budget;
+            deferredRefreshCount.add(deferred);
+            for (int i = 0; i < deferred; i++) {
+                metrics().increment(WeatherMetrics.Counter.POLL_REFRESH_SKIPPED);
+            }
+            return refreshes.subList(0, (int) budget);
+        }
+        return refreshes;
+    }
+
+    /**
+     * Number of refreshes allowed by {@link WeatherEnvironment#getPollingRequestsPerMinute()} within a cycle
+     */
+    private long cycleBudget() {
+        int requestsPerMinute = environment.getPollingRequestsPerMinute();
+        if (requestsPerMinute == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(1, requestsPerMinute * environment.getCacheUpdatePeriodSeconds() / 60);
+    }
+
+    /**
+     * Returns {@code true} if the data expires before the next cycle, or has no fetch time
+     */
+    private boolean isDue(final WeatherData data, final long now) {
+        if (data.fetchedAt() == null) {
+            return true;
+        }
+        return data.fetchedAt() + environment.getTtlSeconds() - now <= environment.getCacheUpdatePeriodSeconds();
+    }
+
+    /**
+     * Refreshes the city, unless it was refreshed since the selection or has left the cache
+     */
+    private Void refresh(final String cityKey, final WeatherData data) throws InterruptedException {
+        ratePacer.acquire();
+        try {
+            fetches.execute(cityKey, () -> {
+                var cachedData = getDataFromCache(cityKey);
+                if (cachedData == null || !isDue(cachedData, environment.getClock().epochSecond())) {
+                    return cachedData != null ? cachedData : data;
+                }
+                return refreshData(cityKey, cachedData);
+            });
+        } catch (RuntimeException e) {
+            refreshFailureCount.increment();
+            metrics().increment(WeatherMetrics.Counter.POLL_REFRESH_ERROR);
+        }
+        return null;
+    }
+
+    private static final class Refresh {
+        private final String cityKey;
+        private final WeatherData data;
+        private final double score;
+
+        private Refresh(final String cityKey, final WeatherData data, final double score) {
+            this.cityKey = cityKey;
+            this.data = data;
+            this.score = score;
         }
     }
 }
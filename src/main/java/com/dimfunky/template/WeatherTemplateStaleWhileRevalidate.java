@@ -0,0 +1,55 @@
+package com.dimfunky.template;
+
+import com.dimfunky.client.WeatherHttpClient;
+import com.dimfunky.environment.WeatherEnvironment;
+import com.dimfunky.model.WeatherData;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A subclass of the {@link WeatherTemplate} that returns outdated data without waiting for the API.
+ * <p>
+ * Data that expired less than {@link WeatherEnvironment#getStaleGraceSeconds()} ago is returned at once,
+ * and a single background refresh of the city is started (concurrent refreshes of the same city
+ * are coalesced). Data older than {@link WeatherEnvironment#getTtlSeconds()} + grace period is fetched
+ * while the caller waits, same as in {@link WeatherTemplate}.
+ */
+public class WeatherTemplateStaleWhileRevalidate extends WeatherTemplate {
+    private final LongAdder staleServedCount = new LongAdder();
+    private final LongAdder backgroundRefreshFailureCount = new LongAdder();
+
+    public WeatherTemplateStaleWhileRevalidate(WeatherHttpClient httpClient, WeatherEnvironment environment) {
+        super(httpClient, environment);
+    }
+
+    /**
+     * Number of requests answered with outdated data
+     */
+    public long getStaleServedCount() {
+        return staleServedCount.sum();
+    }
+
+    /**
+     * Number of failed background refreshes
+     */
+    public long getBackgroundRefreshFailureCount() {
+        return backgroundRefreshFailureCount.sum();
+    }
+
+    @Override
+    protected boolean serveStale(final String cityKey, final WeatherData cachedData) {
+        if (cachedData.isOlderThan(environment.getTtlSeconds() + environment.getStaleGraceSeconds(),
+                environment.getClock().epochSecond())) {
+            return false;
+        }
+        staleServedCount.increment();
+        fetches.executeAsync(cityKey, () -> loadDataAsync(cityKey, ForkJoinPool.commonPool()))
+                .whenComplete((data, ex) -> {
+                    if (ex != null) {
+                        backgroundRefreshFailureCount.increment();
+                    }
+                });
+        return true;
+    }
+}
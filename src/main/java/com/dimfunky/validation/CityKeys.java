@@ -0,0 +1,129 @@
+package com.dimfunky.validation;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts city names to the cache keys (lowercase city names).
+ * <p>
+ * Keys are canonicalized: all names that differ only in case get the same key instance, and the
+ * mapping from a valid name to its key is remembered. Repeated requests for a known name cost
+ * one hash lookup, without validation and without allocating a new lowercase string.
+ * <p>
+ * Names are remembered in two generations of up to {@link CityKeys#GENERATION_SIZE} names. When the current
+ * generation is full, it becomes the previous one and the oldest generation is dropped. Names found in the
+ * previous generation move to the current one, so names requested regularly stay remembered, while
+ * one-off names are forgotten after two generations. Names longer than {@link CityKeys#MAX_KEY_LENGTH}
+ * are validated and converted on each call.
+ */
+public class CityKeys {
+    static final int GENERATION_SIZE = 32_768;
+    static final int MAX_KEY_LENGTH = 100;
+
+    private static volatile Map<String, String> keys = new ConcurrentHashMap<>();
+    private static volatile Map<String, String> previousKeys = new ConcurrentHashMap<>();
+
+    private CityKeys() {
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Validates the city name with {@link InputValidation#validateCityName(String)} and returns its cache key.
+     *
+     * @param cityName
+     * @return lowercase city name
+     * @throws com.dimfunky.exception.WeatherServiceValidationException if cityName not valid.
+     */
+    public static String of(final String cityName) {
+        if (cityName != null) {
+            String key = lookup(cityName);
+            if (key != null) {
+                return key;
+            }
+        }
+        InputValidation.validateCityName(cityName);
+        return remember(cityName);
+    }
+
+    /**
+     * <pre>
+     * </pre>
+     * Returns the cache key for the city name received from the API, without validation.
+     *
+     * @param cityName
+     * @return lowercase city name
+     */
+    public static String normalize(final String cityName) {
+        String key = lookup(cityName);
+        if (key != null) {
+            return key;
+        }
+        key = toLowerCase(cityName);
+        String canonicalKey = lookup(key);
+        return canonicalKey != null ? canonicalKey : key;
+    }
+
+    /**
+     * Returns the remembered key of the name, moving the name and its key from the previous generation
+     * to the current one
+     */
+    private static String lookup(final String cityName) {
+        String key = keys.get(cityName);
+        if (key == null) {
+            key = previousKeys.get(cityName);
+            if (key != null) {
+                store(key, key);
+                store(cityName, key);
+            }
+        }
+        return key;
+    }
+
+    private static String remember(final String cityName) {
+        String key = toLowerCase(cityName);
+        if (cityName.length() > MAX_KEY_LENGTH) {
+            return key;
+        }
+        String canonicalKey = lookup(key);
+        if (canonicalKey == null) {
+            canonicalKey = store(key, key);
+        }
+        return cityName.equals(canonicalKey) ? canonicalKey : store(cityName, canonicalKey);
+    }
+
+    /**
+     * Puts the name to the current generation, starting a new generation if it is full
+     *
+     * @return the key remembered for the name
+     */
+    private static String store(final String cityName, final String key) {
+        Map<String, String> current = keys;
+        if (current.size() >= GENERATION_SIZE) {
+            synchronized (CityKeys.class) {
+                if (keys == current) {
+                    previousKeys = current;
+                    keys = new ConcurrentHashMap<>();
+                }
+                current = keys;
+            }
+        }
+        String storedKey = current.putIfAbsent(cityName, key);
+        return storedKey != null ? storedKey : key;
+    }
+
+    static int size() {
+        return keys.size() + previousKeys.size();
+    }
+
+    private static String toLowerCase(final String cityName) {
+        for (int i = 0; i < cityName.length(); i++) {
+            char c = cityName.charAt(i);
+            if (Character.toLowerCase(c) != c) {
+                return cityName.toLowerCase(Locale.ROOT);
+            }
+        }
+        return cityName;
+    }
+}
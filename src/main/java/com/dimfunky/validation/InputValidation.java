@@ -1,23 +1,54 @@
 package com.dimfunky.validation;
 
+import com.dimfunky.cache.Cache;
+import com.dimfunky.cache.OffHeapCache;
+import com.dimfunky.cache.RemoteCache;
+import com.dimfunky.concurrent.WeatherClock;
+import com.dimfunky.constant.RateLimitMode;
 import com.dimfunky.exception.WeatherServiceValidationException;
+import com.dimfunky.metrics.WeatherMetrics;
+
+import java.net.http.HttpClient;
+import java.util.regex.Pattern;
 
 public class InputValidation {
 
-    private static final String CITY_NAME_REGEX = "^[A-Za-zÀ-ÖØ-öø-ÿ\\s-]+$";
-    private static final String API_KEY_REGEX = "^[a-fA-F0-9]{32}$";
+    private static final Pattern API_KEY_PATTERN = Pattern.compile("^[a-fA-F0-9]{32}$");
 
     private InputValidation() {
     }
 
     public static void validateCityName(final String cityName) {
-        if (!isStringValid(cityName, CITY_NAME_REGEX)) {
+        if (!isCityNameValid(cityName)) {
             throw new WeatherServiceValidationException("The city name must contain at least one character and consist only of letters, spaces, and hyphens");
         }
     }
 
+    /**
+     * <pre>
+     * </pre>
+     * Checks that the city name is not empty and consists only of latin letters (including Latin-1 letters
+     * {@code À-Ö}, {@code Ø-ö}, {@code ø-ÿ}), whitespaces and hyphens.
+     * <p>
+     * Equivalent to the {@code ^[A-Za-zÀ-ÖØ-öø-ÿ\s-]+$} regex, but scans the chars without allocations.
+     *
+     * @param cityName
+     * @return {@code true} if the city name is valid
+     */
+    public static boolean isCityNameValid(final String cityName) {
+        if (cityName == null || cityName.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < cityName.length(); i++) {
+            if (!isCityNameChar(cityName.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static void validateApiKey(final String apiKey) {
-        if (!isStringValid(apiKey, API_KEY_REGEX)) {
+        if (!isStringValid(apiKey, API_KEY_PATTERN)) {
             throw new WeatherServiceValidationException("Not valid API Key. Must contains 32 characters and contains only digits and letters from 'a' to 'f'");
         }
     }
@@ -28,13 +59,173 @@ public class InputValidation {
         }
     }
 
+    public static void validateCache(final Cache<?> cache) {
+        if (cache == null) {
+            throw new WeatherServiceValidationException("cache must not be null");
+        }
+    }
+
+    public static void validateRemoteCache(final RemoteCache remoteCache) {
+        if (remoteCache == null) {
+            throw new WeatherServiceValidationException("remoteCache must not be null");
+        }
+    }
+
+    public static void validateMetrics(final WeatherMetrics metrics) {
+        if (metrics == null) {
+            throw new WeatherServiceValidationException("metrics must not be null");
+        }
+    }
+
+    public static void validateClock(final WeatherClock clock) {
+        if (clock == null) {
+            throw new WeatherServiceValidationException("clock must not be null");
+        }
+    }
+
+    public static void validateTtl(final long ttlSeconds) {
+        if (ttlSeconds <= 0) {
+            throw new WeatherServiceValidationException("ttlSeconds must be positive");
+        }
+    }
+
+    public static void validateExpiredRetention(final long expiredRetentionSeconds) {
+        if (expiredRetentionSeconds < 0) {
+            throw new WeatherServiceValidationException("expiredRetentionSeconds must be positive or 0");
+        }
+    }
+
+    public static void validateCoordinates(final double lat, final double lon) {
+        if (!(lat >= -90 && lat <= 90) || !(lon >= -180 && lon <= 180)) {
+            throw new WeatherServiceValidationException("lat must be between -90 and 90, lon must be between -180 and 180");
+        }
+    }
+
+    public static void validateGeoRadius(final double geoRadiusMeters) {
+        if (!(geoRadiusMeters >= 0) || Double.isInfinite(geoRadiusMeters)) {
+            throw new WeatherServiceValidationException("geoRadiusMeters must be positive or 0");
+        }
+    }
+
+    public static void validateOffHeapCacheLimit(final int cacheLimit) {
+        if (cacheLimit > OffHeapCache.MAX_LIMIT) {
+            throw new WeatherServiceValidationException("cacheLimit must not exceed " + OffHeapCache.MAX_LIMIT + " for the off-heap cache");
+        }
+    }
+
     public static void validateCacheUpdatePeriod(final long updatePeriod) {
         if (updatePeriod <= 0) {
             throw new WeatherServiceValidationException("updatePeriod must be positive");
         }
     }
 
-    private static boolean isStringValid(final String string, final String regex) {
-        return string != null && string.matches(regex);
+    public static void validateGeocodeCacheLimit(final int geocodeCacheLimit) {
+        if (geocodeCacheLimit <= 0) {
+            throw new WeatherServiceValidationException("geocodeCacheLimit must be positive");
+        }
+    }
+
+    public static void validateSnapshotPeriod(final long snapshotPeriodSeconds) {
+        if (snapshotPeriodSeconds <= 0) {
+            throw new WeatherServiceValidationException("snapshotPeriod must be positive");
+        }
+    }
+
+    public static void validateStaleGracePeriod(final long staleGraceSeconds) {
+        if (staleGraceSeconds <= 0) {
+            throw new WeatherServiceValidationException("staleGracePeriod must be positive");
+        }
+    }
+
+    public static void validateBatchConcurrency(final int batchConcurrency) {
+        if (batchConcurrency <= 0) {
+            throw new WeatherServiceValidationException("batchConcurrency must be positive");
+        }
+    }
+
+    public static void validatePollingThreads(final int pollingThreads) {
+        if (pollingThreads <= 0) {
+            throw new WeatherServiceValidationException("pollingThreads must be positive");
+        }
+    }
+
+    public static void validatePollingIdlePeriod(final long pollingIdleSeconds) {
+        if (pollingIdleSeconds < 0) {
+            throw new WeatherServiceValidationException("pollingIdleSeconds must be positive or 0");
+        }
+    }
+
+    public static void validateRequestsPerMinute(final int requestsPerMinute) {
+        if (requestsPerMinute < 0) {
+            throw new WeatherServiceValidationException("requestsPerMinute must be positive or 0");
+        }
+    }
+
+    public static void validateRateLimit(final int requestsPerMinute, final int burst, final RateLimitMode mode) {
+        if (requestsPerMinute <= 0) {
+            throw new WeatherServiceValidationException("requestsPerMinute must be positive");
+        }
+        if (burst <= 0) {
+            throw new WeatherServiceValidationException("burst must be positive");
+        }
+        if (mode == null) {
+            throw new WeatherServiceValidationException("rateLimitMode must not be null");
+        }
+    }
+
+    public static void validateRetry(final int maxAttempts, final long initialBackoffMillis, final long maxBackoffMillis) {
+        if (maxAttempts <= 0) {
+            throw new WeatherServiceValidationException("maxAttempts must be positive");
+        }
+        if (initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis) {
+            throw new WeatherServiceValidationException("backoff must be positive or 0 and not exceed maxBackoff");
+        }
+    }
+
+    public static void validateRequestTimeout(final long requestTimeoutMillis) {
+        if (requestTimeoutMillis <= 0) {
+            throw new WeatherServiceValidationException("requestTimeout must be positive");
+        }
+    }
+
+    public static void validateCircuitBreaker(final int failureThreshold, final long openSeconds) {
+        if (failureThreshold < 0) {
+            throw new WeatherServiceValidationException("failureThreshold must be positive or 0");
+        }
+        if (openSeconds <= 0) {
+            throw new WeatherServiceValidationException("openPeriod must be positive");
+        }
+    }
+
+    public static void validateConnectTimeout(final long connectTimeoutMillis) {
+        if (connectTimeoutMillis <= 0) {
+            throw new WeatherServiceValidationException("connectTimeout must be positive");
+        }
+    }
+
+    public static void validateHttpThreads(final int httpThreads) {
+        if (httpThreads <= 0) {
+            throw new WeatherServiceValidationException("httpThreads must be positive");
+        }
+    }
+
+    public static void validateHttpVersion(final HttpClient.Version httpVersion) {
+        if (httpVersion == null) {
+            throw new WeatherServiceValidationException("httpVersion must not be null");
+        }
+    }
+
+    private static boolean isCityNameChar(final char c) {
+        return (c >= 'a' && c <= 'z')
+                || (c >= 'A' && c <= 'Z')
+                || c == ' ' || c == '-'
+                || (c >= '\t' && c <= '\r')
+                || (c >= 'À' && c <= 'Ö')
+                || (c >= 'Ø' && c <= 'ö')
+                || (c >= 'ø' && c <= 'ÿ');
+    }
+
+    private static boolean isStringValid(final String string, final Pattern pattern) {
+        return string != null && pattern.matcher(string).matches();
     }
 }
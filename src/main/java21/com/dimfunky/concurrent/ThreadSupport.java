@@ -0,0 +1,34 @@
+package com.dimfunky.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the threads of the SDK.
+ * <p>
+ * This is the Java 21 variant, loaded from {@code META-INF/versions/21} of the multi-release JAR.
+ * Blocking work runs on virtual threads, which release their carrier thread while waiting for the API.
+ */
+public final class ThreadSupport {
+    private static final ExecutorService VIRTUAL_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("weather-virtual-", 1).factory());
+
+    private ThreadSupport() {
+    }
+
+    public static boolean isVirtualThreadsAvailable() {
+        return true;
+    }
+
+    public static Executor virtualThreadExecutor() {
+        return VIRTUAL_EXECUTOR;
+    }
+
+    public static ExecutorService newWorkerPool(final String name, final int threads, final boolean virtual) {
+        if (virtual) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+        }
+        return PlatformThreads.newPool(name, threads);
+    }
+}
@@ -0,0 +1,175 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.constant.EvictionPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedCacheTest {
+
+    @Test
+    void fifoShouldEvictOldestTimestamp() {
+        var cache = new BoundedCache<Long>(3, EvictionPolicy.FIFO, value -> value);
+        cache.put("london", 950L);
+        cache.put("new york", 400L);
+        cache.put("tokio", 350L);
+
+        cache.put("paris", 1000L);
+
+        assertEquals(3, cache.size());
+        assertFalse(cache.contains("tokio"));
+        assertTrue(cache.contains("london"));
+        assertTrue(cache.contains("new york"));
+    }
+
+    @Test
+    void fifoShouldReorderUpdatedEntry() {
+        var cache = new BoundedCache<Long>(2, EvictionPolicy.FIFO, value -> value);
+        cache.put("london", 1L);
+        cache.put("paris", 2L);
+        cache.put("london", 3L);
+
+        cache.put("tokio", 4L);
+
+        assertFalse(cache.contains("paris"));
+        assertEquals(3L, cache.get("london"));
+    }
+
+    @Test
+    void fifoShouldOrderOlderDataAndEqualTimestamps() {
+        var cache = new BoundedCache<Long>(3, EvictionPolicy.FIFO, value -> value / 10);
+        cache.put("london", 300L);
+        cache.put("paris", 200L);
+        cache.put("tokio", 201L);
+        cache.put("berlin", 100L);
+
+        assertFalse(cache.contains("berlin"));
+
+        cache.put("rome", 500L);
+
+        assertFalse(cache.contains("paris"));
+        assertTrue(cache.contains("tokio"));
+        assertTrue(cache.contains("london"));
+    }
+
+    @Test
+    void lruShouldKeepEntriesReadConcurrently() throws InterruptedException {
+        var cache = new BoundedCache<String>(2, EvictionPolicy.LRU);
+        cache.put("london", "a");
+        cache.put("paris", "b");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    cache.get("london");
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        cache.put("tokio", "c");
+
+        assertTrue(cache.contains("london"));
+        assertFalse(cache.contains("paris"));
+    }
+
+    @Test
+    void lruShouldEvictLeastRecentlyUsed() {
+        var cache = new BoundedCache<String>(2, EvictionPolicy.LRU);
+        cache.put("london", "a");
+        cache.put("paris", "b");
+        cache.get("london");
+
+        cache.put("tokio", "c");
+
+        assertTrue(cache.contains("london"));
+        assertFalse(cache.contains("paris"));
+        assertTrue(cache.contains("tokio"));
+    }
+
+    @Test
+    void tinyLfuShouldKeepFrequentlyRequestedEntries() {
+        var cache = new BoundedCache<String>(100, EvictionPolicy.TINY_LFU);
+        for (int i = 0; i < 100; i++) {
+            var key = "hot" + i;
+            for (int j = 0; j < 5; j++) {
+                cache.get(key);
+            }
+            cache.put(key, key);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            var key = "cold" + i;
+            cache.get(key);
+            cache.put(key, key);
+        }
+
+        assertEquals(100, cache.size());
+        long hot = cache.getAll().keySet().stream().filter(key -> key.startsWith("hot")).count();
+        assertTrue(hot >= 90, "hot entries left: " + hot);
+    }
+
+    @Test
+    void removeAndClearShouldWork() {
+        var cache = new BoundedCache<String>(2, EvictionPolicy.LRU);
+        cache.put("london", "a");
+        cache.put("paris", "b");
+
+        assertEquals("a", cache.remove("london"));
+        assertNull(cache.remove("london"));
+        cache.put("tokio", "c");
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.put("london", "a");
+        assertEquals("a", cache.get("london"));
+    }
+
+    @Test
+    void shouldNotExceedLimitUnderConcurrentWrites() throws InterruptedException {
+        var cache = new BoundedCache<Integer>(50, EvictionPolicy.LRU);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            int offset = t * 1000;
+            executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    cache.put("city" + (offset + i), i);
+                    cache.get("city" + (offset + i / 2));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(50, cache.size());
+    }
+
+    @Test
+    void putIfAbsentAndComputeShouldWork() {
+        var cache = new BoundedCache<Long>(2, EvictionPolicy.FIFO, value -> value);
+        assertNull(cache.putIfAbsent("london", 1L));
+        assertEquals(1L, cache.putIfAbsent("london", 5L));
+
+        assertEquals(3L, cache.compute("london", (key, value) -> value + 2));
+        assertEquals(2L, cache.compute("paris", (key, value) -> value == null ? 2L : value));
+        assertNull(cache.compute("paris", (key, value) -> null));
+        assertFalse(cache.contains("paris"));
+
+        cache.putIfAbsent("paris", 4L);
+        cache.putIfAbsent("tokio", 5L);
+
+        assertEquals(2, cache.size());
+        assertFalse(cache.contains("london"));
+        assertEquals(Map.of("paris", 4L, "tokio", 5L), cache.getAll());
+    }
+}
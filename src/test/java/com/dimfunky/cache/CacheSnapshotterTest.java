@@ -0,0 +1,75 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.constant.EvictionPolicy;
+import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.model.WeatherData;
+import com.dimfunky.support.DataProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CacheSnapshotterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldRestoreEntriesWithOriginalFetchedAt() {
+        var file = tempDir.resolve("weather.snapshot");
+        var cache = new BoundedCache<WeatherData>(10, EvictionPolicy.LRU);
+        var paris = DataProvider.prepareParisWeatherData().fetchedAt(1740311935L);
+        var partial = new WeatherData().name("Nowhere").fetchedAt(1740311000L).coord(new WeatherData.Coord().lat(1.5));
+        cache.put("paris", paris);
+        cache.put("nowhere", partial);
+        new CacheSnapshotter(cache, file, 60).save();
+
+        var restoredCache = new BoundedCache<WeatherData>(10, EvictionPolicy.LRU);
+        var restored = new CacheSnapshotter(restoredCache, file, 60).restore();
+
+        assertEquals(2, restored);
+        assertEquals(paris, restoredCache.get("paris"));
+        assertEquals(1740311935L, restoredCache.get("paris").fetchedAt());
+        assertEquals(partial, restoredCache.get("nowhere"));
+        assertNull(restoredCache.get("nowhere").coord().lon());
+        assertNull(restoredCache.get("nowhere").weather());
+    }
+
+    @Test
+    void shouldIgnoreMissingFile() {
+        var cache = new BoundedCache<WeatherData>(10, EvictionPolicy.LRU);
+
+        assertEquals(0, new CacheSnapshotter(cache, tempDir.resolve("missing"), 60).restore());
+    }
+
+    @Test
+    void shouldThrowOnCorruptedFile() throws IOException {
+        var file = tempDir.resolve("weather.snapshot");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        var cache = new BoundedCache<WeatherData>(10, EvictionPolicy.LRU);
+
+        assertThrows(WeatherServiceException.class, () -> new CacheSnapshotter(cache, file, 60).restore());
+    }
+
+    @Test
+    void shouldThrowOnCorruptedStringLength() throws IOException {
+        var file = tempDir.resolve("weather.snapshot");
+        var cache = new BoundedCache<WeatherData>(10, EvictionPolicy.LRU);
+        cache.put("paris", DataProvider.prepareParisWeatherData());
+        new CacheSnapshotter(cache, file, 60).save();
+        byte[] bytes = Files.readAllBytes(file);
+        for (int keyLength : new int[]{-1, Integer.MAX_VALUE}) {
+            ByteBuffer.wrap(bytes).putInt(12, keyLength);
+            Files.write(file, bytes);
+
+            assertThrows(WeatherServiceException.class, () -> new CacheSnapshotter(cache, file, 60).restore());
+        }
+    }
+}
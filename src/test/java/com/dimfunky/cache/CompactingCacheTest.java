@@ -0,0 +1,80 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.constant.EvictionPolicy;
+import com.dimfunky.model.WeatherData;
+import com.dimfunky.support.DataProvider;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactingCacheTest {
+
+    @Test
+    void shouldRestoreStoredData() {
+        var cache = new CompactingCache(10, EvictionPolicy.FIFO);
+        var paris = DataProvider.prepareParisWeatherData();
+
+        cache.put("paris", paris);
+        var result = cache.get("paris");
+
+        assertEquals(paris, result);
+        assertEquals(paris.fetchedAt(), result.fetchedAt());
+        assertNotSame(result, cache.get("paris"));
+        assertEquals(paris, cache.getAll().get("paris"));
+    }
+
+    @Test
+    void shouldRestoreAbsentValues() {
+        var cache = new CompactingCache(10, EvictionPolicy.FIFO);
+        var data = new WeatherData()
+                .coord(new WeatherData.Coord().lat(0.0))
+                .temperature(new WeatherData.Temperature().feelsLike(-1.5))
+                .sys(new WeatherData.Sys())
+                .name("Nowhere");
+
+        cache.put("nowhere", data);
+        var result = cache.get("nowhere");
+
+        assertEquals("Nowhere", result.name());
+        assertEquals(0.0, result.coord().lat());
+        assertEquals(-1.5, result.temperature().feelsLike());
+        assertNull(result.fetchedAt());
+        assertNull(result.coord().lon());
+        assertNull(result.temperature().temp());
+        assertNull(result.weather());
+        assertNull(result.wind());
+        assertNull(result.visibility());
+        assertNull(result.sys().sunrise());
+    }
+
+    @Test
+    void shouldShareWeatherConditionStrings() {
+        var cache = new CompactingCache(10, EvictionPolicy.FIFO);
+        cache.put("paris", DataProvider.prepareParisWeatherData()
+                .weather(new WeatherData.Weather().main(new String("Rain")).description(new String("light rain"))));
+        cache.put("london", DataProvider.prepareLondonWeatherData()
+                .weather(new WeatherData.Weather().main(new String("Rain")).description(new String("light rain"))));
+
+        assertSame(cache.get("paris").weather().main(), cache.get("london").weather().main());
+        assertSame(cache.get("paris").weather().description(), cache.get("london").weather().description());
+    }
+
+    @Test
+    void fifoShouldEvictOldestFetchedAt() {
+        var cache = new CompactingCache(2, EvictionPolicy.FIFO);
+        cache.put("london", DataProvider.prepareLondonWeatherData().fetchedAt(200L));
+        cache.put("paris", DataProvider.prepareParisWeatherData().fetchedAt(100L));
+
+        cache.put("tokio", DataProvider.prepareParisWeatherData().name("Tokio").fetchedAt(300L));
+
+        assertEquals(2, cache.size());
+        assertFalse(cache.contains("paris"));
+        assertTrue(cache.contains("london"));
+        assertTrue(cache.contains("tokio"));
+    }
+}
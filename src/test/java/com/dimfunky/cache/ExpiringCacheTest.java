@@ -0,0 +1,68 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.concurrent.ManualClock;
+import com.dimfunky.constant.EvictionPolicy;
+import com.dimfunky.model.WeatherData;
+import com.dimfunky.support.DataProvider;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiringCacheTest {
+    private static final long START = 1_740_311_935L;
+
+    @Test
+    void shouldRemoveEntriesAfterLifetime() {
+        var clock = new ManualClock(START);
+        var cache = new ExpiringCache(new BoundedCache<>(10, EvictionPolicy.FIFO), clock, 1_200);
+        cache.put("london", DataProvider.prepareLondonWeatherData().fetchedAt(START));
+        cache.put("paris", DataProvider.prepareParisWeatherData().fetchedAt(START - 600));
+
+        clock.advance(599);
+        assertEquals(2, cache.size());
+
+        clock.advance(1);
+        assertFalse(cache.contains("paris"));
+        assertTrue(cache.contains("london"));
+
+        clock.advance(600);
+        assertNull(cache.get("london"));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getExpiredCount());
+    }
+
+    @Test
+    void shouldKeepRefreshedEntries() {
+        var clock = new ManualClock(START);
+        var cache = new ExpiringCache(new BoundedCache<>(10, EvictionPolicy.FIFO), clock, 1_200);
+        cache.put("london", DataProvider.prepareLondonWeatherData().fetchedAt(START));
+
+        clock.advance(1_000);
+        var refreshed = DataProvider.prepareLondonWeatherData().fetchedAt(clock.epochSecond());
+        cache.compute("london", (key, current) -> refreshed);
+        clock.advance(1_000);
+
+        assertSame(refreshed, cache.get("london"));
+        clock.advance(200);
+        assertNull(cache.get("london"));
+    }
+
+    @Test
+    void shouldScheduleEntriesOfWrappedCache() {
+        var clock = new ManualClock(START);
+        Cache<WeatherData> local = new BoundedCache<>(10, EvictionPolicy.FIFO);
+        local.put("london", DataProvider.prepareLondonWeatherData().fetchedAt(START - 1_100));
+        local.put("paris", DataProvider.prepareParisWeatherData().fetchedAt(null));
+        var cache = new ExpiringCache(local, clock, 1_200);
+
+        clock.advance(100);
+
+        assertFalse(cache.contains("london"));
+        assertTrue(cache.contains("paris"));
+        assertEquals(1, local.size());
+    }
+}
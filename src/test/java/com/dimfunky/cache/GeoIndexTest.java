@@ -0,0 +1,131 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.model.WeatherData;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class GeoIndexTest {
+
+    @Test
+    void shouldFindClosestPointWithinRadius() {
+        var index = new GeoIndex(1_000, 10);
+        var eiffelTower = point("Eiffel Tower", 48.8584, 2.2945, 0);
+        var trocadero = point("Trocadero", 48.8616, 2.2893, 0);
+        index.put(eiffelTower);
+        index.put(trocadero);
+
+        assertSame(eiffelTower, index.findNearest(48.8580, 2.2950));
+        assertSame(trocadero, index.findNearest(48.8625, 2.2880));
+        assertNull(index.findNearest(48.8738, 2.2950));
+    }
+
+    @Test
+    void shouldSkipExpiredPointsAndKeepNewestPerLocation() {
+        var index = new GeoIndex(1_000, 10);
+        index.put(point("Old", 48.8584, 2.2945, 700));
+
+        assertNull(index.findNearest(48.8584, 2.2945));
+        assertEquals(0, index.size());
+
+        var fresh = point("Fresh", 48.8584, 2.2945, 10);
+        index.put(fresh);
+        index.put(point("Older", 48.8584, 2.2945, 20));
+
+        assertSame(fresh, index.findNearest(48.8584, 2.2945));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void shouldFindPointsAcrossAntimeridianAndNearPoles() {
+        var index = new GeoIndex(5_000, 10);
+        var fiji = point("Fiji", -16.5, 179.99, 0);
+        var svalbard = point("Svalbard", 89.99, 10, 0);
+        index.put(fiji);
+        index.put(svalbard);
+
+        assertSame(fiji, index.findNearest(-16.5, -179.99));
+        assertSame(svalbard, index.findNearest(89.99, 40));
+    }
+
+    @Test
+    void shouldEvictOldestPointWhenFull() {
+        var index = new GeoIndex(1_000, 2);
+        index.put(point("First", 10, 10, 30));
+        index.put(point("Second", 20, 20, 20));
+        index.put(point("Third", 30, 30, 10));
+
+        assertEquals(2, index.size());
+        assertNull(index.findNearest(10, 10));
+    }
+
+    @Test
+    void shouldEvictEarliestIndexedPointAfterRefresh() {
+        var index = new GeoIndex(1_000, 2);
+        index.put(point("First", 10, 10, 30));
+        index.put(point("Second", 20, 20, 20));
+        var refreshed = point("First refreshed", 10, 10, 0);
+        index.put(refreshed);
+        index.put(point("Third", 30, 30, 10));
+
+        assertEquals(2, index.size());
+        assertSame(refreshed, index.findNearest(10, 10));
+        assertNull(index.findNearest(20, 20));
+    }
+
+    @Test
+    void concurrentPutsShouldEvictDownToLimitOnly() throws Exception {
+        var index = new GeoIndex(1_000, 100);
+        var pool = Executors.newFixedThreadPool(8);
+        try {
+            var tasks = new ArrayList<Future<?>>();
+            for (int thread = 0; thread < 8; thread++) {
+                int lat = thread * 10 - 40;
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        index.put(point("Point", lat, i * 0.1 - 50, 0));
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(100, index.size());
+    }
+
+    @Test
+    void shouldRemovePointsWithoutFetchTime() {
+        var index = new GeoIndex(1_000, 10);
+        index.put(point("Unknown", 10, 10, 0).fetchedAt(null));
+
+        assertNull(index.findNearest(10, 10));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void shouldNotFindPointsWithZeroRadius() {
+        var index = new GeoIndex(0, 10);
+        index.put(point("Point", 10, 10, 0));
+
+        assertNull(index.findNearest(10, 10));
+    }
+
+    private static WeatherData point(final String name, final double lat, final double lon, final long ageSeconds) {
+        return new WeatherData()
+                .name(name)
+                .coord(new WeatherData.Coord().lat(lat).lon(lon))
+                .fetchedAt(Instant.now().getEpochSecond() - ageSeconds);
+    }
+}
@@ -0,0 +1,75 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.support.DataProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeocodeCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldReloadEntriesFromFile() {
+        var file = tempDir.resolve("geocode.tsv");
+        var cache = new GeocodeCache(100, file);
+        cache.put("paris", DataProvider.prepareParisCityCoords());
+        cache.put("new york", DataProvider.prepareNewYorkCityCoords());
+
+        var reloaded = new GeocodeCache(100, file);
+
+        assertEquals(2, reloaded.size());
+        assertEquals(DataProvider.prepareParisCityCoords(), reloaded.get("paris"));
+        assertEquals(DataProvider.prepareNewYorkCityCoords(), reloaded.get("new york"));
+    }
+
+    @Test
+    void shouldPersistRemovals() {
+        var file = tempDir.resolve("geocode.tsv");
+        var cache = new GeocodeCache(100, file);
+        cache.put("paris", DataProvider.prepareParisCityCoords());
+        cache.putIfAbsent("new york", DataProvider.prepareNewYorkCityCoords());
+        cache.remove("paris");
+
+        var reloaded = new GeocodeCache(100, file);
+
+        assertEquals(1, reloaded.size());
+        assertNull(reloaded.get("paris"));
+        assertEquals(DataProvider.prepareNewYorkCityCoords(), reloaded.get("new york"));
+    }
+
+    @Test
+    void shouldSkipCorruptedLinesAndCompactFile() throws IOException {
+        var file = tempDir.resolve("geocode.tsv");
+        Files.writeString(file, "paris\tParis\t1.0\t2.0\n"
+                + "paris\tParis\t48.8589\t2.32\n"
+                + "london\tLondon\t51.5\n"
+                + "tokio\tTokio\tabc\t139.7639\n", StandardCharsets.UTF_8);
+
+        var cache = new GeocodeCache(100, file);
+
+        assertEquals(1, cache.size());
+        assertEquals(DataProvider.prepareParisCityCoords(), cache.get("paris"));
+        assertNull(cache.get("london"));
+        assertEquals(1, Files.readAllLines(file).size());
+    }
+
+    @Test
+    void shouldCreateMissingFile() {
+        var file = tempDir.resolve("geocode.tsv");
+
+        var cache = new GeocodeCache(100, file);
+
+        assertEquals(0, cache.size());
+        assertTrue(Files.exists(file));
+    }
+}
@@ -0,0 +1,155 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.concurrent.ManualClock;
+import com.dimfunky.model.WeatherData;
+import com.dimfunky.support.DataProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapCacheTest {
+
+    @Test
+    void shouldRestoreStoredData() {
+        var cache = new OffHeapCache(10);
+        var paris = DataProvider.prepareParisWeatherData().name("Paris-Île");
+
+        cache.put("paris", paris);
+        var result = cache.get("paris");
+
+        assertEquals(paris, result);
+        assertEquals(paris.fetchedAt(), result.fetchedAt());
+        assertNotSame(result, cache.get("paris"));
+        assertEquals(Map.of("paris", paris), cache.getAll());
+    }
+
+    @Test
+    void shouldRestoreAbsentValues() {
+        var cache = new OffHeapCache(10);
+        cache.put("nowhere", new WeatherData()
+                .coord(new WeatherData.Coord().lon(-0.5))
+                .weather(new WeatherData.Weather().description("fog")));
+
+        var result = cache.get("nowhere");
+
+        assertNull(result.name());
+        assertNull(result.fetchedAt());
+        assertNull(result.coord().lat());
+        assertEquals(-0.5, result.coord().lon());
+        assertNull(result.weather().main());
+        assertEquals("fog", result.weather().description());
+        assertNull(result.temperature());
+        assertNull(result.sys());
+    }
+
+    @Test
+    void shouldReplaceExistingRecord() {
+        var cache = new OffHeapCache(2);
+        cache.put("paris", DataProvider.prepareParisWeatherData());
+        cache.put("paris", DataProvider.prepareParisWeatherData().visibility(500));
+
+        assertEquals(1, cache.size());
+        assertEquals(500, cache.get("paris").visibility());
+    }
+
+    @Test
+    void shouldRejectTooLongStrings() {
+        var cache = new OffHeapCache(2);
+        cache.put("paris", DataProvider.prepareParisWeatherData());
+
+        cache.put("paris", DataProvider.prepareParisWeatherData().name("P".repeat(OffHeapCache.MAX_STRING_BYTES)));
+
+        assertFalse(cache.contains("paris"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getRejectedCount());
+    }
+
+    @Test
+    void clockShouldKeepRecentlyReadEntries() {
+        var cache = new OffHeapCache(3);
+        cache.put("london", DataProvider.prepareLondonWeatherData());
+        cache.put("paris", DataProvider.prepareParisWeatherData());
+        cache.put("tokio", DataProvider.prepareParisWeatherData().name("Tokio"));
+        cache.get("london");
+
+        cache.put("new york", DataProvider.prepareParisWeatherData().name("New York"));
+
+        assertEquals(3, cache.size());
+        assertTrue(cache.contains("london"));
+        assertFalse(cache.contains("paris"));
+        assertTrue(cache.contains("tokio"));
+        assertTrue(cache.contains("new york"));
+    }
+
+    @Test
+    void shouldMatchMapOnRandomOperations() {
+        var cache = new OffHeapCache(64);
+        Map<String, Integer> expected = new HashMap<>();
+        var random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            String key = "city " + random.nextInt(48);
+            if (random.nextInt(4) == 0) {
+                var removed = cache.remove(key);
+                assertEquals(expected.remove(key), removed == null ? null : removed.visibility());
+            } else {
+                cache.put(key, DataProvider.prepareParisWeatherData().visibility(i));
+                expected.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), cache.size());
+        expected.forEach((key, visibility) -> assertEquals(visibility, cache.get(key).visibility()));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("city 1"));
+    }
+
+    @Test
+    void putIfAbsentAndComputeShouldWork() {
+        var cache = new OffHeapCache(2);
+        assertNull(cache.putIfAbsent("paris", DataProvider.prepareParisWeatherData()));
+        assertEquals("Paris", cache.putIfAbsent("paris", DataProvider.prepareLondonWeatherData()).name());
+
+        var result = cache.compute("paris", (key, value) -> value.visibility(500));
+        assertEquals(500, result.visibility());
+        assertEquals(500, cache.get("paris").visibility());
+
+        assertNull(cache.compute("paris", (key, value) -> null));
+        assertEquals(0, cache.size());
+        assertTrue(cache.getAll().isEmpty());
+    }
+
+    @Test
+    void shouldExpireRecordsAfterLifetime() {
+        var clock = new ManualClock();
+        var cache = new OffHeapCache(2).expireAfter(clock, 100);
+        long now = clock.epochSecond();
+        cache.put("london", DataProvider.prepareLondonWeatherData().fetchedAt(now));
+        cache.put("paris", DataProvider.prepareParisWeatherData().fetchedAt(now - 50));
+        cache.get("london");
+        cache.get("paris");
+
+        clock.advance(60);
+
+        assertNull(cache.get("paris"));
+        assertFalse(cache.contains("paris"));
+        assertEquals(Map.of("london", cache.get("london")), cache.getAll());
+
+        cache.put("tokio", DataProvider.prepareParisWeatherData().name("Tokio").fetchedAt(clock.epochSecond()));
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.contains("london"));
+        assertTrue(cache.contains("tokio"));
+        assertNull(cache.putIfAbsent("paris", DataProvider.prepareParisWeatherData().fetchedAt(clock.epochSecond())));
+        assertTrue(cache.contains("paris"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.dimfunky.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadBufferTest {
+
+    @Test
+    void shouldDrainReadsInOrderAndRejectWhenStripeIsFull() {
+        var buffer = new ReadBuffer();
+        for (int i = 0; i < ReadBuffer.STRIPE_SIZE; i++) {
+            assertEquals(i + 1, buffer.offer("city" + i));
+        }
+        assertEquals(-1, buffer.offer("rejected"));
+
+        List<String> drained = new ArrayList<>();
+        buffer.drainTo(drained::add);
+
+        assertEquals(ReadBuffer.STRIPE_SIZE, drained.size());
+        assertEquals("city0", drained.get(0));
+        assertEquals(1, buffer.offer("london"));
+    }
+
+    @Test
+    void shouldNotLoseReadsOfConcurrentThreads() throws InterruptedException {
+        var buffer = new ReadBuffer();
+        var counts = new ConcurrentHashMap<String, AtomicInteger>();
+        var recorded = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    while (buffer.offer("city") < 0) {
+                        synchronized (buffer) {
+                            buffer.drainTo(key -> counts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet());
+                        }
+                    }
+                    recorded.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        synchronized (buffer) {
+            buffer.drainTo(key -> counts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet());
+        }
+
+        assertEquals(4000, recorded.get());
+        assertEquals(4000, counts.get("city").get());
+    }
+}
@@ -0,0 +1,84 @@
+package com.dimfunky.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    private static final long START = 1_740_311_935L;
+
+    @Test
+    void shouldExpireKeysAtTheirDeadlines() {
+        var wheel = new TimingWheel(START);
+        wheel.schedule("london", START + 10);
+        wheel.schedule("paris", START + 1_200);
+        wheel.schedule("tokio", START + 100_000);
+
+        assertTrue(wheel.advance(START + 9).isEmpty());
+        assertEquals(List.of("london"), wheel.advance(START + 10));
+        assertTrue(wheel.advance(START + 1_199).isEmpty());
+        assertEquals(List.of("paris"), wheel.advance(START + 1_200));
+        assertTrue(wheel.advance(START + 99_999).isEmpty());
+        assertEquals(List.of("tokio"), wheel.advance(START + 100_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void shouldSkipCancelledAndRescheduledKeys() {
+        var wheel = new TimingWheel(START);
+        wheel.schedule("london", START + 5);
+        wheel.schedule("paris", START + 5);
+        wheel.schedule("paris", START + 50);
+        wheel.cancel("london");
+
+        assertTrue(wheel.advance(START + 10).isEmpty());
+        assertEquals(List.of("paris"), wheel.advance(START + 50));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void shouldExpirePassedDeadlinesOnNextSecond() {
+        var wheel = new TimingWheel(START);
+        wheel.schedule("london", START - 100);
+
+        assertTrue(wheel.advance(START).isEmpty());
+        assertEquals(List.of("london"), wheel.advance(START + 1));
+    }
+
+    @Test
+    void shouldMatchDeadlinesOfRandomKeysWhateverTheSteps() {
+        var random = new Random(42);
+        var wheel = new TimingWheel(START);
+        Map<String, Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = START + 1 + random.nextInt(i % 2 == 0 ? 5_000 : 20_000_000);
+            deadlines.put("city" + i, deadline);
+            wheel.schedule("city" + i, deadline);
+        }
+
+        long now = START;
+        List<String> late = new ArrayList<>();
+        while (!deadlines.isEmpty()) {
+            now += random.nextInt(3) == 0 ? 1 + random.nextInt(10_000) : 1 + random.nextInt(60);
+            for (String key : wheel.advance(now)) {
+                long deadline = deadlines.remove(key);
+                assertTrue(deadline <= now, key);
+            }
+            long current = now;
+            deadlines.forEach((key, deadline) -> {
+                if (deadline <= current) {
+                    late.add(key);
+                }
+            });
+            assertTrue(late.isEmpty(), late::toString);
+        }
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,195 @@
+package com.dimfunky.cache;
+
+import com.dimfunky.constant.EvictionPolicy;
+import com.dimfunky.model.WeatherData;
+import com.dimfunky.support.DataProvider;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TwoTierCacheTest {
+
+    @Test
+    void shouldShareDataBetweenInstances() {
+        var remote = new InProcessRemoteCache();
+        var first = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        var second = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        var paris = DataProvider.prepareParisWeatherData();
+
+        first.put("paris", paris);
+        var result = second.get("paris");
+
+        assertEquals(paris, result);
+        assertEquals(paris.fetchedAt(), result.fetchedAt());
+        assertEquals(paris.coord().lat(), result.coord().lat());
+        assertTrue(second.getLocal().contains("paris"));
+        assertEquals(1, second.getRemoteHitCount());
+    }
+
+    @Test
+    void shouldReplaceExpiredLocalDataWithNewerRemoteData() {
+        var remote = new InProcessRemoteCache();
+        var first = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        var second = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        second.getLocal().put("paris", DataProvider.prepareParisWeatherData()
+                .fetchedAt(Instant.now().getEpochSecond() - 700));
+
+        first.put("paris", DataProvider.prepareParisWeatherData().visibility(5000));
+        var result = second.get("paris");
+
+        assertFalse(result.isExpired());
+        assertEquals(5000, result.visibility());
+        assertEquals(5000, second.getLocal().get("paris").visibility());
+    }
+
+    @Test
+    void shouldServeFreshLocalDataWithoutRemote() {
+        var remote = mock(RemoteCache.class);
+        var cache = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        var paris = DataProvider.prepareParisWeatherData();
+        cache.getLocal().put("paris", paris);
+
+        assertSame(paris, cache.get("paris"));
+        verify(remote, never()).get(any());
+    }
+
+    @Test
+    void shouldLoadOnceWhileAnotherInstanceHoldsLease() throws Exception {
+        var remote = new InProcessRemoteCache();
+        var first = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        var second = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        var paris = DataProvider.prepareParisWeatherData();
+        var started = new CountDownLatch(1);
+        var finish = new CountDownLatch(1);
+        var secondLoads = new AtomicInteger();
+
+        var firstResult = CompletableFuture.supplyAsync(() -> first.load("paris", null, () -> {
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            first.put("paris", paris);
+            return paris;
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        var secondResult = CompletableFuture.supplyAsync(() -> second.load("paris", null, () -> {
+            secondLoads.incrementAndGet();
+            return null;
+        }));
+        Thread.sleep(200);
+        finish.countDown();
+
+        assertSame(paris, firstResult.get(1, TimeUnit.SECONDS));
+        assertEquals(paris, secondResult.get(1, TimeUnit.SECONDS));
+        assertEquals(0, secondLoads.get());
+        assertEquals(1, second.getLeaseWaitCount());
+        assertTrue(remote.tryAcquireLease("paris", "other", 1000));
+    }
+
+    @Test
+    void shouldLoadWhenLeaseOfFailedInstanceExpires() {
+        var remote = new InProcessRemoteCache();
+        var cache = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote,
+                TwoTierCache.DEFAULT_REMOTE_TTL_MILLIS, 200);
+        var paris = DataProvider.prepareParisWeatherData();
+        remote.tryAcquireLease("paris", "failed", 200);
+
+        var result = cache.load("paris", null, () -> paris);
+
+        assertSame(paris, result);
+        assertEquals(1, cache.getLeaseWaitCount());
+    }
+
+    @Test
+    void shouldLoadAsyncOnceWhileAnotherInstanceHoldsLease() throws Exception {
+        var remote = new InProcessRemoteCache();
+        var first = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        var second = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        var paris = DataProvider.prepareParisWeatherData();
+        var pending = new CompletableFuture<WeatherData>();
+        var secondLoads = new AtomicInteger();
+
+        var firstResult = first.loadAsync("paris", null, () -> pending);
+        var secondResult = second.loadAsync("paris", null, () -> {
+            secondLoads.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+        first.put("paris", paris);
+        pending.complete(paris);
+
+        assertSame(paris, firstResult.get(1, TimeUnit.SECONDS));
+        assertEquals(paris, secondResult.get(1, TimeUnit.SECONDS));
+        assertEquals(0, secondLoads.get());
+    }
+
+    @Test
+    void shouldFallBackToLocalTierWhenRemoteFails() {
+        var remote = mock(RemoteCache.class);
+        when(remote.get(any())).thenThrow(new IllegalStateException("unavailable"));
+        when(remote.tryAcquireLease(any(), any(), anyLong())).thenThrow(new IllegalStateException("unavailable"));
+        doThrow(new IllegalStateException("unavailable")).when(remote).put(any(), any(), anyLong());
+        var cache = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        var paris = DataProvider.prepareParisWeatherData();
+
+        assertNull(cache.get("paris"));
+        assertSame(paris, cache.load("paris", null, () -> {
+            cache.put("paris", paris);
+            return paris;
+        }));
+        assertSame(paris, cache.get("paris"));
+        assertTrue(cache.getRemoteErrorCount() >= 3);
+    }
+
+    @Test
+    void shouldRemoveFromBothTiers() {
+        var remote = new InProcessRemoteCache();
+        var cache = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        cache.put("paris", DataProvider.prepareParisWeatherData());
+
+        cache.compute("paris", (key, current) -> null);
+
+        assertNull(cache.get("paris"));
+        assertEquals(0, remote.size());
+    }
+
+    @Test
+    void shouldGrantLeaseToOneOwnerAtATime() {
+        var remote = new InProcessRemoteCache();
+
+        assertTrue(remote.tryAcquireLease("paris", "first", 10_000));
+        assertFalse(remote.tryAcquireLease("paris", "second", 10_000));
+        assertTrue(remote.tryAcquireLease("paris", "first", 10_000));
+        remote.releaseLease("paris", "second");
+        assertFalse(remote.tryAcquireLease("paris", "second", 10_000));
+        remote.releaseLease("paris", "first");
+        assertTrue(remote.tryAcquireLease("paris", "second", 10_000));
+    }
+
+    @Test
+    void shouldIgnoreUnknownRemoteValue() {
+        var remote = new InProcessRemoteCache();
+        var cache = new TwoTierCache(new BoundedCache<>(10, EvictionPolicy.FIFO), remote);
+        remote.put("paris", new byte[]{1, 2, 3}, 10_000);
+
+        assertNull(cache.get("paris"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.dimfunky.client;
+
+import com.dimfunky.exception.WeatherServiceException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestUrisTest {
+    private final RequestUris requestUris = new RequestUris();
+
+    @Test
+    void shouldPercentEncodeCityNameAsUtf8() {
+        var uri = requestUris.geoDecode("São Paulo", "key");
+
+        assertEquals("https://api.openweathermap.org/geo/1.0/direct?q=S%C3%A3o%20Paulo&appid=key", uri.toString());
+        assertEquals("São Paulo", uri.getQuery().substring(2, uri.getQuery().indexOf('&')));
+    }
+
+    @Test
+    void shouldEncodeReservedCharacters() {
+        var uri = requestUris.geoDecode("Saint-Denis,FR&x=1", "a+b");
+
+        assertEquals("https://api.openweathermap.org/geo/1.0/direct?q=Saint-Denis%2CFR%26x%3D1&appid=a%2Bb",
+                uri.toString());
+    }
+
+    @Test
+    void shouldRoundCoordinatesToSixDecimalPlaces() {
+        var uri = requestUris.weatherData(48.8588897, -0.0000004, "key");
+
+        assertEquals("https://api.openweathermap.org/data/2.5/weather?lat=48.858890&lon=0.000000&appid=key",
+                uri.toString());
+        assertEquals("https://api.openweathermap.org/data/2.5/weather?lat=-33.000001&lon=151.200000&appid=key",
+                requestUris.weatherData(-33.0000005, 151.2, "key").toString());
+    }
+
+    @Test
+    void shouldNotDependOnDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY);
+
+            assertEquals("https://api.openweathermap.org/data/2.5/weather?lat=52.520008&lon=13.404954&appid=key",
+                    requestUris.weatherData(52.520008, 13.404954, "key").toString());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    void shouldRejectMissingOrInfiniteCoordinates() {
+        assertThrows(WeatherServiceException.class, () -> requestUris.weatherData(null, 1.0, "key"));
+        assertThrows(WeatherServiceException.class, () -> requestUris.weatherData(Double.NaN, 1.0, "key"));
+        assertThrows(WeatherServiceException.class,
+                () -> requestUris.weatherData(1.0, Double.POSITIVE_INFINITY, "key"));
+    }
+}
@@ -1,20 +1,48 @@
 package com.dimfunky.client;
 
+import com.dimfunky.concurrent.CircuitBreaker;
+import com.dimfunky.constant.RateLimitMode;
+import com.dimfunky.environment.WeatherEnvironment;
 import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.exception.WeatherServiceHttpException;
+import com.dimfunky.exception.WeatherServiceRateLimitException;
+import com.dimfunky.exception.WeatherServiceUnavailableException;
+import com.dimfunky.support.DataProvider;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
+import static com.dimfunky.support.DataProvider.fakeApiKey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class WeatherHttpClientTest {
@@ -52,11 +80,274 @@ class WeatherHttpClientTest {
         assertTrue(ex.getMessage().contains("The city was not found. Try to write name in another format"));
     }
 
+    @Test
+    void getCoordsByCityNameAsyncShouldMapResponse() {
+        prepareAsyncMocks(200, DataProvider.readJsonFile("city-coords.json"));
+
+        var result = weatherHttpClient.getCoordsByCityNameAsync("Paris", fakeApiKey, Runnable::run).join();
+
+        assertEquals("Paris", result.name());
+        assertEquals(48.8588897, result.lat());
+    }
+
+    @Test
+    void getWeatherDataAsyncShouldTakeNameFromCoords() {
+        prepareAsyncMocks(200, DataProvider.readJsonFile("weather-data-response.json"));
+
+        var result = weatherHttpClient
+                .getWeatherDataAsync(DataProvider.prepareParisCityCoords().name("Paris-Test"), fakeApiKey, Runnable::run)
+                .join();
+
+        assertEquals("Paris-Test", result.name());
+        assertEquals("Rain", result.weather().main());
+    }
+
+    @Test
+    void asyncRequestShouldCompleteExceptionallyOnApiError() {
+        prepareAsyncMocks(401, "Invalid API key");
+
+        var future = weatherHttpClient.getCoordsByCityNameAsync("Paris", fakeApiKey, Runnable::run);
+
+        var ex = assertThrows(CompletionException.class, future::join);
+        assertTrue(ex.getCause() instanceof WeatherServiceException);
+        assertTrue(ex.getCause().getMessage().contains("openweathermap.org returned an error: Invalid API key"));
+    }
+
+    @Test
+    void asyncRequestShouldWrapTransportError() {
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("connection reset")));
+
+        var future = weatherHttpClient.getCoordsByCityNameAsync("Paris", fakeApiKey, Runnable::run);
+
+        var ex = assertThrows(CompletionException.class, future::join);
+        assertTrue(ex.getCause() instanceof WeatherServiceException);
+        assertEquals("connection reset", ex.getCause().getMessage());
+    }
+
+    @Test
+    void shouldFailFastWhenRateLimitIsExceeded() throws IOException, InterruptedException {
+        var rateLimiter = new RateLimiter(60, 2, RateLimitMode.FAIL_FAST);
+        weatherHttpClient = new WeatherHttpClient(mockHttpClient, rateLimiter);
+        prepareMocks(200, DataProvider.readJsonFile("city-coords.json"));
+
+        weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey);
+        weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey);
+        var ex = assertThrows(WeatherServiceRateLimitException.class,
+                () -> weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey));
+        var asyncEx = assertThrows(CompletionException.class,
+                () -> weatherHttpClient.getCoordsByCityNameAsync("Paris", fakeApiKey, Runnable::run).join());
+
+        assertTrue(asyncEx.getCause() instanceof WeatherServiceRateLimitException);
+        assertEquals(1000, ex.getRetryAfterMillis());
+        assertEquals(2, rateLimiter.getThrottledCount());
+        assertEquals(0, rateLimiter.getRemainingQuota(fakeApiKey));
+        assertEquals(2, rateLimiter.getRemainingQuota("another key"));
+        verify(mockHttpClient, times(2)).send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any());
+    }
+
+    @Test
+    void shouldWaitWhenRateLimitIsExceeded() throws IOException, InterruptedException {
+        // 200 ms per request: the limiter books only the part of the interval not already spent
+        // processing the previous request, so the bounds below keep an interval of headroom for it
+        var rateLimiter = new RateLimiter(300, 1, RateLimitMode.WAIT);
+        weatherHttpClient = new WeatherHttpClient(mockHttpClient, rateLimiter);
+        prepareMocks(200, DataProvider.readJsonFile("city-coords.json"));
+        prepareAsyncMocks(200, DataProvider.readJsonFile("city-coords.json"));
+
+        long start = System.nanoTime();
+        weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey);
+        weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey);
+        weatherHttpClient.getCoordsByCityNameAsync("Paris", fakeApiKey, Runnable::run).join();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis >= 190, "elapsed: " + elapsedMillis);
+        assertEquals(2, rateLimiter.getThrottledCount());
+        assertTrue(rateLimiter.getWaitTimeMillis() >= 190);
+    }
+
+    @Test
+    void shouldThrowRateLimitExceptionOnTooManyRequests() throws IOException, InterruptedException {
+        var rateLimiter = new RateLimiter(60, 5, RateLimitMode.WAIT);
+        weatherHttpClient = new WeatherHttpClient(mockHttpClient, rateLimiter);
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(429);
+        when(mockResponse.body())
+                .thenAnswer(invocation -> new ByteArrayInputStream("Too many requests".getBytes(StandardCharsets.UTF_8)));
+        when(mockResponse.headers()).thenReturn(HttpHeaders.of(Map.of("Retry-After", List.of("30")), (name, value) -> true));
+        when(mockHttpClient.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(mockResponse);
+
+        var ex = assertThrows(WeatherServiceRateLimitException.class,
+                () -> weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey));
+
+        assertEquals(30_000, ex.getRetryAfterMillis());
+        assertEquals(1, rateLimiter.getRejectedByServerCount());
+        assertEquals(0, rateLimiter.getRemainingQuota(fakeApiKey));
+    }
+
+    @Test
+    void shouldRetryServerErrors() throws IOException, InterruptedException {
+        weatherHttpClient = new WeatherHttpClient(mockHttpClient, null, new RetryPolicy(3, 10, 20), null,
+                Duration.ofSeconds(5), false);
+        var failure = mockResponse(503, "Service unavailable");
+        var success = mockResponse(200, DataProvider.readJsonFile("city-coords.json"));
+        when(mockHttpClient.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(failure, failure, success);
+
+        var result = weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey);
+
+        assertEquals("Paris", result.name());
+        assertEquals(2, weatherHttpClient.getRetryCount());
+        var request = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(mockHttpClient, times(3)).send(request.capture(), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any());
+        assertEquals(Duration.ofSeconds(5), request.getValue().timeout().orElseThrow());
+    }
+
+    @Test
+    void shouldNotRetryClientErrors() throws IOException, InterruptedException {
+        weatherHttpClient = new WeatherHttpClient(mockHttpClient, null, new RetryPolicy(3, 10, 20), null, null, false);
+        prepareMocks(401, "Invalid API key");
+
+        var ex = assertThrows(WeatherServiceHttpException.class,
+                () -> weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey));
+
+        assertEquals(401, ex.getStatusCode());
+        assertEquals(0, weatherHttpClient.getRetryCount());
+        verify(mockHttpClient, times(1)).send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any());
+    }
+
+    @Test
+    void asyncRequestShouldRetryTransportErrors() {
+        weatherHttpClient = new WeatherHttpClient(mockHttpClient, null, new RetryPolicy(2, 10, 20), null, null, false);
+        var success = mockResponse(200, DataProvider.readJsonFile("city-coords.json"));
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(CompletableFuture.failedFuture(new HttpTimeoutException("request timed out")),
+                        CompletableFuture.completedFuture(success));
+
+        var result = weatherHttpClient.getCoordsByCityNameAsync("Paris", fakeApiKey, Runnable::run).join();
+
+        assertEquals("Paris", result.name());
+        assertEquals(1, weatherHttpClient.getRetryCount());
+    }
+
+    @Test
+    void shouldFailFastWhileCircuitIsOpen() throws IOException, InterruptedException {
+        var circuitBreaker = new CircuitBreaker(2, 60_000);
+        weatherHttpClient = new WeatherHttpClient(mockHttpClient, null, RetryPolicy.NONE, circuitBreaker, null, false);
+        when(mockHttpClient.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenThrow(new IOException("connection refused"));
+
+        assertThrows(WeatherServiceException.class, () -> weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey));
+        assertThrows(WeatherServiceException.class, () -> weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey));
+        assertThrows(WeatherServiceUnavailableException.class,
+                () -> weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey));
+        var asyncEx = assertThrows(CompletionException.class,
+                () -> weatherHttpClient.getCoordsByCityNameAsync("Paris", fakeApiKey, Runnable::run).join());
+
+        assertTrue(asyncEx.getCause() instanceof WeatherServiceUnavailableException);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        verify(mockHttpClient, times(2)).send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any());
+    }
+
+    @Test
+    void throttledTrialRequestShouldNotCloseCircuit() throws IOException, InterruptedException {
+        var circuitBreaker = new CircuitBreaker(1, 0);
+        weatherHttpClient = new WeatherHttpClient(mockHttpClient, null, RetryPolicy.NONE, circuitBreaker, null, false);
+        var throttled = mockResponse(429, "Too many requests");
+        when(throttled.headers()).thenReturn(HttpHeaders.of(Map.of("Retry-After", List.of("30")), (name, value) -> true));
+        when(mockHttpClient.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenThrow(new IOException("connection refused"))
+                .thenReturn(throttled);
+
+        assertThrows(WeatherServiceException.class, () -> weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey));
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertThrows(WeatherServiceRateLimitException.class,
+                () -> weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey));
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void shouldDecompressGzipResponse() throws IOException, InterruptedException {
+        weatherHttpClient = new WeatherHttpClient(mockHttpClient, null, RetryPolicy.NONE, null, null, true);
+        var compressed = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(DataProvider.readJsonFile("city-coords.json").getBytes(StandardCharsets.UTF_8));
+        }
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.body()).thenAnswer(invocation -> new ByteArrayInputStream(compressed.toByteArray()));
+        when(mockResponse.headers()).thenReturn(HttpHeaders.of(Map.of("Content-Encoding", List.of("gzip")), (name, value) -> true));
+        when(mockHttpClient.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(mockResponse);
+
+        var result = weatherHttpClient.getCoordsByCityName("Paris", fakeApiKey);
+
+        assertEquals("Paris", result.name());
+        var request = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(mockHttpClient).send(request.capture(), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any());
+        assertEquals("gzip", request.getValue().headers().firstValue("Accept-Encoding").orElseThrow());
+        assertEquals("https", request.getValue().uri().getScheme());
+    }
+
+    @Test
+    void shouldParseResponseFromStreamAndCloseIt() throws IOException, InterruptedException {
+        boolean[] closed = new boolean[1];
+        var body = new ByteArrayInputStream(DataProvider.readJsonFile("weather-data-response.json")
+                .getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.body()).thenReturn(body);
+        when(mockHttpClient.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(mockResponse);
+
+        var result = weatherHttpClient.getWeatherData(DataProvider.prepareParisCityCoords(), fakeApiKey);
+
+        assertEquals("Rain", result.weather().main());
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    void shouldShareHttpClientBetweenEnvironmentsWithSameTransport() {
+        var first = new WeatherHttpClient(new WeatherEnvironment.OnDemand(fakeApiKey));
+        var second = new WeatherHttpClient(new WeatherEnvironment.OnDemand("abcdef1234567890abcdef1234567890"));
+        var third = new WeatherHttpClient(new WeatherEnvironment.OnDemand(fakeApiKey).httpThreads(2));
+
+        assertSame(first.getHttpClient(), second.getHttpClient());
+        assertNotSame(first.getHttpClient(), third.getHttpClient());
+        assertEquals(HttpClient.Version.HTTP_2, first.getHttpClient().version());
+        assertEquals(Duration.ofSeconds(5), first.getHttpClient().connectTimeout().orElseThrow());
+        assertTrue(first.getHttpClient().executor().isPresent());
+    }
+
+    private HttpResponse<InputStream> mockResponse(final int status, final String body) {
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(status);
+        when(mockResponse.body()).thenAnswer(invocation -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        return mockResponse;
+    }
+
+    private void prepareAsyncMocks(final int status, final String body) {
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(status);
+        when(mockResponse.body()).thenAnswer(invocation -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+    }
+
     private void prepareMocks(final int status, final String body) throws IOException, InterruptedException {
-        HttpResponse<String> mockResponse = mock(HttpResponse.class);
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
         when(mockResponse.statusCode()).thenReturn(status);
-        when(mockResponse.body()).thenReturn(body);
-        when(mockHttpClient.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<String>>any()))
+        when(mockResponse.body()).thenAnswer(invocation -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        when(mockHttpClient.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
                 .thenReturn(mockResponse);
     }
 }
@@ -0,0 +1,72 @@
+package com.dimfunky.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    @Test
+    void shouldOpenAfterConsecutiveFailures() {
+        var breaker = new CircuitBreaker(3, 10_000);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(1, breaker.getOpenedCount());
+    }
+
+    @Test
+    void shouldLetSingleTrialCallThroughAfterOpenPeriod() throws InterruptedException {
+        var breaker = new CircuitBreaker(1, 50);
+        breaker.onFailure();
+        Thread.sleep(80);
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void shouldReopenWhenTrialCallFails() throws InterruptedException {
+        var breaker = new CircuitBreaker(2, 50);
+        breaker.onFailure();
+        breaker.onFailure();
+        Thread.sleep(80);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, breaker.getOpenedCount());
+    }
+
+    @Test
+    void shouldStayHalfOpenWhenTrialCallIsIgnored() throws InterruptedException {
+        var breaker = new CircuitBreaker(1, 50);
+        breaker.onFailure();
+        Thread.sleep(80);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onIgnored();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+}
@@ -0,0 +1,35 @@
+package com.dimfunky.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RatePacerTest {
+
+    @Test
+    void shouldSpreadRequestsEvenly() throws InterruptedException {
+        var pacer = new RatePacer(600);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            pacer.acquire();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis >= 290, "elapsed: " + elapsedMillis);
+    }
+
+    @Test
+    void shouldNotWaitWithoutLimit() throws InterruptedException {
+        var pacer = new RatePacer(0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            pacer.acquire();
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+    }
+}
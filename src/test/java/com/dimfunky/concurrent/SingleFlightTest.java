@@ -0,0 +1,106 @@
+package com.dimfunky.concurrent;
+
+import com.dimfunky.exception.WeatherServiceException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+    private static final int THREADS = 8;
+
+    @Test
+    void shouldRunLoaderOnceForConcurrentCallers() throws Exception {
+        var singleFlight = new SingleFlight<String>();
+        var loads = new AtomicInteger();
+        var release = new CountDownLatch(1);
+
+        var results = runConcurrently(() -> singleFlight.execute("paris", () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "data";
+        }), singleFlight, release);
+
+        for (Future<String> result : results) {
+            assertEquals("data", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, singleFlight.getOriginatedCount());
+        assertEquals(THREADS - 1, singleFlight.getCoalescedCount());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void shouldShareFailureWithWaitingCallers() throws Exception {
+        var singleFlight = new SingleFlight<String>();
+        var release = new CountDownLatch(1);
+        var failure = new WeatherServiceException("timeout");
+
+        var results = runConcurrently(() -> singleFlight.execute("paris", () -> {
+            await(release);
+            throw failure;
+        }), singleFlight, release);
+
+        for (Future<String> result : results) {
+            var ex = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(failure, ex.getCause());
+        }
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void shouldCoalesceAsyncCalls() {
+        var singleFlight = new SingleFlight<String>();
+        var load = new CompletableFuture<String>();
+
+        var first = singleFlight.executeAsync("paris", () -> load);
+        var second = singleFlight.executeAsync("paris", CompletableFuture::new);
+        load.complete("data");
+
+        assertEquals("data", first.join());
+        assertEquals("data", second.join());
+        assertEquals(1, singleFlight.getOriginatedCount());
+        assertEquals(1, singleFlight.getCoalescedCount());
+        assertEquals("new", singleFlight.executeAsync("paris", () -> CompletableFuture.completedFuture("new")).join());
+    }
+
+    private List<Future<String>> runConcurrently(final Callable<String> task,
+                                                 final SingleFlight<String> singleFlight,
+                                                 final CountDownLatch release) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(task));
+            }
+            while (singleFlight.getOriginatedCount() + singleFlight.getCoalescedCount() < THREADS) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.dimfunky.concurrent;
+
+import com.dimfunky.environment.WeatherEnvironment;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.dimfunky.support.DataProvider.fakeApiKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ThreadSupportTest {
+
+    @Test
+    void workerPoolShouldRunTasksWithOrWithoutVirtualThreads() throws Exception {
+        for (boolean virtual : new boolean[]{false, true}) {
+            var pool = ThreadSupport.newWorkerPool("test-pool", 2, virtual);
+            try {
+                String threadName = pool.submit(() -> Thread.currentThread().getName()).get(1, TimeUnit.SECONDS);
+                assertTrue(threadName.startsWith("test-pool-"), threadName);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void sharedExecutorShouldRunTasksWithOrWithoutVirtualThreads() throws Exception {
+        var task = CompletableFuture.supplyAsync(() -> Thread.currentThread().isDaemon(),
+                ThreadSupport.virtualThreadExecutor());
+
+        assertTrue(task.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void environmentShouldUseVirtualThreadsOnlyIfAvailable() {
+        var environment = new WeatherEnvironment.OnDemand(fakeApiKey);
+
+        assertEquals(ThreadSupport.isVirtualThreadsAvailable(), environment.isVirtualThreads());
+        assertFalse(environment.virtualThreads(false).isVirtualThreads());
+    }
+
+    @Test
+    void multiReleaseJarShouldLoadJava21Variant() {
+        assumeTrue(Boolean.getBoolean("weather.multiRelease"), "Runs against the packaged multi-release JAR");
+
+        assertTrue(ThreadSupport.isVirtualThreadsAvailable());
+    }
+}
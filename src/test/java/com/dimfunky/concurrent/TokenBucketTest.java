@@ -0,0 +1,58 @@
+package com.dimfunky.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void shouldAllowBurstAndThenThrottle() {
+        var bucket = new TokenBucket(60, 3);
+
+        assertEquals(3, bucket.getAvailableTokens());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertEquals(0, bucket.getAvailableTokens());
+    }
+
+    @Test
+    void shouldRefillOverTime() throws InterruptedException {
+        var bucket = new TokenBucket(600, 1);
+
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        Thread.sleep(120);
+
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void shouldReturnWaitTimeOfReservedTokens() {
+        var bucket = new TokenBucket(60, 1);
+
+        assertEquals(0, bucket.reserve());
+        long firstWait = bucket.reserve();
+        long secondWait = bucket.reserve();
+
+        assertTrue(firstWait > TimeUnit.MILLISECONDS.toNanos(900), "wait: " + firstWait);
+        assertTrue(secondWait > TimeUnit.MILLISECONDS.toNanos(1900), "wait: " + secondWait);
+    }
+
+    @Test
+    void shouldEmptyBucketOnPause() {
+        var bucket = new TokenBucket(6000, 10);
+
+        bucket.pause(TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(0, bucket.getAvailableTokens());
+        assertFalse(bucket.tryAcquire());
+        assertTrue(bucket.reserve() > TimeUnit.MILLISECONDS.toNanos(900));
+    }
+}
@@ -1,12 +1,18 @@
 package com.dimfunky.factory;
 
 import com.dimfunky.WeatherTemplateFactory;
+import com.dimfunky.concurrent.ManualClock;
 import com.dimfunky.environment.WeatherEnvironment;
+import com.dimfunky.support.DataProvider;
 import com.dimfunky.template.Polling;
 import com.dimfunky.template.WeatherTemplate;
 import com.dimfunky.template.WeatherTemplatePolling;
+import com.dimfunky.template.WeatherTemplateStaleWhileRevalidate;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
 
 import static com.dimfunky.support.DataProvider.fakeApiKey;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -60,6 +66,30 @@ class WeatherTemplateFactoryTest {
         assertTrue(((WeatherTemplatePolling) template).getScheduler().isShutdown());
     }
 
+    @Test
+    void shouldCreateStaleWhileRevalidateTemplate() {
+        WeatherTemplateFactory.createInstance(new WeatherEnvironment.StaleWhileRevalidate(fakeApiKey));
+
+        assertTrue(WeatherTemplateFactory.getInstance(fakeApiKey) instanceof WeatherTemplateStaleWhileRevalidate);
+    }
+
+    @Test
+    void shouldSaveSnapshotOnDeleteAndRestoreOnCreate(@TempDir Path tempDir) {
+        var snapshotFile = tempDir.resolve("weather.snapshot");
+        var london = DataProvider.prepareLondonWeatherData().fetchedAt(1740311935L);
+        WeatherTemplateFactory.createInstance(new WeatherEnvironment.OnDemand(fakeApiKey)
+                .clock(new ManualClock(london.fetchedAt())).snapshotFile(snapshotFile));
+        WeatherTemplateFactory.getInstance(fakeApiKey).getEnvironment().getCache().put("london", london);
+
+        WeatherTemplateFactory.deleteInstance(fakeApiKey);
+        WeatherTemplateFactory.createInstance(new WeatherEnvironment.OnDemand(fakeApiKey)
+                .clock(new ManualClock(london.fetchedAt())).snapshotFile(snapshotFile));
+
+        var restored = WeatherTemplateFactory.getInstance(fakeApiKey).getEnvironment().getCache().get("london");
+        assertEquals(london, restored);
+        assertEquals(1740311935L, restored.fetchedAt());
+    }
+
     private WeatherTemplate preparePollingTemplate() {
         WeatherTemplateFactory.createInstance(
                 new WeatherEnvironment.Polling(fakeApiKey));
@@ -4,9 +4,15 @@ import com.dimfunky.exception.WeatherServiceException;
 import com.dimfunky.support.DataProvider;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class WeatherMapperTest {
 
@@ -43,6 +49,54 @@ class WeatherMapperTest {
         assertEquals("Paris", result.name());
     }
 
+    @Test
+    void toWeatherDataFromBytesAndStream() {
+        var json = DataProvider.readJsonFile("weather-data-response.json");
+        var bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        var expected = WeatherMapper.toWeatherData(json);
+
+        assertEquals(expected, WeatherMapper.toWeatherData(bytes));
+        assertEquals(expected, WeatherMapper.toWeatherData(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    void toWeatherDataReadsSdkJson() {
+        var weatherData = DataProvider.prepareParisWeatherData().coord(null);
+
+        var result = WeatherMapper.toWeatherData(WeatherMapper.weatherDataToJson(weatherData));
+
+        assertEquals(weatherData, result);
+    }
+
+    @Test
+    void toWeatherDataTakesFirstWeatherAndSkipsUnknownFields() {
+        var json = "{\"weather\":[{\"id\":500,\"main\":\"Rain\"},{\"main\":\"Mist\"}],"
+                + "\"rain\":{\"1h\":[0.2,{\"x\":null}]},\"visibility\":null,\"name\":\"Paris\"}";
+
+        var result = WeatherMapper.toWeatherData(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("Rain", result.weather().main());
+        assertNull(result.weather().description());
+        assertNull(result.visibility());
+        assertEquals("Paris", result.name());
+    }
+
+    @Test
+    void toCityCoordsReturnsNullForEmptyList() {
+        assertNull(WeatherMapper.toCityCoords("[]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void toCityCoordsFromBytes() {
+        var json = DataProvider.readJsonFile("city-coords.json");
+
+        var result = WeatherMapper.toCityCoords(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(WeatherMapper.toCityCoords(json), result);
+        assertEquals("Paris", result.name());
+    }
+
     @Test
     void toWeatherDataThrowsEx() {
         var invalidJson = DataProvider.readJsonFile("invalid-json.json");
@@ -50,6 +104,9 @@ class WeatherMapperTest {
         assertThrows(WeatherServiceException.class, () ->
                 WeatherMapper.toWeatherData(invalidJson)
         );
+        assertThrows(WeatherServiceException.class, () ->
+                WeatherMapper.toWeatherData("[]")
+        );
     }
 
     @Test
@@ -63,6 +120,47 @@ class WeatherMapperTest {
         assertEquals(expectedJson, resultJson);
     }
 
+    @Test
+    void weatherDataToJsonBytesShouldBeMemoizedUntilDataChanges() {
+        var weatherData = DataProvider.prepareParisWeatherData();
+
+        var json = WeatherMapper.weatherDataToJsonBytes(weatherData);
+
+        assertSame(json, WeatherMapper.weatherDataToJsonBytes(weatherData));
+
+        weatherData.name("Paris-Test");
+
+        assertNull(weatherData.json());
+        assertTrue(WeatherMapper.weatherDataToJson(weatherData).contains("Paris-Test"));
+    }
+
+    @Test
+    void memoizedJsonShouldBeIgnoredAfterNestedObjectChanges() {
+        var weatherData = DataProvider.prepareParisWeatherData();
+        WeatherMapper.weatherDataToJson(weatherData);
+
+        weatherData.temperature().temp(301.5);
+
+        assertNull(weatherData.json());
+        assertNull(weatherData.jsonString());
+        assertTrue(WeatherMapper.weatherDataToJson(weatherData).contains("301.5"));
+        assertNotNull(weatherData.json());
+    }
+
+    @Test
+    void weatherDataToJsonShouldBeMemoizedUntilDataChanges() {
+        var weatherData = DataProvider.prepareParisWeatherData();
+
+        var json = WeatherMapper.weatherDataToJson(weatherData);
+
+        assertSame(json, WeatherMapper.weatherDataToJson(weatherData));
+
+        weatherData.name("Paris-Test");
+
+        assertNull(weatherData.jsonString());
+        assertTrue(WeatherMapper.weatherDataToJson(weatherData).contains("Paris-Test"));
+    }
+
     @Test
     void shouldConvertWeatherDataToCityCoords() {
         var weatherData = DataProvider.prepareParisWeatherData();
@@ -0,0 +1,66 @@
+package com.dimfunky.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsShouldCoverAllValues() {
+        long previousUpperBound = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            long lowerBound = previousUpperBound + 1;
+            assertEquals(bucket, LatencyHistogram.bucketOf(lowerBound));
+            previousUpperBound = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(previousUpperBound));
+        }
+        assertEquals(Long.MAX_VALUE, previousUpperBound);
+    }
+
+    @Test
+    void shouldReportPercentilesWithinBucketError() {
+        var histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getMaxNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5050) / 100, snapshot.getMeanNanos());
+        assertWithin(50, snapshot.getPercentileMillis(50));
+        assertWithin(99, snapshot.getPercentileMillis(99));
+        assertEquals(100, snapshot.getPercentileMillis(100));
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getPercentileNanos(101));
+    }
+
+    @Test
+    void shouldCountConcurrentRecords() throws InterruptedException {
+        var histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    histogram.record(j);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, histogram.snapshot().getCount());
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue(actual >= expected && actual <= expected * 1.125, "expected about " + expected + ", got " + actual);
+    }
+}
@@ -1,14 +1,12 @@
 package com.dimfunky.template;
 
 import com.dimfunky.environment.WeatherEnvironment;
-import com.dimfunky.cache.MemoryCache;
+import com.dimfunky.cache.Cache;
 import com.dimfunky.client.WeatherHttpClient;
 import com.dimfunky.model.WeatherData;
 import com.dimfunky.support.DataProvider;
 import org.junit.jupiter.api.BeforeEach;
 
-import java.time.Instant;
-
 import static com.dimfunky.support.DataProvider.fakeApiKey;
 import static com.dimfunky.support.DataProvider.prepareLondonWeatherData;
 import static com.dimfunky.support.DataProvider.prepareNewYorkWeatherData;
@@ -19,19 +17,21 @@ import static org.mockito.Mockito.when;
 public class BaseTemplateTest {
     static WeatherEnvironment environment;
     static WeatherHttpClient weatherHttpClient;
-    static MemoryCache<WeatherData> cache;
+    static Cache<WeatherData> cache;
     static int cacheLimit = 3;
 
     @BeforeEach
     void beforeEach() {
         cache.clear();
+        environment.getGeocodeCache().clear();
         prepareCache();
     }
 
     protected void prepareCache() {
-        cache.put("london", prepareLondonWeatherData().fetchedAt(Instant.now().getEpochSecond() - 50));
-        cache.put("new york", prepareNewYorkWeatherData().fetchedAt(Instant.now().getEpochSecond() - 600));
-        cache.put("tokio", prepareTokioWeatherData().fetchedAt(Instant.now().getEpochSecond() - 650));
+        long now = environment.getClock().epochSecond();
+        cache.put("london", prepareLondonWeatherData().fetchedAt(now - 50));
+        cache.put("new york", prepareNewYorkWeatherData().fetchedAt(now - 600));
+        cache.put("tokio", prepareTokioWeatherData().fetchedAt(now - 650));
     }
 
     protected void prepareStubs() {
@@ -48,10 +48,10 @@ public class BaseTemplateTest {
         var tokioCityCoords = DataProvider.prepareTokioCityCoords();
 
         when(weatherHttpClient.getWeatherData(eq(londonCityCoords), eq(fakeApiKey)))
-                .thenReturn(DataProvider.prepareLondonWeatherData());
+                .thenAnswer(invocation -> DataProvider.prepareLondonWeatherData());
         when(weatherHttpClient.getWeatherData(eq(newYorkCityCoords), eq(fakeApiKey)))
-                .thenReturn(DataProvider.prepareLondonWeatherData());
+                .thenAnswer(invocation -> DataProvider.prepareNewYorkWeatherData());
         when(weatherHttpClient.getWeatherData(eq(tokioCityCoords), eq(fakeApiKey)))
-                .thenReturn(DataProvider.prepareLondonWeatherData());
+                .thenAnswer(invocation -> DataProvider.prepareTokioWeatherData());
     }
 }
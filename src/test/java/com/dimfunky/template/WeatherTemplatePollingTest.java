@@ -1,41 +1,248 @@
 package com.dimfunky.template;
 
+import com.dimfunky.concurrent.ManualClock;
 import com.dimfunky.environment.WeatherEnvironment;
 import com.dimfunky.client.WeatherHttpClient;
+import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.support.DataProvider;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static com.dimfunky.support.DataProvider.fakeApiKey;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class WeatherTemplatePollingTest extends BaseTemplateTest {
 
     static WeatherTemplatePolling weatherTemplatePolling;
 
+    static ManualClock clock = new ManualClock();
+
     @BeforeAll
     static void initialize() {
-        environment = new WeatherEnvironment.Polling(fakeApiKey, cacheLimit, 2);
+        // the cities are put to the cache without reads, so they are refreshed regardless of reads
+        environment = new WeatherEnvironment.Polling(fakeApiKey, cacheLimit, 60)
+                .clock(clock)
+                .pollingIdleSeconds(0);
         weatherHttpClient = mock(WeatherHttpClient.class);
         weatherTemplatePolling = new WeatherTemplatePolling(weatherHttpClient, environment);
         cache = environment.getCache();
     }
 
+    @BeforeEach
+    void resetMocks() {
+        reset(weatherHttpClient);
+    }
+
+    @AfterEach
+    void stopPolling() {
+        weatherTemplatePolling.stopPolling();
+    }
+
     @Test
-    void shouldPollingTwoTimesForEachCityInCache() throws InterruptedException {
+    void shouldRefreshCitiesExpiringBeforeNextCycle() throws InterruptedException {
         preparePollingStubs();
+        long cycles = weatherTemplatePolling.getCycleCount();
         weatherTemplatePolling.startPolling();
-        Thread.sleep(3000);
+        awaitCycles(weatherTemplatePolling, cycles + 1);
+
+        verify(weatherHttpClient, never()).getWeatherData(eq(DataProvider.prepareLondonCityCoords()), eq(fakeApiKey));
+        verify(weatherHttpClient, times(1)).getWeatherData(eq(DataProvider.prepareNewYorkCityCoords()), eq(fakeApiKey));
+        verify(weatherHttpClient, times(1)).getWeatherData(eq(DataProvider.prepareTokioCityCoords()), eq(fakeApiKey));
+
+        // london expires within a cycle, the refreshed cities are still fresh
+        clock.advance(490);
+        weatherTemplatePolling.runCycle();
 
-        verify(weatherHttpClient, times(6)).getWeatherData(any(), eq(fakeApiKey));
+        verify(weatherHttpClient, times(1)).getWeatherData(eq(DataProvider.prepareLondonCityCoords()), eq(fakeApiKey));
+        verify(weatherHttpClient, times(3)).getWeatherData(any(), eq(fakeApiKey));
         assertEquals(3, cache.size());
 
         weatherTemplatePolling.stopPolling();
         assertTrue(weatherTemplatePolling.getScheduler().isShutdown());
     }
+
+    @Test
+    void shouldIsolateFailedCityAndKeepPolling() throws InterruptedException {
+        preparePollingStubs();
+        when(weatherHttpClient.getWeatherData(eq(DataProvider.prepareTokioCityCoords()), eq(fakeApiKey)))
+                .thenThrow(new WeatherServiceException("openweathermap.org returned an error: 503"));
+        long cycles = weatherTemplatePolling.getCycleCount();
+        long failures = weatherTemplatePolling.getRefreshFailureCount();
+        weatherTemplatePolling.startPolling();
+        awaitCycles(weatherTemplatePolling, cycles + 1);
+        clock.advance(60);
+        weatherTemplatePolling.runCycle();
+
+        verify(weatherHttpClient, times(1)).getWeatherData(eq(DataProvider.prepareNewYorkCityCoords()), eq(fakeApiKey));
+        verify(weatherHttpClient, times(2)).getWeatherData(eq(DataProvider.prepareTokioCityCoords()), eq(fakeApiKey));
+        assertEquals(cycles + 2, weatherTemplatePolling.getCycleCount());
+        assertEquals(failures + 2, weatherTemplatePolling.getRefreshFailureCount());
+    }
+
+    @Test
+    void shouldSkipCityRefreshedSinceSelection() throws InterruptedException {
+        var httpClient = mock(WeatherHttpClient.class);
+        var clock = new ManualClock();
+        var template = new WeatherTemplatePolling(httpClient, new WeatherEnvironment.Polling(fakeApiKey, 3, 60)
+                .clock(clock)
+                .pollingThreads(1)
+                .virtualThreads(false));
+        fillCache(template, httpClient);
+        var cache = template.getEnvironment().getCache();
+        when(httpClient.getWeatherData(eq(DataProvider.prepareNewYorkCityCoords()), eq(fakeApiKey)))
+                .thenAnswer(invocation -> {
+                    // requests refresh the other cities while the cycle is running
+                    cache.put("london", DataProvider.prepareLondonWeatherData().fetchedAt(clock.epochSecond()));
+                    cache.put("tokio", DataProvider.prepareTokioWeatherData().fetchedAt(clock.epochSecond()));
+                    return DataProvider.prepareNewYorkWeatherData();
+                });
+        template.getWeatherInfo("New York");
+        template.getWeatherInfo("New York");
+        clock.advance(540);
+
+        template.startPolling();
+        awaitCycles(template, 1);
+        template.stopPolling();
+
+        verify(httpClient, times(1)).getWeatherData(eq(DataProvider.prepareNewYorkCityCoords()), eq(fakeApiKey));
+        verify(httpClient, never()).getWeatherData(eq(DataProvider.prepareLondonCityCoords()), eq(fakeApiKey));
+        verify(httpClient, never()).getWeatherData(eq(DataProvider.prepareTokioCityCoords()), eq(fakeApiKey));
+    }
+
+    @Test
+    void shouldRefreshReadCitiesAndLetIdleOnesLapse() throws InterruptedException {
+        var httpClient = mock(WeatherHttpClient.class);
+        var clock = new ManualClock();
+        var template = new WeatherTemplatePolling(httpClient, new WeatherEnvironment.Polling(fakeApiKey, 3, 60)
+                .clock(clock)
+                .pollingIdleSeconds(120));
+        fillCache(template, httpClient);
+
+        template.startPolling();
+        awaitCycles(template, 1);
+        clock.advance(500);
+        template.getWeatherInfo("London");
+        clock.advance(40);
+        template.runCycle();
+        template.stopPolling();
+
+        verify(httpClient, times(1)).getWeatherData(eq(DataProvider.prepareLondonCityCoords()), eq(fakeApiKey));
+        verify(httpClient, never()).getWeatherData(eq(DataProvider.prepareTokioCityCoords()), eq(fakeApiKey));
+        assertEquals(2, template.getLapsedRefreshCount());
+    }
+
+    @Test
+    void shouldLetCitiesNeverReadLapse() {
+        var httpClient = mock(WeatherHttpClient.class);
+        var clock = new ManualClock();
+        var template = new WeatherTemplatePolling(httpClient, new WeatherEnvironment.Polling(fakeApiKey, 3, 60)
+                .clock(clock));
+        fillCache(template, httpClient);
+
+        template.runCycle();
+        assertEquals(0, template.getLapsedRefreshCount());
+        clock.advance(540);
+        template.runCycle();
+
+        verify(httpClient, never()).getWeatherData(any(), eq(fakeApiKey));
+        assertEquals(3, template.getLapsedRefreshCount());
+    }
+
+    @Test
+    void shouldSpendBudgetOnMostReadCities() throws InterruptedException {
+        var httpClient = mock(WeatherHttpClient.class);
+        var clock = new ManualClock();
+        var template = new WeatherTemplatePolling(httpClient, new WeatherEnvironment.Polling(fakeApiKey, 3, 60)
+                .clock(clock)
+                .pollingRequestsPerMinute(1));
+        fillCache(template, httpClient);
+        for (int i = 0; i < 3; i++) {
+            template.getWeatherInfo("Tokio");
+        }
+        template.getWeatherInfo("London");
+        template.getWeatherInfo("New York");
+        clock.advance(540);
+
+        template.startPolling();
+        awaitCycles(template, 1);
+        template.stopPolling();
+
+        verify(httpClient).getWeatherData(eq(DataProvider.prepareTokioCityCoords()), eq(fakeApiKey));
+        verify(httpClient, never()).getWeatherData(eq(DataProvider.prepareLondonCityCoords()), eq(fakeApiKey));
+        assertEquals(2, template.getDeferredRefreshCount());
+    }
+
+    @Test
+    void shouldStopInTheMiddleOfCycle() throws InterruptedException {
+        var httpClient = mock(WeatherHttpClient.class);
+        var template = new WeatherTemplatePolling(httpClient, new WeatherEnvironment.Polling(fakeApiKey, 3, 60)
+                .pollingThreads(1)
+                .pollingIdleSeconds(0)
+                .virtualThreads(false));
+        var cache = template.getEnvironment().getCache();
+        long expiredAt = Instant.now().getEpochSecond() - 600;
+        cache.put("london", DataProvider.prepareLondonWeatherData().fetchedAt(expiredAt));
+        cache.put("new york", DataProvider.prepareNewYorkWeatherData().fetchedAt(expiredAt));
+        cache.put("tokio", DataProvider.prepareTokioWeatherData().fetchedAt(expiredAt));
+        var refreshStarted = new CountDownLatch(1);
+        when(httpClient.getWeatherData(any(), eq(fakeApiKey))).thenAnswer(invocation -> {
+            refreshStarted.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WeatherServiceException("Interrupted", e);
+            }
+            return DataProvider.prepareLondonWeatherData();
+        });
+
+        template.startPolling();
+        assertTrue(refreshStarted.await(5, TimeUnit.SECONDS));
+        template.stopPolling();
+
+        assertTrue(template.getScheduler().awaitTermination(2, TimeUnit.SECONDS));
+        verify(httpClient, times(1)).getWeatherData(any(), eq(fakeApiKey));
+    }
+
+    /**
+     * Waits for the scheduler to finish the cycles started by {@link WeatherTemplatePolling#startPolling()}
+     */
+    private static void awaitCycles(final WeatherTemplatePolling template, final long cycles)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (template.getCycleCount() < cycles) {
+            assertTrue(System.nanoTime() < deadline, "cycles: " + template.getCycleCount());
+            Thread.sleep(10);
+        }
+    }
+
+    private static void fillCache(final WeatherTemplate template, final WeatherHttpClient httpClient) {
+        var cache = template.getEnvironment().getCache();
+        long now = template.getEnvironment().getClock().epochSecond();
+        cache.put("london", DataProvider.prepareLondonWeatherData().fetchedAt(now));
+        cache.put("new york", DataProvider.prepareNewYorkWeatherData().fetchedAt(now));
+        cache.put("tokio", DataProvider.prepareTokioWeatherData().fetchedAt(now));
+        when(httpClient.getWeatherData(eq(DataProvider.prepareLondonCityCoords()), eq(fakeApiKey)))
+                .thenAnswer(invocation -> DataProvider.prepareLondonWeatherData());
+        when(httpClient.getWeatherData(eq(DataProvider.prepareNewYorkCityCoords()), eq(fakeApiKey)))
+                .thenAnswer(invocation -> DataProvider.prepareNewYorkWeatherData());
+        when(httpClient.getWeatherData(eq(DataProvider.prepareTokioCityCoords()), eq(fakeApiKey)))
+                .thenAnswer(invocation -> DataProvider.prepareTokioWeatherData());
+    }
 }
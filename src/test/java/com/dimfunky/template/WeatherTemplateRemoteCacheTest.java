@@ -0,0 +1,90 @@
+package com.dimfunky.template;
+
+import com.dimfunky.cache.InProcessRemoteCache;
+import com.dimfunky.cache.TwoTierCache;
+import com.dimfunky.client.WeatherHttpClient;
+import com.dimfunky.environment.WeatherEnvironment;
+import com.dimfunky.support.DataProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.dimfunky.support.DataProvider.fakeApiKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WeatherTemplateRemoteCacheTest {
+    private InProcessRemoteCache remoteCache;
+    private WeatherHttpClient weatherHttpClient;
+
+    @BeforeEach
+    void initialize() {
+        remoteCache = new InProcessRemoteCache();
+        weatherHttpClient = mock(WeatherHttpClient.class);
+        var parisCoords = DataProvider.prepareParisCityCoords();
+        when(weatherHttpClient.getCoordsByCityName("paris", fakeApiKey)).thenReturn(parisCoords);
+        when(weatherHttpClient.getWeatherData(parisCoords, fakeApiKey)).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return DataProvider.prepareParisWeatherData();
+        });
+    }
+
+    @Test
+    void shouldFetchCityOnceForAllInstances() throws Exception {
+        List<WeatherTemplate> templates = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            templates.add(createTemplate());
+        }
+
+        List<CompletableFuture<String>> names = new ArrayList<>();
+        for (WeatherTemplate template : templates) {
+            names.add(CompletableFuture.supplyAsync(() -> template.getWeatherInfo("Paris").name()));
+        }
+
+        for (CompletableFuture<String> name : names) {
+            assertEquals("Paris", name.get(5, TimeUnit.SECONDS));
+        }
+        verify(weatherHttpClient, times(1)).getWeatherData(any(), eq(fakeApiKey));
+        for (WeatherTemplate template : templates) {
+            assertEquals("Paris", template.getEnvironment().getCache().get("paris").name());
+        }
+    }
+
+    @Test
+    void shouldServeDataFetchedByAnotherInstance() {
+        var first = createTemplate();
+        var second = createTemplate();
+
+        first.getWeatherInfo("Paris");
+        var weatherData = second.getWeatherInfoAsync("Paris").join();
+
+        assertEquals("Paris", weatherData.name());
+        verify(weatherHttpClient, times(1)).getWeatherData(any(), eq(fakeApiKey));
+        verify(weatherHttpClient, never()).getWeatherDataAsync(any(), any(), any());
+    }
+
+    @Test
+    void shouldWrapCacheIntoTwoTierCache() {
+        var environment = new WeatherEnvironment.OnDemand(fakeApiKey, 5).remoteCache(remoteCache);
+
+        var cache = assertInstanceOf(TwoTierCache.class, environment.getCache());
+        assertEquals(5, environment.getCacheLimit());
+        assertEquals(remoteCache, cache.getRemote());
+    }
+
+    private WeatherTemplate createTemplate() {
+        return new WeatherTemplate(weatherHttpClient,
+                new WeatherEnvironment.OnDemand(fakeApiKey).remoteCache(remoteCache));
+    }
+}
@@ -0,0 +1,80 @@
+package com.dimfunky.template;
+
+import com.dimfunky.client.WeatherHttpClient;
+import com.dimfunky.environment.WeatherEnvironment;
+import com.dimfunky.support.DataProvider;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.dimfunky.support.DataProvider.fakeApiKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WeatherTemplateStaleWhileRevalidateTest extends BaseTemplateTest {
+    static WeatherTemplateStaleWhileRevalidate weatherTemplate;
+
+    @BeforeAll
+    static void initialize() {
+        environment = new WeatherEnvironment.StaleWhileRevalidate(fakeApiKey, cacheLimit, 120);
+        weatherHttpClient = mock(WeatherHttpClient.class);
+        weatherTemplate = new WeatherTemplateStaleWhileRevalidate(weatherHttpClient, environment);
+        cache = environment.getCache();
+    }
+
+    @BeforeEach
+    void resetMocks() {
+        reset(weatherHttpClient);
+    }
+
+    @Test
+    void shouldReturnStaleDataAndRefreshInBackground() {
+        var newYorkCoords = DataProvider.prepareNewYorkCityCoords();
+        var refreshedData = DataProvider.prepareNewYorkWeatherData().visibility(5000);
+        when(weatherHttpClient.getWeatherDataAsync(eq(newYorkCoords), eq(fakeApiKey), any()))
+                .thenReturn(CompletableFuture.completedFuture(refreshedData));
+
+        var weatherData = weatherTemplate.getWeatherInfo("New York");
+
+        assertEquals(10000, weatherData.visibility());
+        verify(weatherHttpClient, timeout(1000)).getWeatherDataAsync(eq(newYorkCoords), eq(fakeApiKey), any());
+        verify(weatherHttpClient, never()).getWeatherData(any(), any());
+        assertEquals(5000, cache.get("new york").visibility());
+        assertFalse(cache.get("new york").isExpired());
+        assertEquals(1, weatherTemplate.getStaleServedCount());
+    }
+
+    @Test
+    void shouldBlockWhenDataIsOlderThanGracePeriod() {
+        cache.put("tokio", DataProvider.prepareTokioWeatherData()
+                .fetchedAt(environment.getClock().epochSecond() - 600 - 120));
+        var tokioCoords = DataProvider.prepareTokioCityCoords();
+        when(weatherHttpClient.getWeatherData(eq(tokioCoords), eq(fakeApiKey)))
+                .thenReturn(DataProvider.prepareTokioWeatherData());
+
+        var weatherData = weatherTemplate.getWeatherInfo("Tokio");
+
+        assertFalse(weatherData.isExpired());
+        verify(weatherHttpClient, times(1)).getWeatherData(eq(tokioCoords), eq(fakeApiKey));
+        verify(weatherHttpClient, never()).getWeatherDataAsync(any(), any(), any());
+    }
+
+    @Test
+    void shouldReturnFreshDataWithoutRefresh() {
+        var weatherData = weatherTemplate.getWeatherInfo("London");
+
+        assertFalse(weatherData.isExpired());
+        verify(weatherHttpClient, never()).getWeatherDataAsync(any(), any(), any());
+    }
+}
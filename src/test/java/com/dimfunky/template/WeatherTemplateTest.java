@@ -1,16 +1,53 @@
 package com.dimfunky.template;
 
+import com.dimfunky.cache.MemoryCache;
+import com.dimfunky.cache.OffHeapCache;
+import com.dimfunky.concurrent.ManualClock;
 import com.dimfunky.environment.WeatherEnvironment;
 import com.dimfunky.client.WeatherHttpClient;
+import com.dimfunky.constant.CacheStorage;
+import com.dimfunky.constant.RateLimitMode;
+import com.dimfunky.exception.WeatherServiceException;
+import com.dimfunky.exception.WeatherServiceRateLimitException;
+import com.dimfunky.exception.WeatherServiceUnavailableException;
+import com.dimfunky.exception.WeatherServiceValidationException;
+import com.dimfunky.metrics.MetricsSnapshot;
+import com.dimfunky.metrics.WeatherMetrics;
+import com.dimfunky.model.CityCoords;
+import com.dimfunky.model.WeatherData;
 import com.dimfunky.support.DataProvider;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static com.dimfunky.support.DataProvider.fakeApiKey;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 
 
 class WeatherTemplateTest extends BaseTemplateTest {
@@ -39,6 +76,157 @@ class WeatherTemplateTest extends BaseTemplateTest {
         assertTrue(cache.contains("paris"));
     }
 
+    @Test
+    void concurrentRequestsForSameCityShouldFetchOnce() throws Exception {
+        clearInvocations(weatherHttpClient);
+        var citiCoords = DataProvider.prepareParisCityCoords();
+        when(weatherHttpClient.getCoordsByCityName("paris", fakeApiKey)).thenReturn(citiCoords);
+        when(weatherHttpClient.getWeatherData(citiCoords, fakeApiKey)).thenAnswer(invocation -> {
+            Thread.sleep(300);
+            return DataProvider.prepareParisWeatherData();
+        });
+
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<WeatherData>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> weatherTemplate.getWeatherInfo("Paris")));
+            }
+            for (Future<WeatherData> result : results) {
+                assertEquals("Paris", result.get(5, TimeUnit.SECONDS).name());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        verify(weatherHttpClient, times(1)).getCoordsByCityName("paris", fakeApiKey);
+        verify(weatherHttpClient, times(1)).getWeatherData(citiCoords, fakeApiKey);
+    }
+
+    @Test
+    void getWeatherInfoAsyncShouldFetchAndUpdateCache() {
+        var citiCoords = DataProvider.prepareParisCityCoords();
+        when(weatherHttpClient.getCoordsByCityNameAsync(eq("paris"), eq(fakeApiKey), any()))
+                .thenReturn(CompletableFuture.completedFuture(citiCoords));
+        when(weatherHttpClient.getWeatherDataAsync(eq(citiCoords), eq(fakeApiKey), any()))
+                .thenReturn(CompletableFuture.completedFuture(DataProvider.prepareParisWeatherData()));
+
+        var weatherData = weatherTemplate.getWeatherInfoAsync("Paris").join();
+
+        assertEquals(DataProvider.prepareParisWeatherData(), weatherData);
+        assertTrue(cache.contains("paris"));
+        assertFalse(cache.contains("tokio"));
+    }
+
+    @Test
+    void getWeatherInfoAsyncShouldReturnCachedDataWithoutRequests() {
+        clearInvocations(weatherHttpClient);
+
+        var weatherData = weatherTemplate.getWeatherInfoAsync("London").join();
+
+        assertEquals("London", weatherData.name());
+        verifyNoInteractions(weatherHttpClient);
+    }
+
+    @Test
+    void getWeatherInfoAsyncShouldFailOnInvalidCityName() {
+        var future = weatherTemplate.getWeatherInfoAsync("Paris123");
+
+        var ex = assertThrows(CompletionException.class, future::join);
+        assertTrue(ex.getCause() instanceof WeatherServiceValidationException);
+    }
+
+    @Test
+    void shouldTakeCoordsFromGeocodeCache() {
+        clearInvocations(weatherHttpClient);
+        prepareStubs();
+        environment.getGeocodeCache().put("paris", DataProvider.prepareParisCityCoords());
+
+        var weatherData = weatherTemplate.getWeatherInfo("Paris");
+
+        assertEquals("Paris", weatherData.name());
+        verify(weatherHttpClient, never()).getCoordsByCityName(any(), any());
+    }
+
+    @Test
+    void getWeatherInfoAllShouldCollapseDuplicatesAndCollectErrors() {
+        clearInvocations(weatherHttpClient);
+        var citiCoords = DataProvider.prepareParisCityCoords();
+        when(weatherHttpClient.getCoordsByCityNameAsync(eq("paris"), eq(fakeApiKey), any()))
+                .thenReturn(CompletableFuture.completedFuture(citiCoords));
+        when(weatherHttpClient.getWeatherDataAsync(eq(citiCoords), eq(fakeApiKey), any()))
+                .thenReturn(CompletableFuture.completedFuture(DataProvider.prepareParisWeatherData()));
+        when(weatherHttpClient.getCoordsByCityNameAsync(eq("atlantis"), eq(fakeApiKey), any()))
+                .thenReturn(CompletableFuture.failedFuture(new WeatherServiceException("The city was not found")));
+        // on Java 21 the batch fetches on virtual threads with the blocking calls
+        when(weatherHttpClient.getCoordsByCityName("paris", fakeApiKey)).thenReturn(citiCoords);
+        when(weatherHttpClient.getWeatherData(citiCoords, fakeApiKey)).thenReturn(DataProvider.prepareParisWeatherData());
+        when(weatherHttpClient.getCoordsByCityName("atlantis", fakeApiKey))
+                .thenThrow(new WeatherServiceException("The city was not found"));
+
+        var result = weatherTemplate.getWeatherInfoAll(List.of("Paris", "PARIS", "paris", "London", "Atlantis", "Paris123"));
+
+        assertEquals(2, result.results().size());
+        assertEquals("Paris", result.results().get("paris").name());
+        assertEquals("London", result.results().get("london").name());
+        assertEquals(2, result.errors().size());
+        assertTrue(result.errors().get("atlantis") instanceof WeatherServiceException);
+        assertTrue(result.errors().get("Paris123") instanceof WeatherServiceValidationException);
+        if (environment.isVirtualThreads()) {
+            verify(weatherHttpClient, times(1)).getCoordsByCityName("paris", fakeApiKey);
+        } else {
+            verify(weatherHttpClient, times(1)).getCoordsByCityNameAsync(eq("paris"), eq(fakeApiKey), any());
+        }
+    }
+
+    @Test
+    void getWeatherInfoAllShouldStartNextFetchWhenOneCompletes() throws Exception {
+        var httpClient = mock(WeatherHttpClient.class);
+        var batchEnvironment = new WeatherEnvironment.OnDemand(fakeApiKey).virtualThreads(false).batchConcurrency(2);
+        var template = new WeatherTemplate(httpClient, batchEnvironment);
+        List<CompletableFuture<CityCoords>> responses = new ArrayList<>();
+        for (String city : List.of("paris", "london", "tokio")) {
+            var response = new CompletableFuture<CityCoords>();
+            when(httpClient.getCoordsByCityNameAsync(eq(city), eq(fakeApiKey), any())).thenReturn(response);
+            responses.add(response);
+        }
+        var caller = Executors.newSingleThreadExecutor();
+        try {
+            var batch = caller.submit(() -> template.getWeatherInfoAll(List.of("Paris", "London", "Tokio")));
+
+            verify(httpClient, timeout(1000).times(2)).getCoordsByCityNameAsync(any(), eq(fakeApiKey), any());
+            verify(httpClient, never()).getCoordsByCityNameAsync(eq("tokio"), eq(fakeApiKey), any());
+
+            responses.get(0).completeExceptionally(new WeatherServiceException("The city was not found"));
+
+            verify(httpClient, timeout(1000)).getCoordsByCityNameAsync(eq("tokio"), eq(fakeApiKey), any());
+            responses.get(1).completeExceptionally(new WeatherServiceException("The city was not found"));
+            responses.get(2).completeExceptionally(new WeatherServiceException("The city was not found"));
+
+            var result = batch.get(1, TimeUnit.SECONDS);
+            assertEquals(List.of("paris", "london", "tokio"), new ArrayList<>(result.errors().keySet()));
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    void getWeatherInfoAllShouldPropagateInterruption() {
+        var httpClient = mock(WeatherHttpClient.class);
+        var batchEnvironment = new WeatherEnvironment.OnDemand(fakeApiKey).virtualThreads(false).batchConcurrency(1);
+        var template = new WeatherTemplate(httpClient, batchEnvironment);
+        when(httpClient.getCoordsByCityNameAsync(any(), eq(fakeApiKey), any())).thenReturn(new CompletableFuture<>());
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(WeatherServiceException.class, () -> template.getWeatherInfoAll(List.of("Paris", "London")));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        verify(httpClient, never()).getCoordsByCityNameAsync(eq("london"), eq(fakeApiKey), any());
+    }
+
     @Test
     void getWeatherInfoJsonStringShouldWork() {
         prepareStubs();
@@ -47,4 +235,209 @@ class WeatherTemplateTest extends BaseTemplateTest {
 
         assertEquals(expectedJson, weatherDataJson);
     }
+
+    @Test
+    void getWeatherInfoJsonBytesShouldReuseJsonUntilEntryIsRefreshed() {
+        prepareStubs();
+        var expectedJson = DataProvider.readJsonFile("weather-data.json").getBytes(StandardCharsets.UTF_8);
+
+        var bytes = weatherTemplate.getWeatherInfoJsonBytes("Paris");
+        var memoizedJson = cache.get("paris").json();
+        var buffer = weatherTemplate.getWeatherInfoJsonBuffer("Paris");
+
+        assertArrayEquals(expectedJson, bytes);
+        assertArrayEquals(expectedJson, memoizedJson);
+        assertNotSame(memoizedJson, bytes);
+        assertSame(memoizedJson, cache.get("paris").json());
+        assertTrue(buffer.isReadOnly());
+        assertEquals(ByteBuffer.wrap(expectedJson), buffer);
+
+        cache.put("paris", DataProvider.prepareParisWeatherData().visibility(500));
+
+        assertTrue(weatherTemplate.getWeatherInfoJsonString("Paris").contains("\"visibility\":500"));
+    }
+
+    @Test
+    void updateCacheShouldKeepLaterFetchedData() {
+        var later = DataProvider.prepareParisWeatherData().visibility(500);
+        cache.put("paris", later);
+
+        weatherTemplate.updateCache(DataProvider.prepareParisWeatherData().fetchedAt(later.fetchedAt() - 10), cache);
+
+        assertEquals(500, cache.get("paris").visibility());
+    }
+
+    @Test
+    void shouldWorkWithProvidedCache() {
+        var providedCache = new MemoryCache<WeatherData>();
+        var template = new WeatherTemplate(weatherHttpClient,
+                new WeatherEnvironment.OnDemand(fakeApiKey).cache(providedCache));
+        prepareStubs();
+
+        template.getWeatherInfo("Paris");
+
+        assertEquals(1, providedCache.size());
+        assertTrue(providedCache.contains("paris"));
+        assertEquals(Integer.MAX_VALUE, template.getEnvironment().getCacheLimit());
+        assertSame(providedCache, template.getEnvironment().getCache());
+    }
+
+    @Test
+    void offHeapCacheShouldExpireEntriesWithoutWrapper() {
+        var clock = new ManualClock();
+        var environment = new WeatherEnvironment.OnDemand(fakeApiKey)
+                .cacheStorage(CacheStorage.OFF_HEAP)
+                .clock(clock)
+                .ttlSeconds(60)
+                .expiredRetentionSeconds(30);
+        var cache = environment.getCache();
+        cache.put("paris", DataProvider.prepareParisWeatherData().fetchedAt(clock.epochSecond()));
+
+        assertTrue(cache instanceof OffHeapCache);
+        clock.advance(89);
+        assertTrue(cache.contains("paris"));
+        clock.advance(1);
+        assertFalse(cache.contains("paris"));
+    }
+
+    @Test
+    void shouldServeStaleDataOnRateLimit() {
+        var httpClient = mock(WeatherHttpClient.class);
+        var template = new WeatherTemplate(httpClient, new WeatherEnvironment.OnDemand(fakeApiKey)
+                .rateLimit(60, 1, RateLimitMode.SERVE_STALE));
+        var staleData = DataProvider.prepareParisWeatherData().fetchedAt(Instant.now().getEpochSecond() - 700);
+        template.getEnvironment().getCache().put("paris", staleData);
+        when(httpClient.getWeatherData(any(), eq(fakeApiKey)))
+                .thenThrow(new WeatherServiceRateLimitException("limit", 1000));
+        when(httpClient.getWeatherDataAsync(any(), eq(fakeApiKey), any()))
+                .thenReturn(CompletableFuture.failedFuture(new WeatherServiceRateLimitException("limit", 1000)));
+        when(httpClient.getCoordsByCityName(any(), eq(fakeApiKey)))
+                .thenThrow(new WeatherServiceRateLimitException("limit", 1000));
+
+        assertSame(staleData, template.getWeatherInfo("Paris"));
+        assertSame(staleData, template.getWeatherInfoAsync("Paris").join());
+        assertEquals(2, template.getRateLimitedStaleCount());
+        assertThrows(WeatherServiceRateLimitException.class, () -> template.getWeatherInfo("Rome"));
+    }
+
+    @Test
+    void shouldServeStaleDataWhileCircuitIsOpen() {
+        var httpClient = mock(WeatherHttpClient.class);
+        var template = new WeatherTemplate(httpClient, new WeatherEnvironment.OnDemand(fakeApiKey));
+        var staleData = DataProvider.prepareParisWeatherData().fetchedAt(Instant.now().getEpochSecond() - 700);
+        template.getEnvironment().getCache().put("paris", staleData);
+        when(httpClient.getWeatherData(any(), eq(fakeApiKey)))
+                .thenThrow(new WeatherServiceUnavailableException("unavailable"));
+        when(httpClient.getCoordsByCityName(any(), eq(fakeApiKey)))
+                .thenThrow(new WeatherServiceUnavailableException("unavailable"));
+
+        assertSame(staleData, template.getWeatherInfo("Paris"));
+        assertEquals(1, template.getUnavailableStaleCount());
+        assertThrows(WeatherServiceUnavailableException.class, () -> template.getWeatherInfo("Rome"));
+    }
+
+    @Test
+    void shouldRecordCacheAndFetchMetrics() {
+        var httpClient = mock(WeatherHttpClient.class);
+        var template = new WeatherTemplate(httpClient, new WeatherEnvironment.OnDemand(fakeApiKey));
+        var citiCoords = DataProvider.prepareParisCityCoords();
+        when(httpClient.getCoordsByCityName("paris", fakeApiKey)).thenReturn(citiCoords);
+        when(httpClient.getWeatherData(citiCoords, fakeApiKey)).thenReturn(DataProvider.prepareParisWeatherData());
+        when(httpClient.getCoordsByCityName("rome", fakeApiKey)).thenThrow(new WeatherServiceException("error"));
+
+        template.getWeatherInfo("Paris");
+        template.getWeatherInfo("Paris");
+        assertThrows(WeatherServiceException.class, () -> template.getWeatherInfo("Rome"));
+
+        MetricsSnapshot snapshot = template.getMetricsSnapshot();
+        assertEquals(1, snapshot.getCount(WeatherMetrics.Counter.CACHE_HIT));
+        assertEquals(2, snapshot.getCount(WeatherMetrics.Counter.CACHE_MISS));
+        assertEquals(1, snapshot.getCount(WeatherMetrics.Counter.FETCH_ERROR));
+        assertEquals(3, snapshot.getLatency(WeatherMetrics.Timer.GET_WEATHER_INFO).getCount());
+        assertEquals(2, snapshot.getLatency(WeatherMetrics.Timer.FETCH_DATA).getCount());
+        assertEquals(1, snapshot.getLatency(WeatherMetrics.Timer.UPDATE_CACHE).getCount());
+        assertEquals(1.0 / 3, snapshot.getCacheHitRatio(), 1e-9);
+    }
+
+    @Test
+    void shouldExpireDataByEnvironmentClockAndTtl() {
+        var httpClient = mock(WeatherHttpClient.class);
+        var clock = new ManualClock();
+        var template = new WeatherTemplate(httpClient, new WeatherEnvironment.OnDemand(fakeApiKey)
+                .clock(clock).ttlSeconds(60).expiredRetentionSeconds(30));
+        var citiCoords = DataProvider.prepareParisCityCoords();
+        when(httpClient.getCoordsByCityName("paris", fakeApiKey)).thenReturn(citiCoords);
+        when(httpClient.getWeatherData(citiCoords, fakeApiKey))
+                .thenAnswer(invocation -> DataProvider.prepareParisWeatherData());
+        var cache = template.getEnvironment().getCache();
+
+        var fetched = template.getWeatherInfo("Paris");
+        assertEquals(clock.epochSecond(), fetched.fetchedAt());
+        clock.advance(59);
+        assertSame(fetched, template.getWeatherInfo("Paris"));
+        verify(httpClient, times(1)).getWeatherData(citiCoords, fakeApiKey);
+
+        clock.advance(1);
+        var refreshed = template.getWeatherInfo("Paris");
+        assertNotSame(fetched, refreshed);
+        verify(httpClient, times(2)).getWeatherData(citiCoords, fakeApiKey);
+
+        clock.advance(89);
+        assertTrue(cache.contains("paris"));
+        clock.advance(1);
+        assertFalse(cache.contains("paris"));
+    }
+
+    @Test
+    void getWeatherInfoByCoordinatesShouldServeNearbyData() {
+        var httpClient = mock(WeatherHttpClient.class);
+        var template = new WeatherTemplate(httpClient, new WeatherEnvironment.OnDemand(fakeApiKey));
+        var locationData = DataProvider.prepareParisWeatherData().name("Palais-Royal");
+        when(httpClient.getWeatherData(48.8589, 2.32, fakeApiKey)).thenReturn(locationData);
+
+        assertSame(locationData, template.getWeatherInfo(48.8589, 2.32));
+        assertSame(locationData, template.getWeatherInfo(48.8600, 2.3250));
+        assertSame(locationData, template.getWeatherInfoAsync(48.8580, 2.3190).join());
+        verify(httpClient, times(1)).getWeatherData(48.8589, 2.32, fakeApiKey);
+        assertThrows(WeatherServiceValidationException.class, () -> template.getWeatherInfo(91, 0));
+        assertThrows(CompletionException.class, () -> template.getWeatherInfoAsync(0, 181).join());
+    }
+
+    @Test
+    void getWeatherInfoByCoordinatesShouldCoalesceRequestsForSameLocationOnly() {
+        var httpClient = mock(WeatherHttpClient.class);
+        var template = new WeatherTemplate(httpClient, new WeatherEnvironment.OnDemand(fakeApiKey));
+        var response = new CompletableFuture<WeatherData>();
+        var nearbyResponse = new CompletableFuture<WeatherData>();
+        when(httpClient.getWeatherDataAsync(eq(48.8589), eq(2.32), eq(fakeApiKey), any())).thenReturn(response);
+        when(httpClient.getWeatherDataAsync(eq(48.8590), eq(2.3201), eq(fakeApiKey), any())).thenReturn(nearbyResponse);
+
+        var first = template.getWeatherInfoAsync(48.8589, 2.32);
+        var second = template.getWeatherInfoAsync(48.85890000001, 2.32);
+        var nearby = template.getWeatherInfoAsync(48.8590, 2.3201);
+        response.complete(DataProvider.prepareParisWeatherData().name("Palais-Royal"));
+        nearbyResponse.complete(DataProvider.prepareParisWeatherData().name("Louvre"));
+
+        assertSame(first.join(), second.join());
+        assertEquals("Louvre", nearby.join().name());
+        verify(httpClient, times(1)).getWeatherDataAsync(eq(48.8589), eq(2.32), eq(fakeApiKey), any());
+    }
+
+    @Test
+    void getWeatherInfoByCoordinatesShouldUseCachedCity() {
+        var httpClient = mock(WeatherHttpClient.class);
+        var template = new WeatherTemplate(httpClient, new WeatherEnvironment.OnDemand(fakeApiKey)
+                .geoRadiusMeters(500));
+        var citiCoords = DataProvider.prepareParisCityCoords();
+        when(httpClient.getCoordsByCityName("paris", fakeApiKey)).thenReturn(citiCoords);
+        when(httpClient.getWeatherData(citiCoords, fakeApiKey)).thenReturn(DataProvider.prepareParisWeatherData());
+        var farData = DataProvider.prepareParisWeatherData().name("Montmartre")
+                .coord(new WeatherData.Coord().lat(48.8867).lon(2.3431));
+        when(httpClient.getWeatherData(48.8867, 2.3431, fakeApiKey)).thenReturn(farData);
+
+        var cityData = template.getWeatherInfo("Paris");
+
+        assertSame(cityData, template.getWeatherInfo(48.8590, 2.3210));
+        assertSame(farData, template.getWeatherInfo(48.8867, 2.3431));
+    }
 }
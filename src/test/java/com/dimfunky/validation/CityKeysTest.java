@@ -0,0 +1,79 @@
+package com.dimfunky.validation;
+
+import com.dimfunky.exception.WeatherServiceValidationException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CityKeysTest {
+
+    @Test
+    void shouldReturnLowercaseKey() {
+        assertEquals("san josé-los altos", CityKeys.of("San José-Los Altos"));
+        assertEquals("düsseldorf", CityKeys.of("DÜSSELDORF"));
+    }
+
+    @Test
+    void shouldReturnSameInstanceForNamesDifferingInCase() {
+        String key = CityKeys.of("Berlin");
+
+        assertSame(key, CityKeys.of("BERLIN"));
+        assertSame(key, CityKeys.of("berlin"));
+        assertSame(key, CityKeys.normalize("BeRlIn"));
+    }
+
+    @Test
+    void shouldNotCopyLowercaseName() {
+        String cityName = new String("lisbon");
+
+        assertSame(cityName, CityKeys.of(cityName));
+    }
+
+    @Test
+    void shouldValidateUnknownNames() {
+        assertThrows(WeatherServiceValidationException.class, () -> CityKeys.of("Paris123"));
+        assertThrows(WeatherServiceValidationException.class, () -> CityKeys.of("Paris123"));
+        assertThrows(WeatherServiceValidationException.class, () -> CityKeys.of(""));
+        assertThrows(WeatherServiceValidationException.class, () -> CityKeys.of(null));
+    }
+
+    @Test
+    void shouldNormalizeWithoutValidation() {
+        assertEquals("saint-étienne 2", CityKeys.normalize("Saint-Étienne 2"));
+    }
+
+    @Test
+    void shouldForgetOneOffNamesAndKeepRequestedOnes() {
+        String key = CityKeys.of("Porto");
+        for (int i = 0; i < 3 * CityKeys.GENERATION_SIZE; i++) {
+            CityKeys.of(oneOffName(i));
+            if (i % 1_000 == 0) {
+                assertSame(key, CityKeys.of("PORTO"));
+            }
+        }
+
+        assertSame(key, CityKeys.of("porto"));
+        assertTrue(CityKeys.size() <= 2 * CityKeys.GENERATION_SIZE, "size: " + CityKeys.size());
+    }
+
+    @Test
+    void shouldNotRememberLongNames() {
+        String longName = "A" + "a".repeat(CityKeys.MAX_KEY_LENGTH);
+
+        assertEquals(longName.toLowerCase(), CityKeys.of(longName));
+        assertNotSame(CityKeys.of(longName), CityKeys.of(longName));
+    }
+
+    private static String oneOffName(int index) {
+        var name = new StringBuilder("Town ");
+        do {
+            name.append((char) ('a' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return name.toString();
+    }
+}
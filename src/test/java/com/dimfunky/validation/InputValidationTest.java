@@ -1,5 +1,6 @@
 package com.dimfunky.validation;
 
+import com.dimfunky.cache.OffHeapCache;
 import com.dimfunky.exception.WeatherServiceValidationException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -66,4 +67,28 @@ class InputValidationTest {
                 () -> InputValidation.validateCacheUpdatePeriod(notValidUpdatePeriod));
         assertEquals("updatePeriod must be positive", exception.getMessage());
     }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1})
+    void shouldThrowExceptionForInvalidBatchConcurrency(final int notValidBatchConcurrency) {
+        Exception exception = assertThrows(WeatherServiceValidationException.class,
+                () -> InputValidation.validateBatchConcurrency(notValidBatchConcurrency));
+        assertEquals("batchConcurrency must be positive", exception.getMessage());
+    }
+
+    @Test
+    void shouldThrowExceptionForTooLargeOffHeapCacheLimit() {
+        assertDoesNotThrow(() -> InputValidation.validateOffHeapCacheLimit(1_000_000));
+        Exception exception = assertThrows(WeatherServiceValidationException.class,
+                () -> InputValidation.validateOffHeapCacheLimit(Integer.MAX_VALUE));
+        assertEquals("cacheLimit must not exceed " + OffHeapCache.MAX_LIMIT + " for the off-heap cache",
+                exception.getMessage());
+    }
+
+    @Test
+    void shouldThrowExceptionForNullCache() {
+        Exception exception = assertThrows(WeatherServiceValidationException.class,
+                () -> InputValidation.validateCache(null));
+        assertEquals("cache must not be null", exception.getMessage());
+    }
 }